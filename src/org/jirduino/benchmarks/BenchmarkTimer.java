@@ -0,0 +1,73 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Elapsed time and allocated bytes of a benchmark run, measured on the
+ * current thread.
+ *
+ * @author Emanuele Paiano
+ * */
+class BenchmarkTimer {
+
+	private static final com.sun.management.ThreadMXBean threads=
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	private long start;
+
+	private long bytes;
+
+	private long elapsed;
+
+
+	/**
+	 * start measuring
+	 * */
+	void start()
+	{
+		bytes=threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		start=System.nanoTime();
+	}
+
+
+	/**
+	 * stop measuring
+	 * @return elapsed nanos
+	 * */
+	long stop()
+	{
+		elapsed=System.nanoTime()-start;
+		bytes=threads.getThreadAllocatedBytes(Thread.currentThread().getId())-bytes;
+		return elapsed;
+	}
+
+
+	/**
+	 * print last measure
+	 * @param name measured path
+	 * @param ops operations run while measuring
+	 * @param unit operation name (i.e. lookup)
+	 * */
+	void print(String name, long ops, String unit)
+	{
+		System.out.println(String.format("%-34s %10.1f ns/%s %12.0f %s/s %8.1f B/%s",
+				name, (double)elapsed/ops, unit, ops*1e9/elapsed, unit, (double)bytes/ops, unit));
+	}
+
+}
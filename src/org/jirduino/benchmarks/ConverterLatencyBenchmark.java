@@ -0,0 +1,252 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jirduino.core.Protocols;
+import org.jirduino.core.Signal;
+import org.jirduino.drivers.IRLib2Device;
+import org.jirduino.drivers.IRLib2Simulator;
+import org.jirduino.drivers.IRTransmitListener;
+import org.jirduino.helpers.LatencyHistogram;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+import org.jirduino.translators.SignalConverter;
+import org.jirduino.translators.SignalConverterListener;
+import org.jirduino.translators.SignalRule;
+import org.jirduino.translators.SignalRuleTable;
+
+/**
+ * SignalConverter end-to-end latency benchmark. A simulated Arduino
+ * (IRLib2Simulator) emits IR frames at a fixed rate, SignalConverter runs
+ * on IRLib2Device with command channel and no send guard time, and each
+ * translated signal is matched to its frame when simulated Arduino gets
+ * its send command.
+ *
+ * For each frame rate it prints throughput, frames blocked because Arduino
+ * receiver was disabled by a transmit burst, frames dropped by host and
+ * latency histograms (in micros):
+ *
+ * <pre>
+ *     link       frame emitted - frame received by converter
+ *     resolve    frame received - rule found
+ *     dispatch   frame received - translated signal sent by IRDevice (Arduino response)
+ *     end-to-end frame emitted - send command got by Arduino
+ * </pre>
+ *
+ * With a p99 SLO, it exits with status 1 if end-to-end p99 exceeds it at
+ * any rate.
+ *
+ * Use: java org.jirduino.benchmarks.ConverterLatencyBenchmark [seconds] [baudrate] [p99 SLO micros] [frame rates...]
+ *
+ * baudrate 0 simulates no transfer time and no latency, so only host side is measured.
+ *
+ * @author Emanuele Paiano
+ * */
+public class ConverterLatencyBenchmark {
+
+	private static final int[] RATES={100, 1000, 5000, 20000};
+
+	/**
+	 * distinct input signals (power of two): frame sequence number modulo RULES is its code
+	 * */
+	private static final int RULES=1<<16;
+
+	private static final long INPUT_BASE=0x10000000L;
+
+	private static final long OUTPUT_BASE=0x20000000L;
+
+	/**
+	 * pause (in millis) without sent signals ending a run
+	 * */
+	private static final long DRAIN_TIME=300;
+
+	/**
+	 * emitting time of last frame for each code
+	 * */
+	private static final AtomicLongArray emitted=new AtomicLongArray(RULES);
+
+	private static final AtomicLong transmitted=new AtomicLong();
+
+	private static final LatencyHistogram link=new LatencyHistogram();
+
+	private static final LatencyHistogram resolve=new LatencyHistogram();
+
+	private static final LatencyHistogram dispatch=new LatencyHistogram();
+
+	private static final LatencyHistogram endToEnd=new LatencyHistogram();
+
+
+	public static void main(String[] args) {
+		long seconds=args.length>0 ? Long.parseLong(args[0]) : 1;
+		int baudRate=args.length>1 ? Integer.parseInt(args[1]) : 0;
+		long slo=args.length>2 ? Long.parseLong(args[2]) : 0;
+		int[] rates=RATES;
+
+		if (args.length>3) {
+			rates=new int[args.length-3];
+			for(int i=3;i<args.length;i++)
+				rates[i-3]=Integer.parseInt(args[i]);
+		}
+
+		IRLib2Simulator simulator=baudRate>0 ? new IRLib2Simulator(baudRate, IRDeviceDefaultSettings.SIMULATOR_LATENCY,
+				IRDeviceDefaultSettings.SIMULATOR_JITTER, 0) : new IRLib2Simulator(0, 0, 0, 0);
+		IRLib2Device ir=new IRLib2Device(simulator);
+
+		if (!ir.init()) {
+			System.out.println("Simulator not ready");
+			return;
+		}
+
+		ir.startCommandChannel();
+
+		List<SignalRule> ruleList=new ArrayList<SignalRule>(RULES);
+		for(int i=0;i<RULES;i++)
+			ruleList.add(new SignalRule(new Signal(Protocols.NEC, INPUT_BASE+i, 32), new Signal(Protocols.NECx, OUTPUT_BASE+i, 32)));
+
+		SignalRuleTable rules=new SignalRuleTable();
+		rules.addRules(ruleList);
+
+		final SignalConverter converter=new SignalConverter(rules, ir);
+		converter.setSendGuardTime(0);
+		converter.addListener(new Probe());
+		simulator.addTransmitListener(new TransmitProbe());
+
+		Thread runner=new Thread(converter, "ConverterLatencyBenchmark-converter");
+		runner.setDaemon(true);
+		runner.start();
+
+		System.out.println("duration: "+seconds+" s, baudrate: "+(baudRate>0 ? baudRate : "no transfer time")
+				+", rules: "+RULES);
+
+		boolean failed=false;
+
+		for(int rate: rates) {
+			long p99=run(simulator, rate, seconds);
+
+			if (slo>0 && p99>slo) {
+				System.out.println("SLO FAILED: end-to-end p99 "+p99+" us > "+slo+" us");
+				failed=true;
+			}
+		}
+
+		converter.stop();
+		ir.disconnect();
+		simulator.shutdown();
+
+		if (failed)
+			System.exit(1);
+	}
+
+
+	/**
+	 * emit frames at rate, then wait for last translated signals
+	 * @return end-to-end p99 (in micros)
+	 * */
+	private static long run(IRLib2Simulator simulator, int rate, long seconds) {
+		link.reset();
+		resolve.reset();
+		dispatch.reset();
+		endToEnd.reset();
+
+		long before=transmitted.get();
+		long frames=rate*seconds;
+		long period=TimeUnit.SECONDS.toNanos(1)/rate;
+		long start=System.nanoTime();
+		long next=start;
+		long sent=0;
+
+		for(long seq=0;seq<frames;seq++) {
+			long wait=next-System.nanoTime();
+			if (wait>0)
+				LockSupport.parkNanos(wait);
+
+			int code=(int)(seq & (RULES-1));
+			emitted.set(code, System.nanoTime());
+
+			if (simulator.emit(new Signal(Protocols.NEC, INPUT_BASE+code, 32)))
+				sent++;
+
+			next+=period;
+		}
+
+		long count=transmitted.get();
+		long last=System.nanoTime();
+
+		while(System.nanoTime()-last<TimeUnit.MILLISECONDS.toNanos(DRAIN_TIME)) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+
+			if (transmitted.get()!=count) {
+				count=transmitted.get();
+				last=System.nanoTime();
+			}
+		}
+
+		count-=before;
+
+		System.out.println("");
+		System.out.println(String.format("%d frames/s: %.0f translated/s, %d offered, %d blocked (receiver off), %d translated, %d dropped",
+				rate, count*1e9/(last-start), frames, frames-sent, count, sent-count));
+		System.out.println("  link       "+link.toString(1000));
+		System.out.println("  resolve    "+resolve.toString(1000));
+		System.out.println("  dispatch   "+dispatch.toString(1000));
+		System.out.println("  end-to-end "+endToEnd.toString(1000));
+
+		return endToEnd.getValueAtPercentile(99)/1000;
+	}
+
+
+	/**
+	 * records converter stages latencies
+	 * */
+	private static class Probe implements SignalConverterListener {
+
+		@Override
+		public void onResolved(Signal in, SignalRule rule, long receivedNanos, long resolvedNanos) {
+			if (!in.hasCode())
+				return;
+
+			link.record(receivedNanos-emitted.get((int)(in.getCode()-INPUT_BASE) & (RULES-1)));
+			resolve.record(resolvedNanos-receivedNanos);
+		}
+
+		@Override
+		public void onSent(Signal out, boolean success, long receivedNanos, long sentNanos) {
+			if (success)
+				dispatch.record(sentNanos-receivedNanos);
+		}
+	}
+
+
+	/**
+	 * records end-to-end latency
+	 * */
+	private static class TransmitProbe implements IRTransmitListener {
+
+		@Override
+		public void onTransmit(Signal signal, long nanos) {
+			endToEnd.record(nanos-emitted.get((int)(signal.getCode()-OUTPUT_BASE) & (RULES-1)));
+			transmitted.incrementAndGet();
+		}
+	}
+
+}
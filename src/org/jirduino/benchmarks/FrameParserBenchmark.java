@@ -0,0 +1,118 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import org.jirduino.core.Signal;
+import org.jirduino.drivers.IRLib2Frame;
+import org.jirduino.helpers.JIRduinoHelper;
+
+/**
+ * IRLib2 response parsing benchmark. It compares JIRduinoHelper split
+ * helpers (getHexValue, getProtocolID, getProtocolBits and hex2decimal)
+ * with single pass IRLib2Frame parsing, printing time and allocated bytes
+ * for each received line.
+ *
+ * Use: java org.jirduino.benchmarks.FrameParserBenchmark [lines]
+ *
+ * @author Emanuele Paiano
+ * */
+public class FrameParserBenchmark {
+
+	private static final String[] LINES={"E0E040BF,7,32", "FFEA15,1,32", "A90,2,12", "20DF10EF,1,32", "250 OK"};
+
+	private static final int ROUNDS=5;
+
+	/**
+	 * prevents dead code elimination
+	 * */
+	private static long sink=0;
+
+
+	public static void main(String[] args) {
+		int lines=args.length>0 ? Integer.parseInt(args[0]) : 2000000;
+
+		System.out.println("lines: "+lines);
+		System.out.println("");
+
+		for(int round=1;round<=ROUNDS;round++) {
+			boolean last=round==ROUNDS;
+			runHelper(lines, last);
+			runFrame(lines, last);
+			runFrameSignal(lines, last);
+		}
+
+		if (sink==42)
+			System.out.println("");
+	}
+
+
+	private static void runHelper(int lines, boolean print) {
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<lines;i++) {
+			String line=LINES[i%LINES.length];
+			String value=JIRduinoHelper.getHexValue(line);
+
+			if (value.isEmpty())
+				continue;
+
+			sink+=JIRduinoHelper.hex2decimal(value)+Integer.parseInt(JIRduinoHelper.getProtocolID(line))
+					+Integer.parseInt(JIRduinoHelper.getProtocolBits(line));
+		}
+
+		timer.stop();
+
+		if (print)
+			timer.print("JIRduinoHelper split + hex2decimal", lines, "line");
+	}
+
+
+	private static void runFrame(int lines, boolean print) {
+		IRLib2Frame frame=new IRLib2Frame();
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<lines;i++)
+			if (frame.parse(LINES[i%LINES.length]))
+				sink+=frame.getValue()+frame.getProtocol()+frame.getBits();
+
+		timer.stop();
+
+		if (print)
+			timer.print("IRLib2Frame.parse()", lines, "line");
+	}
+
+
+	private static void runFrameSignal(int lines, boolean print) {
+		IRLib2Frame frame=new IRLib2Frame();
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<lines;i++)
+			if (frame.parse(LINES[i%LINES.length])) {
+				Signal signal=frame.toSignal();
+				sink+=signal.getCode();
+			}
+
+		timer.stop();
+
+		if (print)
+			timer.print("IRLib2Frame.parse() + toSignal()", lines, "line");
+	}
+
+}
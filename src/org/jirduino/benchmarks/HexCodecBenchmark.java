@@ -0,0 +1,120 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+
+import org.jirduino.helpers.HexCodec;
+
+/**
+ * Send command encoding benchmark. It compares the old BigInteger based
+ * path (hex2decimal, String.valueOf and concatenation) with HexCodec 
+ * writing into a reusable command buffer, printing time and allocated 
+ * bytes for each command.
+ * 
+ * Use: java org.jirduino.benchmarks.HexCodecBenchmark [commands]
+ * 
+ * @author Emanuele Paiano
+ * */
+public class HexCodecBenchmark {
+	
+	private static final String[] VALUES={"E0E040BF", "FFEA15", "A90", "20DF10EF", "1FE48B7", "C"};
+	
+	private static final int ROUNDS=5;
+	
+	private static final com.sun.management.ThreadMXBean threads=
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+	
+	/**
+	 * prevents dead code elimination
+	 * */
+	private static long sink=0;
+	
+	
+	public static void main(String[] args) {
+		int commands=args.length>0 ? Integer.parseInt(args[0]) : 1000000;
+		
+		System.out.println("commands: "+commands);
+		System.out.println("");
+		
+		for(int round=1;round<=ROUNDS;round++) {
+			boolean last=round==ROUNDS;
+			run("BigInteger + concat", new LegacyEncoder(), commands, last);
+			run("HexCodec + command buffer", new CodecEncoder(), commands, last);
+		}
+		
+		if (sink==42)
+			System.out.println("");
+	}
+	
+	
+	/**
+	 * run an encoder, printing results if print is true
+	 * */
+	private static void run(String name, Encoder encoder, int commands, boolean print) {
+		long bytes=threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long start=System.nanoTime();
+		
+		for(int i=0;i<commands;i++)
+			sink+=encoder.encode(7, VALUES[i%VALUES.length]).length();
+		
+		long elapsed=System.nanoTime()-start;
+		bytes=threads.getThreadAllocatedBytes(Thread.currentThread().getId())-bytes;
+		
+		if (print)
+			System.out.println(String.format("%-26s %8.1f ns/command %8.1f B/command",
+					name, (double)elapsed/commands, (double)bytes/commands));
+	}
+	
+	
+	/**
+	 * build send command for protocol and hex value
+	 * */
+	private interface Encoder {
+		public CharSequence encode(int protocol, String hex);
+	}
+	
+	
+	/**
+	 * command encoding as done before HexCodec
+	 * */
+	private static class LegacyEncoder implements Encoder {
+		@Override
+		public CharSequence encode(int protocol, String hex) {
+			String command=String.valueOf(Long.parseLong(new BigInteger(hex, 16).toString()));
+			return "0"+","+String.valueOf(protocol)+","+String.valueOf(command);
+		}
+	}
+	
+	
+	/**
+	 * command encoding as done by IRLib2Device
+	 * */
+	private static class CodecEncoder implements Encoder {
+		
+		private final StringBuilder command=new StringBuilder(32);
+		
+		@Override
+		public CharSequence encode(int protocol, String hex) {
+			command.setLength(0);
+			command.append(0).append(',').append(protocol).append(',');
+			return HexCodec.appendUnsignedDecimal(command, HexCodec.parseHex(hex));
+		}
+	}
+
+}
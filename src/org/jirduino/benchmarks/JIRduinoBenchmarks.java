@@ -0,0 +1,57 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import org.serialduino.benchmarks.SerialMonitorBenchmark;
+
+/**
+ * Runs all jIRDuino and SerialDuino benchmarks with their default settings,
+ * so results of a change can be compared with previous ones.
+ *
+ * Use: java org.jirduino.benchmarks.JIRduinoBenchmarks
+ *
+ * @author Emanuele Paiano
+ * */
+public class JIRduinoBenchmarks {
+
+	public static void main(String[] args) {
+		section("HexCodecBenchmark");
+		HexCodecBenchmark.main(new String[0]);
+
+		section("FrameParserBenchmark");
+		FrameParserBenchmark.main(new String[0]);
+
+		section("SerialMonitorBenchmark");
+		SerialMonitorBenchmark.main(new String[0]);
+
+		section("RuleTableBenchmark");
+		RuleTableBenchmark.main(new String[0]);
+
+		section("JSONControllerBenchmark");
+		JSONControllerBenchmark.main(new String[0]);
+
+		section("SimulatedLinkBenchmark");
+		SimulatedLinkBenchmark.main(new String[0]);
+	}
+
+
+	private static void section(String name) {
+		System.out.println("");
+		System.out.println("----- "+name+" -----");
+	}
+
+}
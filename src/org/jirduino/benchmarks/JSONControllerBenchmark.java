@@ -0,0 +1,115 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import java.io.File;
+
+import org.jirduino.config.JSONController;
+import org.jirduino.settings.RemoteDefaultSettings;
+
+/**
+ * JSONController.load() benchmark, for different key numbers. Generated
+ * configs are saved into RemoteDefaultSettings.JSON_FOLDER and deleted at
+ * the end, so it must be run from jIRDuino working folder.
+ *
+ * Use: java org.jirduino.benchmarks.JSONControllerBenchmark [loads] [key numbers...]
+ *
+ * @author Emanuele Paiano
+ * */
+public class JSONControllerBenchmark {
+
+	private static final int[] KEYS={10, 100, 1000};
+
+	private static final int ROUNDS=5;
+
+	/**
+	 * prevents dead code elimination
+	 * */
+	private static long sink=0;
+
+
+	public static void main(String[] args) {
+		int loads=args.length>0 ? Integer.parseInt(args[0]) : 2000;
+		int[] keys=KEYS;
+
+		if (args.length>1) {
+			keys=new int[args.length-1];
+			for(int i=1;i<args.length;i++)
+				keys[i-1]=Integer.parseInt(args[i]);
+		}
+
+		System.out.println("loads: "+loads);
+		System.out.println("");
+
+		for(int count: keys) {
+			String name="benchmark-"+count;
+
+			if (!makeConfig(name, count)) {
+				System.out.println("Can't write "+RemoteDefaultSettings.JSON_FOLDER+name);
+				return;
+			}
+
+			// bigger configs take longer, keep total time similar
+			int runs=Math.max(1, loads*10/count);
+
+			for(int round=1;round<=ROUNDS;round++)
+				run(name, count, runs, round==ROUNDS);
+
+			new File(RemoteDefaultSettings.JSON_FOLDER+"/"+name+"."+RemoteDefaultSettings.JSON_SUFFIX).delete();
+		}
+
+		if (sink==42)
+			System.out.println("");
+	}
+
+
+	/**
+	 * save a config with count keys
+	 * */
+	private static boolean makeConfig(String name, int count) {
+		JSONController config=new JSONController(name);
+		config.setDeviceName("Benchmark");
+		config.setProtocolId(7);
+		config.setProtocolName("NECx");
+		config.setCommandLength(32);
+
+		for(int i=0;i<count;i++) {
+			String value=Long.toHexString(0xE0E00000L+i*31).toUpperCase();
+			config.addKey("KEY_"+i, value, value, value);
+		}
+
+		return config.save(name);
+	}
+
+
+	private static void run(String name, int count, int runs, boolean print) {
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<runs;i++) {
+			JSONController config=new JSONController(name);
+			if (config.load())
+				sink+=config.getAvailableKeys().size();
+		}
+
+		timer.stop();
+
+		if (print)
+			timer.print("load(), "+count+" keys", runs, "load");
+	}
+
+}
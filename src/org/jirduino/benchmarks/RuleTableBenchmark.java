@@ -0,0 +1,143 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.jirduino.core.Signal;
+import org.jirduino.translators.SignalRule;
+import org.jirduino.translators.SignalRuleTable;
+
+/**
+ * SignalRuleTable lookup benchmark, for different table sizes. Received
+ * signals are half matching a rule, half not matching.
+ *
+ * Use: java org.jirduino.benchmarks.RuleTableBenchmark [lookups] [table sizes...]
+ *
+ * @author Emanuele Paiano
+ * */
+public class RuleTableBenchmark {
+
+	private static final int[] SIZES={10, 100, 1000, 10000};
+
+	private static final int ROUNDS=5;
+
+	/**
+	 * distinct received signals
+	 * */
+	private static final int RECEIVED=1024;
+
+	/**
+	 * prevents dead code elimination
+	 * */
+	private static long sink=0;
+
+
+	public static void main(String[] args) {
+		int lookups=args.length>0 ? Integer.parseInt(args[0]) : 2000000;
+		int[] sizes=SIZES;
+
+		if (args.length>1) {
+			sizes=new int[args.length-1];
+			for(int i=1;i<args.length;i++)
+				sizes[i-1]=Integer.parseInt(args[i]);
+		}
+
+		System.out.println("lookups: "+lookups);
+		System.out.println("");
+
+		for(int size: sizes) {
+			SignalRuleTable table=new SignalRuleTable();
+			Signal[] received=makeTable(table, size);
+
+			for(int round=1;round<=ROUNDS;round++) {
+				boolean last=round==ROUNDS;
+				run("lookup(Signal), "+size+" rules", table, received, lookups, last);
+				runCode("lookup(protocol, code), "+size+" rules", table, received, lookups, last);
+			}
+		}
+
+		if (sink==42)
+			System.out.println("");
+	}
+
+
+	/**
+	 * fill table with size rules
+	 * @return received signals, half of them matching a rule
+	 * */
+	private static Signal[] makeTable(SignalRuleTable table, int size) {
+		Random random=new Random(size);
+		Signal[] received=new Signal[RECEIVED];
+		List<SignalRule> rules=new ArrayList<SignalRule>(size);
+
+		for(int i=0;i<size;i++) {
+			Signal in=new Signal(7, random.nextLong() & 0xFFFFFFFFL, 32);
+			rules.add(new SignalRule(in, new Signal(1, random.nextLong() & 0xFFFFFFL, 24)));
+
+			if (i<RECEIVED/2)
+				received[i*2 % RECEIVED]=in;
+		}
+
+		// a single snapshot, adding rules one by one copies table each time
+		table.addRules(rules);
+
+		for(int i=0;i<RECEIVED;i++)
+			if (received[i]==null)
+				received[i]=new Signal(7, random.nextLong() & 0xFFFFFFFFL, 32);
+
+		return received;
+	}
+
+
+	private static void run(String name, SignalRuleTable table, Signal[] received, int lookups, boolean print) {
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<lookups;i++) {
+			SignalRule rule=table.lookup(received[i & (RECEIVED-1)]);
+			if (rule!=null)
+				sink++;
+		}
+
+		timer.stop();
+
+		if (print)
+			timer.print(name, lookups, "lookup");
+	}
+
+
+	private static void runCode(String name, SignalRuleTable table, Signal[] received, int lookups, boolean print) {
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<lookups;i++) {
+			Signal in=received[i & (RECEIVED-1)];
+			SignalRule rule=table.lookup(in.getProtocol(), in.getCode());
+			if (rule!=null)
+				sink++;
+		}
+
+		timer.stop();
+
+		if (print)
+			timer.print(name, lookups, "lookup");
+	}
+
+}
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jirduino.core.Signal;
+import org.jirduino.drivers.IRLib2Device;
+import org.jirduino.drivers.IRLib2Simulator;
+
+/**
+ * IRLib2Device benchmark on a simulated Arduino (IRLib2Simulator with no
+ * transfer time, latency or jitter), so it measures host side costs only.
+ * It prints sending time for blocking and pipelined sends, then receiving
+ * throughput and lost frames for different IR frame rates.
+ *
+ * Use: java org.jirduino.benchmarks.SimulatedLinkBenchmark [sends] [frame rates...]
+ *
+ * @author Emanuele Paiano
+ * */
+public class SimulatedLinkBenchmark {
+
+	private static final int[] RATES={100, 1000, 10000, 50000};
+
+	private static final int ROUNDS=3;
+
+	/**
+	 * receiving run length (in millis) for each frame rate
+	 * */
+	private static final long RECEIVE_TIME=1000;
+
+	/**
+	 * pause (in millis) without received frames ending a receiving run
+	 * */
+	private static final long DRAIN_TIME=200;
+
+	private static final Signal SIGNAL=new Signal(7, 0xE0E040BFL, 32);
+
+
+	public static void main(String[] args) {
+		int sends=args.length>0 ? Integer.parseInt(args[0]) : 20000;
+		int[] rates=RATES;
+
+		if (args.length>1) {
+			rates=new int[args.length-1];
+			for(int i=1;i<args.length;i++)
+				rates[i-1]=Integer.parseInt(args[i]);
+		}
+
+		IRLib2Simulator simulator=new IRLib2Simulator(0, 0, 0, 0);
+		IRLib2Device ir=new IRLib2Device(simulator);
+
+		if (!ir.init()) {
+			System.out.println("Simulator not ready");
+			return;
+		}
+
+		System.out.println("sends: "+sends);
+		System.out.println("");
+
+		for(int round=1;round<=ROUNDS;round++)
+			runSend(ir, sends, round==ROUNDS);
+
+		ir.startCommandChannel();
+
+		for(int round=1;round<=ROUNDS;round++)
+			runSendAsync(ir, sends, round==ROUNDS);
+
+		ir.setReceiverEnabled(true);
+		AtomicLong received=startReceiver(ir);
+		System.out.println("");
+
+		for(int rate: rates)
+			runReceive(simulator, received, rate);
+
+		ir.disconnect();
+		simulator.shutdown();
+	}
+
+
+	private static void runSend(IRLib2Device ir, int sends, boolean print) {
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<sends;i++)
+			ir.sendData(SIGNAL);
+
+		timer.stop();
+
+		if (print)
+			timer.print("sendData()", sends, "send");
+	}
+
+
+	private static void runSendAsync(IRLib2Device ir, int sends, boolean print) {
+		List<CompletableFuture<Boolean>> results=new ArrayList<CompletableFuture<Boolean>>(sends);
+		BenchmarkTimer timer=new BenchmarkTimer();
+		timer.start();
+
+		for(int i=0;i<sends;i++)
+			results.add(ir.sendDataAsync(SIGNAL));
+
+		CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+		timer.stop();
+
+		if (print)
+			timer.print("sendDataAsync(), pipelined", sends, "send");
+	}
+
+
+	/**
+	 * emit frames at rate for RECEIVE_TIME, counting frames got by receiver thread.
+	 * Frames dropped by host (i.e. full received queue) are printed as lost.
+	 * */
+	private static void runReceive(final IRLib2Simulator simulator, AtomicLong received, final int rate) {
+		final int frames=(int)(rate*RECEIVE_TIME/1000);
+
+		long emitted=simulator.getEmittedSignals();
+		long before=received.get();
+		long start=System.nanoTime();
+		long period=TimeUnit.SECONDS.toNanos(1)/rate;
+		long next=start;
+
+		for(int i=0;i<frames;i++) {
+			long wait=next-System.nanoTime();
+			if (wait>0)
+				LockSupport.parkNanos(wait);
+
+			simulator.emit(SIGNAL);
+			next+=period;
+		}
+
+		emitted=simulator.getEmittedSignals()-emitted;
+
+		// wait for last frames, until receiver stops making progress
+		long count=received.get();
+		long last=System.nanoTime();
+
+		while(System.nanoTime()-last<TimeUnit.MILLISECONDS.toNanos(DRAIN_TIME)) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+
+			if (received.get()!=count) {
+				count=received.get();
+				last=System.nanoTime();
+			}
+		}
+
+		long elapsed=last-start;
+		count-=before;
+
+		System.out.println(String.format("receiveData(), %6d frames/s %12.0f frame/s %8d emitted %8d lost",
+				rate, count*1e9/elapsed, emitted, emitted-count));
+	}
+
+
+	/**
+	 * start a thread receiving frames until link is closed
+	 * */
+	private static AtomicLong startReceiver(final IRLib2Device ir) {
+		final AtomicLong received=new AtomicLong();
+
+		Thread receiver=new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(!ir.receiveData().isEmpty())
+					received.incrementAndGet();
+			}
+		}, "SimulatedLinkBenchmark-receiver");
+		receiver.setDaemon(true);
+		receiver.start();
+
+		return received;
+	}
+
+}
@@ -286,9 +286,9 @@ public class JSONController implements ConfigController {
 	 * */
 	public Signal addKey(String keyName, String valuePress, String valueRelease, String valueDown) 
 	{
-		Signal keyPress=new Signal(protocolId, valuePress, cmdLength);
-		Signal keyRelease=new Signal(protocolId, valueRelease, cmdLength);
-		Signal keyDown=new Signal(protocolId, valueDown, cmdLength);
+		Signal keyPress=Signal.valueOf(protocolId, valuePress, cmdLength);
+		Signal keyRelease=Signal.valueOf(protocolId, valueRelease, cmdLength);
+		Signal keyDown=Signal.valueOf(protocolId, valueDown, cmdLength);
 		
 		return addKey(keyName, keyPress, keyRelease, keyDown);
 	}
@@ -308,8 +308,8 @@ public class JSONController implements ConfigController {
 		if (!keySet.contains(keyName))
 			keySet.add(keyName);
 		keyPressMap.put(keyName, keyPress.getValue());
-		keyDownMap.put(keyName, keyRelease.getValue());
-		keyReleaseMap.put(keyName, keyDown.getValue());
+		keyDownMap.put(keyName, keyDown.getValue());
+		keyReleaseMap.put(keyName, keyRelease.getValue());
 		return keyPress;
 		
 	}
@@ -318,7 +318,7 @@ public class JSONController implements ConfigController {
 	@Override
 	public Signal getKeyPress(String keyName) {
 		if (isPresent(keyName))
-			return new Signal(protocolId, keyPressMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyPressMap.get(keyName), cmdLength);
 		
 		return Signal.getEmptySignal();
 	}
@@ -326,7 +326,7 @@ public class JSONController implements ConfigController {
 	@Override
 	public Signal getKeyDown(String keyName) {
 		if (isPresent(keyName))
-			return new Signal(protocolId, keyDownMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyDownMap.get(keyName), cmdLength);
 		
 		return Signal.getEmptySignal();
 	}
@@ -334,7 +334,7 @@ public class JSONController implements ConfigController {
 	@Override
 	public Signal getKeyRelease(String keyName) {
 		if (isPresent(keyName))
-			return new Signal(protocolId, keyReleaseMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyReleaseMap.get(keyName), cmdLength);
 		
 		return Signal.getEmptySignal();
 	}
@@ -344,7 +344,7 @@ public class JSONController implements ConfigController {
 		if (isPresent(keyName)) {
 			keyPressMap.remove(keyName);
 			keyPressMap.put(keyName, key.getValue());
-			return new Signal(protocolId, keyPressMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyPressMap.get(keyName), cmdLength);
 		}
 		return Signal.getEmptySignal();
 		
@@ -355,7 +355,7 @@ public class JSONController implements ConfigController {
 		if (isPresent(keyName)) {
 			keyDownMap.remove(keyName);
 			keyDownMap.put(keyName, key.getValue());
-			return new Signal(protocolId, keyDownMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyDownMap.get(keyName), cmdLength);
 		}
 		return Signal.getEmptySignal();
 	}
@@ -365,7 +365,7 @@ public class JSONController implements ConfigController {
 		if (isPresent(keyName)) {
 			keyReleaseMap.remove(keyName);
 			keyReleaseMap.put(keyName, key.getValue());
-			return new Signal(protocolId, keyReleaseMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyReleaseMap.get(keyName), cmdLength);
 		}
 		return Signal.getEmptySignal();
 	}
@@ -378,7 +378,7 @@ public class JSONController implements ConfigController {
 			String removed=keyPressMap.get(keyName);
 			keyPressMap.remove(keyName);
 			keyPressMap.put(keyName, "0");
-			return new Signal(protocolId, removed, cmdLength);
+			return Signal.valueOf(protocolId, removed, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();		
@@ -391,7 +391,7 @@ public class JSONController implements ConfigController {
 			String removed=keyDownMap.get(keyName);
 			keyDownMap.remove(keyName);
 			keyDownMap.put(keyName, "0");
-			return new Signal(protocolId, removed, cmdLength);
+			return Signal.valueOf(protocolId, removed, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();	
@@ -404,7 +404,7 @@ public class JSONController implements ConfigController {
 			String removed=keyReleaseMap.get(keyName);
 			keyReleaseMap.remove(keyName);
 			keyReleaseMap.put(keyName, "0");
-			return new Signal(protocolId, removed, cmdLength);
+			return Signal.valueOf(protocolId, removed, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();	
@@ -684,7 +684,7 @@ public static Signal parseJSONSignal(JSONObject signal) {
 			int cmdLength = tmp != null ? tmp2.intValue() : 0;
 			
 			String value=(String) signal.get("value");
-			return new Signal(id, value, cmdLength);
+			return Signal.valueOf(id, value, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();
@@ -700,8 +700,16 @@ public static Signal parseJSONSignal(JSONObject signal) {
 			Signal signalOut=parseJSONSignal((JSONObject)rule.get("signal_out"));
 			long delay=(Long)rule.get("delay");
 			boolean enabled=(boolean)rule.get("enabled");
+			String zone=(String)rule.get("zone");
 			
-			return new SignalRule(signalIn, signalOut, delay, enabled);
+			Signal signalHold=rule.containsKey("signal_hold") ? 
+					parseJSONSignal((JSONObject)rule.get("signal_hold")) : Signal.getEmptySignal();
+			Signal signalRelease=rule.containsKey("signal_release") ? 
+					parseJSONSignal((JSONObject)rule.get("signal_release")) : Signal.getEmptySignal();
+			Signal signalInHold=rule.containsKey("signal_in_hold") ? 
+					parseJSONSignal((JSONObject)rule.get("signal_in_hold")) : Signal.getEmptySignal();
+			
+			return new SignalRule(signalIn, signalOut, delay, enabled, zone, signalHold, signalRelease, signalInHold);
 		}
 		
 		return SignalRule.getEmptySignalRule();
@@ -170,6 +170,18 @@ public class JSONConverter implements ConfigConverter{
 	    main.put("delay", rule.getDelaySend());
 	    main.put("enabled", rule.isEnabled());
 	    
+	    if (rule.getZone()!=null)
+	    	main.put("zone", rule.getZone());
+	    
+	    if (!rule.getOutHold().isEmpty())
+	    	main.put("signal_hold", generateJSONSignal(rule.getOutHold()));
+	    
+	    if (!rule.getOutRelease().isEmpty())
+	    	main.put("signal_release", generateJSONSignal(rule.getOutRelease()));
+	    
+	    if (!rule.getInHold().isEmpty())
+	    	main.put("signal_in_hold", generateJSONSignal(rule.getInHold()));
+	    
 	    return main;
 		
 	}
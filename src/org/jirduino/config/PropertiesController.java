@@ -143,9 +143,9 @@ public class PropertiesController implements ConfigController{
 	 * */
 	public Signal addKey(String keyName, String valuePress, String valueRelease, String valueDown) 
 	{
-		Signal keyPress=new Signal(protocolId, valuePress, cmdLength);
-		Signal keyRelease=new Signal(protocolId, valueRelease, cmdLength);
-		Signal keyDown=new Signal(protocolId, valueDown, cmdLength);
+		Signal keyPress=Signal.valueOf(protocolId, valuePress, cmdLength);
+		Signal keyRelease=Signal.valueOf(protocolId, valueRelease, cmdLength);
+		Signal keyDown=Signal.valueOf(protocolId, valueDown, cmdLength);
 		
 		return addKey(keyName, keyPress, keyRelease, keyDown);
 	}
@@ -176,7 +176,7 @@ public class PropertiesController implements ConfigController{
 	@Override
 	public Signal getKeyPress(String keyName) {
 		if (isPresent(keyName))
-			return new Signal(protocolId, keyPressMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyPressMap.get(keyName), cmdLength);
 		
 		return Signal.getEmptySignal();
 	}
@@ -184,7 +184,7 @@ public class PropertiesController implements ConfigController{
 	@Override
 	public Signal getKeyDown(String keyName) {
 		if (isPresent(keyName))
-			return new Signal(protocolId, keyDownMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyDownMap.get(keyName), cmdLength);
 		
 		return Signal.getEmptySignal();
 	}
@@ -192,7 +192,7 @@ public class PropertiesController implements ConfigController{
 	@Override
 	public Signal getKeyRelease(String keyName) {
 		if (isPresent(keyName))
-			return new Signal(protocolId, keyReleaseMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyReleaseMap.get(keyName), cmdLength);
 		
 		return Signal.getEmptySignal();
 	}
@@ -202,7 +202,7 @@ public class PropertiesController implements ConfigController{
 		if (isPresent(keyName)) {
 			keyPressMap.remove(keyName);
 			keyPressMap.put(keyName, key.getValue());
-			return new Signal(protocolId, keyPressMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyPressMap.get(keyName), cmdLength);
 		}
 		return Signal.getEmptySignal();
 		
@@ -213,7 +213,7 @@ public class PropertiesController implements ConfigController{
 		if (isPresent(keyName)) {
 			keyDownMap.remove(keyName);
 			keyDownMap.put(keyName, key.getValue());
-			return new Signal(protocolId, keyDownMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyDownMap.get(keyName), cmdLength);
 		}
 		return Signal.getEmptySignal();
 	}
@@ -223,7 +223,7 @@ public class PropertiesController implements ConfigController{
 		if (isPresent(keyName)) {
 			keyReleaseMap.remove(keyName);
 			keyReleaseMap.put(keyName, key.getValue());
-			return new Signal(protocolId, keyReleaseMap.get(keyName), cmdLength);
+			return Signal.valueOf(protocolId, keyReleaseMap.get(keyName), cmdLength);
 		}
 		return Signal.getEmptySignal();
 	}
@@ -236,7 +236,7 @@ public class PropertiesController implements ConfigController{
 			String removed=keyPressMap.get(keyName);
 			keyPressMap.remove(keyName);
 			keyPressMap.put(keyName, "0");
-			return new Signal(protocolId, removed, cmdLength);
+			return Signal.valueOf(protocolId, removed, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();		
@@ -249,7 +249,7 @@ public class PropertiesController implements ConfigController{
 			String removed=keyDownMap.get(keyName);
 			keyDownMap.remove(keyName);
 			keyDownMap.put(keyName, "0");
-			return new Signal(protocolId, removed, cmdLength);
+			return Signal.valueOf(protocolId, removed, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();	
@@ -262,7 +262,7 @@ public class PropertiesController implements ConfigController{
 			String removed=keyReleaseMap.get(keyName);
 			keyReleaseMap.remove(keyName);
 			keyReleaseMap.put(keyName, "0");
-			return new Signal(protocolId, removed, cmdLength);
+			return Signal.valueOf(protocolId, removed, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();	
@@ -16,6 +16,11 @@
 
 package org.jirduino.core;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jirduino.helpers.HexCodec;
+
 
 /**
  * A Signal object is a pair [id, value], where
@@ -25,26 +30,63 @@ package org.jirduino.core;
  * 	<li>value: Hex Remote Command (i.e. E0E040BF for Samsung NECx Power key)</li>
  * </ul>
  * 
+ * Signals are immutable. Hex value is stored as unsigned 64-bit code, 
+ * so getValue() returns it uppercase and without leading zeros. 
+ * Values longer than 16 hex digits (or not hex) are stored as text.
+ * Signals loaded from profiles should be created with valueOf(), 
+ * which returns a shared instance for same protocol, value and bits.
+ * 
  * @author Emanuele Paiano
  * 
  * */
-public class Signal {
+public final class Signal {
+	
+	/**
+	 * Empty signal [0,"0"]
+	 * */
+	private static final Signal EMPTY=new Signal(0, 0L, 0);
+	
+	/**
+	 * interned signals, see valueOf()
+	 * */
+	private static final ConcurrentMap<Signal, Signal> pool=new ConcurrentHashMap<Signal, Signal>();
 	
 	/**
 	 * id protocol
 	 * */
-	private int protocol=0;
+	private final int protocol;
 	
 	
 	/**
-	 * hex value command
+	 * command code, valid if hasCode is true
 	 * */
-	private String value;
+	private final long code;
+	
+	/**
+	 * true if value is stored as code
+	 * */
+	private final boolean hasCode;
+	
+	/**
+	 * command value, only if it isn't a 64-bit hex code
+	 * */
+	private final String text;
 	
 	/**
 	 * protocol bits
 	 * */
-	private int bits=0;
+	private final int bits;
+	
+	/**
+	 * cached hash code
+	 * */
+	private final int hash;
+	
+	/**
+	 * hex value of code, formatted by first getValue() call. Threads racing 
+	 * on it format equal strings, so it's not synchronized (like String hash)
+	 * */
+	private String hexValue;
 	
 
 	/**
@@ -55,11 +97,36 @@ public class Signal {
 	 * */
 	public Signal(int id, String value, int bits) 
 	{
-		this.setProtocol(id);
+		this.protocol=id;
+		this.bits=bits;
 		
-		this.setValue(value);
+		this.hasCode=HexCodec.isHex(value);
 		
-		this.setBits(bits);
+		if (hasCode) {
+			this.code=HexCodec.parseHex(value);
+			this.text=null;
+		}else {
+			this.code=0;
+			this.text=value;
+		}
+		
+		this.hash=computeHash();
+	}
+	
+	/**
+	 * Constructor.
+	 * @param id protocol id (i.e. Protocols.NECx)
+	 * @param code unsigned command code (i.e. 0xE0E040BFL)
+	 * @param bits bit number (i.e. 32)
+	 * */
+	public Signal(int id, long code, int bits) 
+	{
+		this.protocol=id;
+		this.code=code;
+		this.hasCode=true;
+		this.text=null;
+		this.bits=bits;
+		this.hash=computeHash();
 	}
 
 	/**
@@ -69,26 +136,37 @@ public class Signal {
 	public int getProtocol() {
 		return protocol;
 	}
-	
-	/**
-	 * set protocol id
-	 * */
-	public void setProtocol(int id) {
-		this.protocol = id;
-	}
 
 	/**
 	 * Return HEX value command
 	 * */
 	public String getValue() {
+		if (!hasCode)
+			return text;
+		
+		String value=hexValue;
+		
+		if (value==null) {
+			value=HexCodec.toHex(code);
+			hexValue=value;
+		}
+		
 		return value;
 	}
-
+	
 	/**
-	 * Set HEX value command
+	 * Return true if value is stored as 64-bit code, false otherwise 
+	 * (value longer than 16 hex digits, not hex or null)
 	 * */
-	public void setValue(String value) {
-		this.value = value;
+	public boolean hasCode() {
+		return hasCode;
+	}
+	
+	/**
+	 * Return command code. Valid only if hasCode() is true.
+	 * */
+	public long getCode() {
+		return code;
 	}
 
 	/**
@@ -97,13 +175,13 @@ public class Signal {
 	public int getBits() {
 		return bits;
 	}
-
+	
 	
 	/**
-	 * Set bit number command
+	 * Return true if this is an empty signal (protocol 0, value 0)
 	 * */
-	public void setBits(int bits) {
-		this.bits = bits;
+	public boolean isEmpty() {
+		return isEquals(EMPTY);
 	}
 	
 	
@@ -113,7 +191,16 @@ public class Signal {
 	 * @return true if IDs and Protocols are same, false otherwise
 	 * */
 	public boolean isEquals(Signal another) {
-		return (another.protocol==this.getProtocol()) && (another.value==this.getValue());
+		if (another==this)
+			return true;
+		
+		if (another.protocol!=protocol || another.hasCode!=hasCode)
+			return false;
+		
+		if (hasCode)
+			return another.code==code;
+		
+		return text==null ? another.text==null : text.equals(another.text);
 	}
 	
 	
@@ -142,7 +229,7 @@ public class Signal {
 	 * */
 	@Override
 	public int hashCode() {
-		return (this.getProtocol()+ this.getValue()).hashCode();
+		return hash;
 	}	
 	
 	
@@ -151,7 +238,46 @@ public class Signal {
 	 * */
 	public static Signal getEmptySignal() 
 	{
-		return new Signal(0,"0", 0);
+		return EMPTY;
+	}
+	
+	
+	/**
+	 * Return shared signal for protocol, value and bits. Use it for signals
+	 * loaded from profiles, to keep a single instance for each command.
+	 * @param id protocol id (i.e. Protocols.NECx)
+	 * @param value hex command (i.e. E0E040BF)
+	 * @param bits bit number (i.e. 32)
+	 * */
+	public static Signal valueOf(int id, String value, int bits) 
+	{
+		return intern(new Signal(id, value, bits));
+	}
+	
+	
+	/**
+	 * Return shared instance of signal
+	 * @param signal signal to intern
+	 * @return shared signal with same protocol, value and bits
+	 * */
+	public static Signal intern(Signal signal) 
+	{
+		Signal shared=pool.putIfAbsent(signal, signal);
+		
+		if (shared==null)
+			return signal;
+		
+		// equality doesn't check bits: keep a different signal for different bits
+		return shared.bits==signal.bits ? shared : signal;
+	}
+	
+	
+	/**
+	 * hash code from protocol and value
+	 * */
+	private int computeHash() {
+		int h=31*protocol+(int)(code ^ (code>>>32));
+		return (hasCode || text==null) ? h : 31*h+text.hashCode();
 	}
 	
 
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.jirduino.core.Signal;
+
+
+/**
+ * Reads frames captured by IRCaptureWriter, in capture order. File is
+ * memory-mapped read only (captures up to 2 GB).
+ *
+ * Example:
+ *
+ * <pre>
+ *     IRCaptureReader capture=new IRCaptureReader("living-room.ircap");
+ *     while(capture.next())
+ *         System.out.println(capture.getTime()+" "+capture.getSignal());
+ *     capture.close();
+ * </pre>
+ *
+ * @see IRCaptureWriter
+ * @author Emanuele Paiano
+ * */
+public class IRCaptureReader {
+
+	private final FileChannel file;
+
+	private final MappedByteBuffer data;
+
+	private final long startTime;
+
+	/**
+	 * current frame fields
+	 * */
+	private long time;
+
+	private int protocol;
+
+	private int bits;
+
+	private long code;
+
+	private String text;
+
+
+	/**
+	 * Constructor.
+	 * @param path capture file path
+	 * @throws IOException if file can't be opened or it's not a capture file
+	 * */
+	public IRCaptureReader(String path) throws IOException
+	{
+		this(FileChannel.open(Paths.get(path), StandardOpenOption.READ));
+	}
+
+	/**
+	 * open capture on an opened file, file is not closed on errors
+	 * */
+	IRCaptureReader(FileChannel file) throws IOException
+	{
+		this.file=file;
+
+		long size=file.size();
+
+		if (size<IRCaptureWriter.HEADER_SIZE || size>Integer.MAX_VALUE)
+			throw new IOException("Not a capture file");
+
+		data=file.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+		if (data.getInt()!=IRCaptureWriter.MAGIC)
+			throw new IOException("Not a capture file");
+
+		data.getInt();
+		startTime=data.getLong();
+	}
+
+
+	/**
+	 * Move to next frame
+	 * @return true if a frame has been read, false at end of capture
+	 * */
+	public boolean next()
+	{
+		if (!data.hasRemaining())
+			return false;
+
+		int start=data.position();
+
+		try {
+			byte kind=data.get();
+
+			if (kind!=IRCaptureWriter.CODE_RECORD && kind!=IRCaptureWriter.TEXT_RECORD) {
+				data.position(start);
+				return false;
+			}
+
+			time=data.getLong();
+			protocol=data.getInt();
+			bits=data.getShort() & 0xFFFF;
+
+			if (kind==IRCaptureWriter.CODE_RECORD) {
+				code=data.getLong();
+				text=null;
+			}else {
+				byte[] value=new byte[data.getShort() & 0xFFFF];
+				data.get(value);
+				text=new String(value, StandardCharsets.ISO_8859_1);
+			}
+		} catch (BufferUnderflowException e) {
+			// truncated record
+			data.position(start);
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Move back to first frame
+	 * */
+	public void rewind()
+	{
+		data.position(IRCaptureWriter.HEADER_SIZE);
+	}
+
+
+	/**
+	 * @return current frame receiving time, as nanos since capture start
+	 * */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return current frame signal
+	 * */
+	public Signal getSignal() {
+		return text==null ? new Signal(protocol, code, bits) : new Signal(protocol, text, bits);
+	}
+
+	/**
+	 * @return capture start time (epoch millis)
+	 * */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return file position after last read frame
+	 * */
+	long position() {
+		return data.position();
+	}
+
+
+	/**
+	 * Close capture file
+	 * */
+	public void close()
+	{
+		try {
+			file.close();
+		} catch (IOException e) {
+			// nothing to release
+		}
+	}
+
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.LogEvent;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+
+
+/**
+ * Append-only capture of received IR frames. Frames are written with a
+ * nanosecond timestamp into a memory-mapped binary file, mapped
+ * CAPTURE_MAP_SIZE bytes at a time, so appending a frame doesn't need a
+ * system call. Captures are read back by IRCaptureReader.
+ *
+ * File layout: a header (magic "IRC1", start time in epoch millis) followed
+ * by records:
+ *
+ * <pre>
+ *     byte  kind (1 code, 2 text value)
+ *     long  nanos since capture start
+ *     int   protocol
+ *     short bits
+ *     long  code                   (kind 1)
+ *     short length, value bytes    (kind 2, values longer than 64 bits)
+ * </pre>
+ *
+ * A zero kind byte marks the end of records. An existing capture is
+ * continued: new frames are appended after last record.
+ *
+ * @see IRCaptureReader
+ * @author Emanuele Paiano
+ * */
+public class IRCaptureWriter {
+
+	/**
+	 * "IRC1"
+	 * */
+	static final int MAGIC=0x49524331;
+
+	/**
+	 * magic, reserved int, start time
+	 * */
+	static final int HEADER_SIZE=16;
+
+	static final byte CODE_RECORD=1;
+
+	static final byte TEXT_RECORD=2;
+
+	/**
+	 * kind, time, protocol, bits
+	 * */
+	static final int RECORD_HEADER_SIZE=15;
+
+	private final FileChannel file;
+
+	/**
+	 * mapped file region, starting at last mapping size
+	 * */
+	private MappedByteBuffer region;
+
+	/**
+	 * written bytes, including header
+	 * */
+	private long size;
+
+	/**
+	 * capture start (epoch millis), from file header
+	 * */
+	private final long startTime;
+
+	/**
+	 * System.nanoTime() matching startTime
+	 * */
+	private final long startNanos;
+
+	private long records=0;
+
+
+	/**
+	 * Constructor. File is created if it doesn't exist, continued otherwise.
+	 * @param path capture file path
+	 * @throws IOException if file can't be opened or it's not a capture file
+	 * */
+	public IRCaptureWriter(String path) throws IOException
+	{
+		file=FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+		try {
+			long now=System.currentTimeMillis();
+			long nanos=System.nanoTime();
+
+			if (file.size()==0) {
+				map(0);
+				region.putInt(MAGIC);
+				region.putInt(0);
+				region.putLong(now);
+				startTime=now;
+				size=HEADER_SIZE;
+			}else {
+				IRCaptureReader existing=new IRCaptureReader(file);
+				startTime=existing.getStartTime();
+
+				while(existing.next())
+					records++;
+
+				size=existing.position();
+				map(size);
+			}
+
+			startNanos=nanos-(now-startTime)*1000000L;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+
+	/**
+	 * Append a frame, timestamped now
+	 * @param signal received signal
+	 * @return true if success, false if capture is closed or write failed
+	 * */
+	public boolean append(Signal signal)
+	{
+		return append(signal, System.nanoTime());
+	}
+
+
+	/**
+	 * Append a frame
+	 * @param signal received signal
+	 * @param nanos receiving time, as System.nanoTime()
+	 * @return true if success, false if capture is closed or write failed
+	 * */
+	public synchronized boolean append(Signal signal, long nanos)
+	{
+		if (region==null || signal.isEmpty())
+			return false;
+
+		byte[] text=null;
+		int length=RECORD_HEADER_SIZE+8;
+
+		if (!signal.hasCode()) {
+			text=signal.getValue().getBytes(StandardCharsets.ISO_8859_1);
+			length=RECORD_HEADER_SIZE+2+text.length;
+		}
+
+		try {
+			if (region.remaining()<length)
+				map(size);
+		} catch (IOException e) {
+			LogEvent.logger.warning("Capture write failed: "+e.getMessage());
+			return false;
+		}
+
+		region.put(text==null ? CODE_RECORD : TEXT_RECORD);
+		region.putLong(nanos-startNanos);
+		region.putInt(signal.getProtocol());
+		region.putShort((short)signal.getBits());
+
+		if (text==null)
+			region.putLong(signal.getCode());
+		else {
+			region.putShort((short)text.length);
+			region.put(text);
+		}
+
+		size+=length;
+		records++;
+		return true;
+	}
+
+
+	/**
+	 * Write mapped changes to disk
+	 * */
+	public synchronized void force()
+	{
+		if (region!=null)
+			region.force();
+	}
+
+
+	/**
+	 * Write changes to disk and close file, trimming unused mapped bytes
+	 * @return true if success, false otherwise
+	 * */
+	public synchronized boolean close()
+	{
+		if (region==null)
+			return false;
+
+		region.force();
+		region=null;
+
+		try {
+			file.truncate(size);
+		} catch (IOException e) {
+			// trailing zeros mark end of records anyway
+		}
+
+		try {
+			file.close();
+		} catch (IOException e) {
+			LogEvent.logger.warning("Capture close failed: "+e.getMessage());
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * @return capture start time (epoch millis)
+	 * */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return frames in capture, including previous ones
+	 * */
+	public synchronized long getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return capture size in bytes
+	 * */
+	public synchronized long getSize() {
+		return size;
+	}
+
+
+	/**
+	 * map next file region, starting at position
+	 * */
+	private void map(long position) throws IOException
+	{
+		if (region!=null)
+			region.force();
+
+		region=file.map(FileChannel.MapMode.READ_WRITE, position, IRDeviceDefaultSettings.CAPTURE_MAP_SIZE);
+	}
+
+}
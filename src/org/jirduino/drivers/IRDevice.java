@@ -16,6 +16,8 @@
 
 package org.jirduino.drivers;
 
+import java.util.concurrent.CompletableFuture;
+
 import org.jirduino.core.Signal;
 import org.serialduino.arduino.ArduinoSerialMonitor;
 
@@ -60,6 +62,19 @@ public interface IRDevice {
 	public boolean sendData(Signal value);
 	
 	
+	/**
+	 * send signal command without waiting for Arduino response, so more 
+	 * signals can be sent in a row. Default implementation sends it 
+	 * with sendData(), returning a completed future.
+	 * @param value command signal (i.e. new Signal(7, "E0E040BF")).
+	 * @return future completed with true if success, false otherwise
+	 * */
+	public default CompletableFuture<Boolean> sendDataAsync(Signal value)
+	{
+		return CompletableFuture.completedFuture(sendData(value));
+	}
+	
+	
 	/**
 	 * Wait for receive response from remote IR Device and extract HEX value. 
 	 * You should enable receiver first, calling setReceiverEnable(true).
@@ -0,0 +1,360 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jirduino.helpers.JIRduinoThreads;
+import org.jirduino.helpers.LogEvent;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+
+
+/**
+ * Registry of IR devices driven by one JVM (i.e. a rack of Arduino boards).
+ * Devices are registered by name (i.e. serial port name), opened on first
+ * acquire() and shared between users (i.e. converters): a device is
+ * disconnected when last user releases it.
+ *
+ * Opened devices can be health-checked periodically: a device whose
+ * Arduino link is not ready anymore is disconnected and initialized again,
+ * then its settings (i.e. receiver) are sent again to Arduino. Devices are
+ * reopened outside pool lock, so other devices can be acquired meanwhile.
+ *
+ * Example:
+ *
+ * <pre>
+ *     IRDevicePool pool=new IRDevicePool();
+ *     pool.register("ttyACM0", new IRLib2Device(new ComLinkDevice("/dev/ttyACM0", 9600)));
+ *     pool.register("ttyACM1", new IRLib2Device(new ComLinkDevice("/dev/ttyACM1", 9600)));
+ *     pool.startHealthCheck();
+ *
+ *     IRDevice ir=pool.acquire("ttyACM0");
+ *     ...
+ *     pool.release("ttyACM0");
+ * </pre>
+ *
+ * @author Emanuele Paiano
+ * */
+public class IRDevicePool {
+
+	/**
+	 * registered devices, in registration order
+	 * */
+	private final Map<String, Entry> devices=new LinkedHashMap<String, Entry>();
+
+	private ScheduledExecutorService checker;
+
+
+	/**
+	 * Register a device. Device is not opened until acquired.
+	 * @param name device name (i.e. port name)
+	 * @param device IRDevice object, not initialized
+	 * @return true if success, false if name is already registered
+	 * */
+	public synchronized boolean register(String name, IRDevice device)
+	{
+		if (devices.containsKey(name))
+			return false;
+
+		devices.put(name, new Entry(device));
+		return true;
+	}
+
+
+	/**
+	 * Remove a device, disconnecting it if opened
+	 * @param name device name
+	 * @return removed device, null if not registered
+	 * */
+	public synchronized IRDevice unregister(String name)
+	{
+		Entry entry=devices.remove(name);
+
+		if (entry==null)
+			return null;
+
+		awaitReopened(entry);
+
+		if (entry.opened)
+			entry.device.disconnect();
+
+		return entry.device;
+	}
+
+
+	/**
+	 * Get a shared device, opening it if needed. Call release() when done.
+	 * @param name device name
+	 * @return opened device, null if not registered or not opened
+	 * */
+	public synchronized IRDevice acquire(String name)
+	{
+		Entry entry=devices.get(name);
+
+		if (entry==null || !awaitReopened(entry))
+			return null;
+
+		if (!entry.opened) {
+			entry.opened=entry.device.init();
+
+			if (!entry.opened)
+				return null;
+		}
+
+		entry.users++;
+		return entry.device;
+	}
+
+
+	/**
+	 * Release a device got by acquire(). Device is disconnected when last user releases it.
+	 * @param name device name
+	 * @return true if success, false if device was not acquired
+	 * */
+	public synchronized boolean release(String name)
+	{
+		Entry entry=devices.get(name);
+
+		if (entry==null || !awaitReopened(entry) || entry.users==0)
+			return false;
+
+		if (--entry.users==0 && entry.opened) {
+			entry.device.disconnect();
+			entry.opened=false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * @param name device name
+	 * @return registered device (opened or not), null if not registered
+	 * */
+	public synchronized IRDevice getDevice(String name)
+	{
+		Entry entry=devices.get(name);
+		return entry==null ? null : entry.device;
+	}
+
+
+	/**
+	 * @return registered device names
+	 * */
+	public synchronized List<String> getNames()
+	{
+		return new ArrayList<String>(devices.keySet());
+	}
+
+
+	/**
+	 * @return opened devices with Arduino link ready (new list)
+	 * */
+	public synchronized List<IRDevice> getReadyDevices()
+	{
+		List<IRDevice> ready=new ArrayList<IRDevice>();
+
+		for(Entry entry: devices.values())
+			if (entry.opened && entry.device.getArduino().isReady())
+				ready.add(entry.device);
+
+		return ready;
+	}
+
+
+	/**
+	 * @return registered devices number
+	 * */
+	public synchronized int size()
+	{
+		return devices.size();
+	}
+
+
+	/**
+	 * Check opened devices, initializing again devices whose link is not ready
+	 * and restoring their settings.
+	 * @return ready devices number
+	 * */
+	public int checkHealth()
+	{
+		Map<String, Entry> broken=new LinkedHashMap<String, Entry>();
+		int ready=0;
+
+		synchronized (this) {
+			for(Map.Entry<String, Entry> item: devices.entrySet()) {
+				Entry entry=item.getValue();
+
+				if (!entry.opened || entry.reopening)
+					continue;
+
+				if (entry.device.getArduino().isReady())
+					ready++;
+				else {
+					entry.reopening=true;
+					broken.put(item.getKey(), entry);
+				}
+			}
+		}
+
+		// reopening waits for Arduino reset and responses: pool isn't locked meanwhile
+		for(Map.Entry<String, Entry> item: broken.entrySet())
+			if (reopen(item.getKey(), item.getValue()))
+				ready++;
+
+		return ready;
+	}
+
+
+	/**
+	 * Disconnect and initialize again a device, then restore its settings
+	 * @param name device name
+	 * @param entry device entry, marked as reopening
+	 * @return true if device has been opened, false otherwise
+	 * */
+	private boolean reopen(String name, Entry entry)
+	{
+		LogEvent.logger.warning("IR device "+name+" not ready, reopening");
+
+		entry.device.disconnect();
+		boolean opened=entry.device.init();
+
+		if (opened && entry.device instanceof IRLib2Device && !((IRLib2Device)entry.device).restoreState())
+			LogEvent.logger.warning("IR device "+name+" settings not restored");
+
+		synchronized (this) {
+			entry.reopening=false;
+			notifyAll();
+
+			// closed or unregistered meanwhile
+			if (!entry.opened || devices.get(name)!=entry) {
+				if (opened)
+					entry.device.disconnect();
+				return false;
+			}
+
+			entry.opened=opened;
+			return opened;
+		}
+	}
+
+
+	/**
+	 * Wait for health check to reopen a device, pool lock must be held
+	 * @param entry device entry
+	 * @return true if device is not being reopened, false if thread has been interrupted
+	 * */
+	private boolean awaitReopened(Entry entry)
+	{
+		try {
+			while(entry.reopening)
+				wait();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Start periodic health check, every IRDeviceDefaultSettings.HEALTH_CHECK_PERIOD millis
+	 * */
+	public void startHealthCheck()
+	{
+		startHealthCheck(IRDeviceDefaultSettings.HEALTH_CHECK_PERIOD);
+	}
+
+
+	/**
+	 * Start periodic health check
+	 * @param period pause (in millis) between checks
+	 * */
+	public synchronized void startHealthCheck(long period)
+	{
+		stopHealthCheck();
+
+		checker=JIRduinoThreads.newScheduler("IRDevicePool-checker");
+
+		checker.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				checkHealth();
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Stop periodic health check
+	 * */
+	public synchronized void stopHealthCheck()
+	{
+		if (checker!=null) {
+			checker.shutdownNow();
+			checker=null;
+		}
+	}
+
+
+	/**
+	 * Stop health check and disconnect all opened devices
+	 * */
+	public synchronized void close()
+	{
+		stopHealthCheck();
+
+		for(Entry entry: devices.values()) {
+			awaitReopened(entry);
+
+			if (entry.opened)
+				entry.device.disconnect();
+			entry.opened=false;
+			entry.users=0;
+		}
+	}
+
+
+	/**
+	 * registered device and its users
+	 * */
+	private static class Entry {
+
+		final IRDevice device;
+
+		boolean opened=false;
+
+		/**
+		 * true while health check is reopening device
+		 * */
+		boolean reopening=false;
+
+		int users=0;
+
+		Entry(IRDevice device)
+		{
+			this.device=device;
+		}
+	}
+
+}
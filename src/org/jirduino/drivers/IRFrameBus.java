@@ -0,0 +1,414 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.JIRduinoThreads;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+
+
+/**
+ * Publish/subscribe dispatcher of received IR frames. A single reader thread
+ * calls IRDevice.receiveData() and publishes frames into a ring of
+ * preallocated slots; each subscriber reads the ring on its own thread, at
+ * its own pace, so IRDevice can be shared by converter, loggers, metrics and
+ * learning tools.
+ *
+ * When a subscriber is lagging a full ring behind, its Backpressure policy
+ * applies: BLOCK pauses the reader until subscriber catches up (no frame is
+ * lost, but every subscriber is slowed down), DROP_OLDEST and KEEP_LATEST
+ * skip overwritten frames, so a slow observer never slows the others.
+ *
+ * Example:
+ *
+ * <pre>
+ *     IRFrameBus bus=new IRFrameBus(irDevice);
+ *     converter.subscribe(bus);
+ *     bus.subscribe("logger", new IRFrameSubscriber() {
+ *         public void onFrame(Signal signal, long nanos) {
+ *             LogEvent.receivedSignal(signal);
+ *         }
+ *     }, IRFrameBus.Backpressure.DROP_OLDEST);
+ *     bus.start();
+ * </pre>
+ *
+ * @see IRFrameSubscription
+ * @author Emanuele Paiano
+ * */
+public class IRFrameBus {
+
+	/**
+	 * What a subscriber does when it's lagging a full ring behind
+	 * */
+	public enum Backpressure {
+		/**
+		 * reader waits for subscriber, no frame is lost
+		 * */
+		BLOCK,
+		/**
+		 * subscriber skips overwritten frames, continuing from oldest one in ring
+		 * */
+		DROP_OLDEST,
+		/**
+		 * subscriber skips to latest frame
+		 * */
+		KEEP_LATEST
+	}
+
+	/**
+	 * Preallocated ring slot. Sequence is -1 while slot is written, so
+	 * subscribers can detect a frame overwritten while reading it.
+	 * */
+	static final class Slot {
+
+		volatile long sequence=-1;
+
+		volatile Signal signal;
+
+		volatile long nanos;
+	}
+
+	/**
+	 * spins before waiting on lock, when no frame is available
+	 * */
+	private static final int SPIN_TRIES=100;
+
+	private final IRDevice device;
+
+	private final Slot[] ring;
+
+	private final int mask;
+
+	/**
+	 * last published sequence
+	 * */
+	private volatile long cursor=-1;
+
+	private final List<IRFrameSubscription> subscriptions=new CopyOnWriteArrayList<IRFrameSubscription>();
+
+	/**
+	 * guards published/consumed conditions and publishing
+	 * */
+	private final ReentrantLock lock=new ReentrantLock();
+
+	private final Condition published=lock.newCondition();
+
+	private final Condition consumed=lock.newCondition();
+
+	private final Object producer=new Object();
+
+	private volatile int waitingSubscribers=0;
+
+	private volatile boolean producerWaiting=false;
+
+	private volatile boolean running=false;
+
+	private Thread reader;
+
+
+	/**
+	 * Constructor. Ring holds IRDeviceDefaultSettings.FRAME_BUS_SIZE frames.
+	 * @param device IRDevice object, initialized
+	 * */
+	public IRFrameBus(IRDevice device)
+	{
+		this(device, IRDeviceDefaultSettings.FRAME_BUS_SIZE);
+	}
+
+	/**
+	 * Constructor.
+	 * @param device IRDevice object, initialized
+	 * @param size ring size, rounded up to a power of two
+	 * */
+	public IRFrameBus(IRDevice device, int size)
+	{
+		int capacity=Integer.highestOneBit(Math.max(2, size));
+
+		if (capacity<size)
+			capacity<<=1;
+
+		this.device=device;
+		this.ring=new Slot[capacity];
+		this.mask=capacity-1;
+
+		for(int i=0;i<capacity;i++)
+			ring[i]=new Slot();
+	}
+
+
+	/**
+	 * Enable device receiver and start reader thread
+	 * */
+	public synchronized void start()
+	{
+		if (running)
+			return;
+
+		running=true;
+		device.setReceiverEnabled(true);
+
+		// reader of a previous start() may still be waiting for a frame
+		if (reader!=null && reader.isAlive())
+			return;
+
+		reader=JIRduinoThreads.start("IRFrameBus-reader", new Runnable() {
+			@Override
+			public void run() {
+				readLoop();
+			}
+		});
+	}
+
+
+	/**
+	 * Stop reader thread and cancel all subscriptions. Reader thread exits
+	 * after next received frame, or when device link is closed.
+	 * */
+	public void stop()
+	{
+		synchronized (this) {
+			running=false;
+		}
+
+		for(IRFrameSubscription subscription: subscriptions)
+			unsubscribe(subscription);
+	}
+
+
+	/**
+	 * Add a subscriber, receiving frames published from now on
+	 * @param name subscriber name, used for its thread name
+	 * @param subscriber IRFrameSubscriber object
+	 * @param policy what to do when subscriber is lagging a full ring behind
+	 * @return subscription, cancel it to stop receiving frames
+	 * */
+	public IRFrameSubscription subscribe(String name, IRFrameSubscriber subscriber, Backpressure policy)
+	{
+		IRFrameSubscription subscription;
+
+		// producer can't publish while a blocking subscriber joins
+		synchronized (producer) {
+			subscription=new IRFrameSubscription(this, name, subscriber, policy, cursor);
+			subscriptions.add(subscription);
+		}
+
+		subscription.start();
+		return subscription;
+	}
+
+
+	/**
+	 * Remove a subscriber and stop its thread
+	 * @param subscription subscription returned by subscribe()
+	 * @return true if success, false if it was already removed
+	 * */
+	public boolean unsubscribe(IRFrameSubscription subscription)
+	{
+		if (!subscriptions.remove(subscription))
+			return false;
+
+		subscription.stop();
+		signalAll(published);
+		signalAll(consumed);
+		return true;
+	}
+
+
+	/**
+	 * Publish a frame to subscribers. Called by reader thread, it can be
+	 * used to inject frames from another source (i.e. a capture).
+	 * @param signal frame signal
+	 * @param nanos receiving time, as System.nanoTime()
+	 * */
+	public void publish(Signal signal, long nanos)
+	{
+		synchronized (producer) {
+			long next=cursor+1;
+
+			for(IRFrameSubscription subscription: subscriptions)
+				if (subscription.getPolicy()==Backpressure.BLOCK)
+					awaitConsumed(subscription, next);
+
+			Slot slot=ring[(int)next & mask];
+			slot.sequence=-1;
+			slot.signal=signal;
+			slot.nanos=nanos;
+			slot.sequence=next;
+			cursor=next;
+		}
+
+		if (waitingSubscribers>0)
+			signalAll(published);
+	}
+
+
+	/**
+	 * @return ring size
+	 * */
+	public int getSize() {
+		return ring.length;
+	}
+
+	/**
+	 * @return frames published since bus creation
+	 * */
+	public long getPublished() {
+		return cursor+1;
+	}
+
+	/**
+	 * @return true if reader thread is running
+	 * */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return current subscriptions
+	 * */
+	public List<IRFrameSubscription> getSubscriptions() {
+		return new ArrayList<IRFrameSubscription>(subscriptions);
+	}
+
+	/**
+	 * @return IRDevice object
+	 * */
+	public IRDevice getDevice() {
+		return device;
+	}
+
+
+	/**
+	 * slot holding a sequence
+	 * */
+	Slot slot(long sequence)
+	{
+		return ring[(int)sequence & mask];
+	}
+
+
+	/**
+	 * Wait for a sequence to be published, spinning first.
+	 * @return last published sequence, lower than sequence if subscription
+	 * has been cancelled or waiting thread interrupted
+	 * */
+	long awaitPublished(long sequence, IRFrameSubscription subscription)
+	{
+		long available;
+
+		for(int i=0;i<SPIN_TRIES;i++) {
+			if ((available=cursor)>=sequence)
+				return available;
+
+			Thread.yield();
+		}
+
+		lock.lock();
+		try {
+			waitingSubscribers++;
+
+			while((available=cursor)<sequence && !subscription.isCancelled())
+				published.await(IRDeviceDefaultSettings.LINE_POLL_TIME, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			available=cursor;
+		} finally {
+			waitingSubscribers--;
+			lock.unlock();
+		}
+
+		return available;
+	}
+
+
+	/**
+	 * Called by subscriptions after each consumed frame, wakes up reader
+	 * if it's waiting for a blocking subscriber
+	 * */
+	void consumed()
+	{
+		if (producerWaiting)
+			signalAll(consumed);
+	}
+
+
+	/**
+	 * wait for a blocking subscriber to free sequence slot, producer lock must be held
+	 * */
+	private void awaitConsumed(IRFrameSubscription subscription, long sequence)
+	{
+		if (sequence-subscription.sequence<=ring.length)
+			return;
+
+		lock.lock();
+		try {
+			producerWaiting=true;
+
+			while(sequence-subscription.sequence>ring.length && !subscription.isCancelled())
+				consumed.await(IRDeviceDefaultSettings.LINE_POLL_TIME, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			producerWaiting=false;
+			lock.unlock();
+		}
+	}
+
+
+	private void signalAll(Condition condition)
+	{
+		lock.lock();
+		try {
+			condition.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * reader thread loop. Not interrupted on stop: it exits on next frame
+	 * or when link is closed.
+	 * */
+	private void readLoop()
+	{
+		while(running) {
+			// passive sniffer mode doesn't decode frames
+			if (device.isPassiveSnifferMode() || !device.getArduino().isReady()) {
+				try {
+					Thread.sleep(IRDeviceDefaultSettings.LINE_POLL_TIME);
+				} catch (InterruptedException e) {
+					return;
+				}
+				continue;
+			}
+
+			Signal signal=device.receiveData();
+			long nanos=System.nanoTime();
+
+			if (running && !signal.isEmpty())
+				publish(signal, nanos);
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import org.jirduino.core.Signal;
+
+
+/**
+ * Receives IR frames published by IRFrameBus, on its own subscription
+ * thread.
+ *
+ * @see IRFrameBus
+ * @author Emanuele Paiano
+ * */
+public interface IRFrameSubscriber {
+
+	/**
+	 * A frame has been received
+	 * @param signal received signal
+	 * @param nanos receiving time, as System.nanoTime()
+	 * */
+	public void onFrame(Signal signal, long nanos);
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.JIRduinoThreads;
+import org.jirduino.helpers.LogEvent;
+
+
+/**
+ * A subscriber of IRFrameBus with its consumer thread, reading frames
+ * from bus ring at its own pace.
+ *
+ * @see IRFrameBus#subscribe(String, IRFrameSubscriber, IRFrameBus.Backpressure)
+ * @author Emanuele Paiano
+ * */
+public class IRFrameSubscription implements Runnable {
+
+	private final IRFrameBus bus;
+
+	private final String name;
+
+	private final IRFrameSubscriber subscriber;
+
+	private final IRFrameBus.Backpressure policy;
+
+	/**
+	 * last consumed sequence
+	 * */
+	volatile long sequence;
+
+	private volatile boolean cancelled=false;
+
+	private final AtomicLong consumed=new AtomicLong();
+
+	private final AtomicLong dropped=new AtomicLong();
+
+	private Thread thread;
+
+
+	IRFrameSubscription(IRFrameBus bus, String name, IRFrameSubscriber subscriber, IRFrameBus.Backpressure policy, long sequence)
+	{
+		this.bus=bus;
+		this.name=name;
+		this.subscriber=subscriber;
+		this.policy=policy;
+		this.sequence=sequence;
+	}
+
+
+	/**
+	 * start consumer thread
+	 * */
+	void start()
+	{
+		thread=JIRduinoThreads.start("IRFrameBus-"+name, this);
+	}
+
+
+	/**
+	 * Stop consuming frames. Bus doesn't wait for this subscriber anymore.
+	 * */
+	public void cancel()
+	{
+		bus.unsubscribe(this);
+	}
+
+	/**
+	 * stop consumer thread, called by bus
+	 * */
+	void stop()
+	{
+		cancelled=true;
+
+		if (thread!=null && thread!=Thread.currentThread())
+			thread.interrupt();
+	}
+
+
+	@Override
+	public void run() {
+		long next=sequence+1;
+
+		while(!cancelled) {
+			long available=bus.awaitPublished(next, this);
+
+			if (available<next)
+				continue;
+
+			// lagging more than ring size: frames have been overwritten
+			if (available-next>=bus.getSize()) {
+				long skip=policy==IRFrameBus.Backpressure.KEEP_LATEST ? available : available-bus.getSize()+1;
+				dropped.addAndGet(skip-next);
+				next=skip;
+			}
+
+			IRFrameBus.Slot slot=bus.slot(next);
+			long before=slot.sequence;
+			Signal signal=slot.signal;
+			long nanos=slot.nanos;
+
+			// overwritten while reading, check lag again
+			if (before!=next || slot.sequence!=next) {
+				Thread.yield();
+				continue;
+			}
+
+			try {
+				subscriber.onFrame(signal, nanos);
+			} catch (RuntimeException e) {
+				LogEvent.logger.warning("Subscriber "+name+" failed: "+e);
+			}
+
+			consumed.incrementAndGet();
+			sequence=next++;
+			bus.consumed();
+		}
+	}
+
+
+	/**
+	 * @return true if subscription has been cancelled
+	 * */
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return subscriber name
+	 * */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return backpressure policy
+	 * */
+	public IRFrameBus.Backpressure getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * @return frames consumed by subscriber
+	 * */
+	public long getConsumed() {
+		return consumed.get();
+	}
+
+	/**
+	 * @return frames overwritten before subscriber could consume them
+	 * */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return published frames not yet consumed
+	 * */
+	public long getLag() {
+		return Math.max(0, bus.getPublished()-1-sequence);
+	}
+
+}
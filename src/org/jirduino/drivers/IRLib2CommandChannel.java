@@ -0,0 +1,570 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.jirduino.helpers.HexCodec;
+import org.jirduino.helpers.JIRduinoThreads;
+import org.jirduino.helpers.LogEvent;
+import org.jirduino.metrics.IRDeviceMetrics;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+import org.serialduino.arduino.ArduinoSerialMonitor;
+import org.serialduino.drivers.LineConsumer;
+
+
+/**
+ * Asynchronous command channel for IRDuino-IRLib2 Sketch. Commands are
+ * sent without waiting for previous responses (up to MAX_PENDING_COMMANDS),
+ * each command gets a CompletableFuture completed by its response.
+ *
+ * A reader thread splits incoming lines: responses (i.e. "250 OK") complete
+ * pending commands in sending order, as Sketch runs commands one at a time;
+ * received IR frames and other lines are queued for receiving methods.
+ * Reader thread blocks until a line is received, and once stop() returns
+ * it doesn't read from link anymore, so another reader can take over.
+ *
+ * A command without response within timeout is completed with false and
+ * removed. Its response may still arrive later: it's discarded, and no
+ * new command is sent until then (or for another timeout, if it's lost),
+ * so responses keep matching their commands.
+ *
+ * @see IRDeviceDefaultSettings
+ * @author Emanuele Paiano
+ * */
+public class IRLib2CommandChannel {
+
+	private final ArduinoSerialMonitor arduino;
+
+	/**
+	 * max commands waiting for response
+	 * */
+	private final int window;
+
+	/**
+	 * max waiting time (in millis) for a response
+	 * */
+	private volatile long timeout=IRDeviceDefaultSettings.COMMAND_TIMEOUT;
+
+	/**
+	 * commands sent and waiting for response, in sending order
+	 * */
+	private final ArrayDeque<Command> inFlight=new ArrayDeque<Command>();
+
+	/**
+	 * commands waiting for a free slot
+	 * */
+	private final ArrayDeque<Command> queued=new ArrayDeque<Command>();
+
+	/**
+	 * responses of expired commands not yet arrived, to discard
+	 * */
+	private int staleResponses=0;
+
+	/**
+	 * gives up waiting for stale responses, null if none is expected
+	 * */
+	private ScheduledFuture<?> resyncTask;
+
+	/**
+	 * received lines not being command responses
+	 * */
+	private final BlockingQueue<String> received=
+			new LinkedBlockingQueue<String>(IRDeviceDefaultSettings.RECEIVED_QUEUE_SIZE);
+
+	/**
+	 * reusable command buffer, used holding channel lock
+	 * */
+	private final StringBuilder command=new StringBuilder(32);
+
+	private final LineSplitter splitter=new LineSplitter();
+
+	/**
+	 * guards link reads and running flag, so no line is read after stop()
+	 * */
+	private final Object readLock=new Object();
+
+	/**
+	 * queued on stop, wakes up takeLine() callers
+	 * */
+	private static final String STOPPED=new String();
+
+	/**
+	 * command results and round-trip times, null if not measured
+	 * */
+	private final IRDeviceMetrics metrics;
+
+	private volatile boolean running=false;
+
+	private Thread reader;
+
+	private ScheduledExecutorService timer;
+
+
+	/**
+	 * Constructor. Call start() before sending commands.
+	 * @param arduino ArduinoSerialMonitor object
+	 * */
+	public IRLib2CommandChannel(ArduinoSerialMonitor arduino)
+	{
+		this(arduino, IRDeviceDefaultSettings.MAX_PENDING_COMMANDS);
+	}
+
+	/**
+	 * Constructor. Call start() before sending commands.
+	 * @param arduino ArduinoSerialMonitor object
+	 * @param window max commands waiting for response (1 for no pipelining)
+	 * */
+	public IRLib2CommandChannel(ArduinoSerialMonitor arduino, int window)
+	{
+		this(arduino, window, null);
+	}
+
+	/**
+	 * Constructor. Call start() before sending commands.
+	 * @param arduino ArduinoSerialMonitor object
+	 * @param window max commands waiting for response (1 for no pipelining)
+	 * @param metrics metrics updated on each command result, null for none
+	 * */
+	public IRLib2CommandChannel(ArduinoSerialMonitor arduino, int window, IRDeviceMetrics metrics)
+	{
+		this.arduino=arduino;
+		this.window=Math.max(1, window);
+		this.metrics=metrics;
+	}
+
+
+	/**
+	 * Start reader thread
+	 * */
+	public synchronized void start()
+	{
+		if (running)
+			return;
+
+		running=true;
+
+		timer=JIRduinoThreads.newScheduler("IRLib2CommandChannel-timer");
+
+		reader=JIRduinoThreads.start("IRLib2CommandChannel-reader", new Runnable() {
+			@Override
+			public void run() {
+				readLoop();
+			}
+		});
+	}
+
+
+	/**
+	 * Stop reader thread. Pending commands are completed with false.
+	 * */
+	public void stop()
+	{
+		List<Command> failed;
+
+		synchronized (this) {
+			if (!running)
+				return;
+
+			// waits for a read in progress
+			synchronized (readLock) {
+				running=false;
+			}
+
+			reader.interrupt();
+			timer.shutdownNow();
+
+			failed=new ArrayList<Command>(inFlight);
+			failed.addAll(queued);
+			inFlight.clear();
+			queued.clear();
+			staleResponses=0;
+			resyncTask=null;
+		}
+
+		onReceived(STOPPED);
+
+		for(Command c: failed)
+			c.result.complete(false);
+	}
+
+
+	/**
+	 * @return true if reader thread is running, false otherwise
+	 * */
+	public boolean isRunning()
+	{
+		return running;
+	}
+
+
+	/**
+	 * Send command without waiting for response
+	 * @param opcode command opcode (0 send, 1 settings)
+	 * @param param1 first parameter
+	 * @param param2 second parameter, as unsigned value
+	 * @return future completed with true on "250 OK" response, false otherwise
+	 * */
+	public synchronized CompletableFuture<Boolean> submit(int opcode, int param1, long param2)
+	{
+		command.setLength(0);
+		command.append(opcode).append(',').append(param1).append(',');
+		HexCodec.appendUnsignedDecimal(command, param2);
+
+		return submit(command.toString());
+	}
+
+
+	/**
+	 * Send command without waiting for response
+	 * @param opcode command opcode
+	 * @param param1 first parameter
+	 * @param param2 second parameter
+	 * @return future completed with true on "250 OK" response, false otherwise
+	 * */
+	public CompletableFuture<Boolean> submit(String opcode, String param1, String param2)
+	{
+		return submit(opcode+","+param1+","+param2);
+	}
+
+
+	/**
+	 * queue command, sending it if there is a free slot
+	 * */
+	private synchronized CompletableFuture<Boolean> submit(String text)
+	{
+		Command c=new Command(text);
+
+		if (!running || !arduino.isReady()) {
+			c.result.complete(false);
+			return c.result;
+		}
+
+		queued.add(c);
+		pump();
+
+		return c.result;
+	}
+
+
+	/**
+	 * @return commands sent or queued, not yet completed
+	 * */
+	public synchronized int pendingCommands()
+	{
+		return inFlight.size()+queued.size();
+	}
+
+
+	/**
+	 * Wait for a received line not being a command response (i.e. an IR frame)
+	 * @return received line, empty string if channel has been stopped or thread interrupted
+	 * */
+	public String takeLine()
+	{
+		try {
+			String line=received.take();
+
+			if (line!=STOPPED)
+				return line;
+
+			// for other waiting threads
+			onReceived(STOPPED);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return "";
+	}
+
+
+	/**
+	 * @return max waiting time (in millis) for a response
+	 * */
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Set max waiting time for a response. Used for next sent commands.
+	 * @param timeout value in milliseconds (default IRDeviceDefaultSettings.COMMAND_TIMEOUT)
+	 * */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+
+	/**
+	 * Run a task on channel timer thread
+	 * @param task task to run, it shouldn't block
+	 * @param delay pause (in millis) before running
+	 * @return scheduled task, null if channel is not running
+	 * */
+	synchronized ScheduledFuture<?> schedule(Runnable task, long delay)
+	{
+		if (!running)
+			return null;
+
+		return timer.schedule(task, delay, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * send queued commands while there are free slots, lock must be held
+	 * */
+	private void pump()
+	{
+		// a late response would be taken by a new command
+		if (staleResponses>0)
+			return;
+
+		while(inFlight.size()<window && !queued.isEmpty()) {
+			final Command c=queued.poll();
+
+			if (arduino.send(c.text)<0) {
+				if (metrics!=null)
+					metrics.commandFailed();
+
+				// completed on timer thread: dependent actions can't run holding channel lock
+				timer.execute(new Runnable() {
+					@Override
+					public void run() {
+						c.result.complete(false);
+					}
+				});
+				continue;
+			}
+
+			c.sent=System.nanoTime();
+			inFlight.add(c);
+			c.timeoutTask=timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expire(c);
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+	}
+
+
+	/**
+	 * complete oldest pending command with response
+	 * */
+	private void onResponse(boolean ok)
+	{
+		Command c;
+
+		synchronized (this) {
+			// response of an expired command
+			if (staleResponses>0) {
+				if (--staleResponses==0) {
+					resyncTask.cancel(false);
+					resyncTask=null;
+					pump();
+				}
+				return;
+			}
+
+			c=inFlight.poll();
+
+			// unexpected response
+			if (c==null)
+				return;
+
+			if (c.timeoutTask!=null)
+				c.timeoutTask.cancel(false);
+
+			pump();
+		}
+
+		if (metrics!=null)
+			metrics.commandCompleted(ok, System.nanoTime()-c.sent);
+
+		// completed outside lock: dependent actions can send new commands
+		c.result.complete(ok);
+	}
+
+
+	/**
+	 * remove command without response
+	 * */
+	private void expire(Command c)
+	{
+		synchronized (this) {
+			if (!inFlight.remove(c))
+				return;
+
+			staleResponses++;
+
+			if (resyncTask!=null)
+				resyncTask.cancel(false);
+
+			resyncTask=timer.schedule(new Runnable() {
+				@Override
+				public void run() {
+					resync();
+				}
+			}, timeout, TimeUnit.MILLISECONDS);
+		}
+
+		if (metrics!=null)
+			metrics.commandTimedOut();
+
+		LogEvent.logger.warning("No response for command "+c.text);
+		c.result.complete(false);
+	}
+
+
+	/**
+	 * stale responses have not arrived within timeout: they're lost
+	 * */
+	private synchronized void resync()
+	{
+		if (staleResponses==0 || !running)
+			return;
+
+		LogEvent.logger.warning(staleResponses+" responses of expired commands lost");
+		staleResponses=0;
+		resyncTask=null;
+		pump();
+	}
+
+
+	/**
+	 * queue a received line, dropping the oldest one if queue is full
+	 * */
+	private void onReceived(String line)
+	{
+		while(!received.offer(line))
+			received.poll();
+	}
+
+
+	/**
+	 * reader thread loop
+	 * */
+	private void readLoop()
+	{
+		while(running) {
+			// link closed, or channel stopped
+			if (!arduino.awaitLine(0)) {
+				if (!arduino.isReady())
+					break;
+
+				Thread.interrupted();
+				continue;
+			}
+
+			synchronized (readLock) {
+				if (!running || !arduino.receiveLine(splitter))
+					continue;
+			}
+
+			if (splitter.response)
+				onResponse(splitter.ok);
+			else if (!splitter.line.isEmpty())
+				onReceived(splitter.line);
+		}
+
+		stop();
+	}
+
+
+	/**
+	 * Check if line is a command response: a 3 digits code (i.e. "250 OK")
+	 * @param line received line
+	 * @return true if line is a response, false otherwise
+	 * */
+	public static boolean isResponse(CharSequence line)
+	{
+		if (line.length()<3)
+			return false;
+
+		for(int i=0;i<3;i++)
+			if (line.charAt(i)<'0' || line.charAt(i)>'9')
+				return false;
+
+		return line.length()==3 || line.charAt(3)==' ';
+	}
+
+
+	/**
+	 * @param line command response
+	 * @return true if response is "250 OK", false otherwise
+	 * */
+	public static boolean isOk(CharSequence line)
+	{
+		return line.length()>=6 && line.charAt(0)=='2' && line.charAt(1)=='5' && line.charAt(2)=='0'
+				&& line.charAt(4)=='O' && line.charAt(5)=='K';
+	}
+
+
+	/**
+	 * sent command and its result
+	 * */
+	private static class Command {
+
+		final String text;
+
+		final CompletableFuture<Boolean> result=new CompletableFuture<Boolean>();
+
+		ScheduledFuture<?> timeoutTask;
+
+		/**
+		 * sending time, as System.nanoTime()
+		 * */
+		long sent;
+
+		Command(String text)
+		{
+			this.text=text;
+		}
+	}
+
+
+	/**
+	 * splits responses from other lines, used by reader thread only
+	 * */
+	private static class LineSplitter implements LineConsumer {
+
+		boolean response;
+
+		boolean ok;
+
+		String line;
+
+		@Override
+		public void onLine(CharSequence line) {
+			response=isResponse(line);
+
+			if (response) {
+				ok=isOk(line);
+				this.line=null;
+			}else
+				this.line=line.toString();
+		}
+	}
+
+}
@@ -15,11 +15,22 @@
  * */
 
 package org.jirduino.drivers;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
 import org.jirduino.core.Signal;
+import org.jirduino.helpers.HexCodec;
 import org.jirduino.helpers.JIRduinoHelper;
+import org.jirduino.helpers.LogEvent;
+import org.jirduino.metrics.IRDeviceMetrics;
+import org.jirduino.settings.IRDeviceDefaultSettings;
 import org.serialduino.arduino.ArduinoSerialMonitor;
 import org.serialduino.drivers.LinkDevice;
-import org.serialduino.settings.DefaultArduinoSerialMonitor;
+import org.serialduino.drivers.ReconnectListener;
+import org.serialduino.drivers.ResilientLinkDevice;
 
 
 /**
@@ -29,19 +40,78 @@ import org.serialduino.settings.DefaultArduinoSerialMonitor;
  * sketch based Cyborg5's library
  * (https://github.com/cyborg5/IRLib2)
  * 
+ * Incoming lines are read by an IRLib2CommandChannel only, started by first
+ * command or receiving call: commands get their responses from it, and 
+ * receiving methods take IR frames from it. Commands can be pipelined 
+ * calling sendDataAsync() or execIRDuinoAsync().
+ * 
+ * While channel is running, receiver is disabled once for a burst of sent
+ * signals, and enabled again RECEIVER_RESUME_DELAY millis after last one.
+ * 
+ * If port is a ResilientLinkDevice, receiver, led and sniffer mode settings
+ * are sent again to Arduino after each reconnection.
  * 
+ * Settings changes hold a ReentrantLock while waiting for Arduino response,
+ * not the object monitor, so virtual threads don't pin their carrier thread.
+ * 
+ * @see IRLib2CommandChannel
  * 
  * @author Emanuele Paiano
  * */
 public class IRLib2Device implements IRDevice{
 	
-	private static ArduinoSerialMonitor arduino;
+	private final ArduinoSerialMonitor arduino;
 	
-	private static boolean isReceiverEnabled=false;
+	private volatile boolean isReceiverEnabled=false;
 	
-	private static boolean passiveSnifferMode=false;
+	private volatile boolean passiveSnifferMode=false;
 	
-	private boolean rcvLedOn=false;
+	private volatile boolean rcvLedOn=false;
+	
+	/**
+	 * device lock, held by settings changes while waiting for response
+	 * */
+	private final ReentrantLock lock=new ReentrantLock();
+	
+	/**
+	 * signalled when passive sniffer mode is turned off
+	 * */
+	private final Condition snifferOff=lock.newCondition();
+	
+	/**
+	 * reusable received frame, used holding its monitor (parsing doesn't block)
+	 * */
+	private final IRLib2Frame frame=new IRLib2Frame();
+	
+	/**
+	 * command channel, reading all incoming lines, null until started
+	 * */
+	private volatile IRLib2CommandChannel channel;
+	
+	/**
+	 * lock for transmit burst state
+	 * */
+	private final Object burstLock=new Object();
+	
+	/**
+	 * sent signals waiting for response, guarded by burstLock
+	 * */
+	private int burstSends=0;
+	
+	/**
+	 * true if receiver has been disabled for current burst, guarded by burstLock
+	 * */
+	private boolean receiverSuspended=false;
+	
+	/**
+	 * scheduled receiver enabling, guarded by burstLock
+	 * */
+	private ScheduledFuture<?> resumeTask;
+	
+	/**
+	 * commands, received frames and command round-trip times
+	 * */
+	private final IRDeviceMetrics metrics=new IRDeviceMetrics(this);
 	
 	
 		
@@ -51,7 +121,38 @@ public class IRLib2Device implements IRDevice{
 	 * */
 	public IRLib2Device(LinkDevice port) 
 	{
-		IRLib2Device.arduino=new ArduinoSerialMonitor(port);
+		this.arduino=new ArduinoSerialMonitor(port);
+		
+		if (port instanceof ResilientLinkDevice)
+			((ResilientLinkDevice)port).addReconnectListener(new ReconnectListener() {
+				@Override
+				public void onReconnect(LinkDevice link) {
+					// before commands queued while link was down
+					restoreState();
+				}
+			});
+	}
+	
+	
+	/**
+	 * Send current receiver, led and sniffer mode settings to Arduino, 
+	 * i.e. after Arduino has been reset by a reconnection.
+	 * @return true if success, false otherwise
+	 * */
+	public boolean restoreState() 
+	{
+		boolean receiver;
+		
+		synchronized (burstLock) {
+			// a transmit burst enables receiver when it ends
+			receiver=isReceiverEnabled && !receiverSuspended;
+		}
+		
+		boolean success=execIRDuino(1, 1, receiver ? 1 : 0);
+		success&=execIRDuino(1, 2, rcvLedOn ? 1 : 0);
+		success&=execIRDuino(1, 3, passiveSnifferMode ? 1 : 0);
+		
+		return success;
 	}
 
 	
@@ -71,61 +172,169 @@ public class IRLib2Device implements IRDevice{
 	@Override
 	public boolean sendHexValue(int protocolId, String command, int bits) 
 	{
-		return sendDecValue(protocolId, String.valueOf(JIRduinoHelper.hex2decimal(command)), bits);
+		if (!HexCodec.isHex(command))
+			return false;
+		
+		// burst path: receiver is paused and resumed by sendDataAsync()
+		return sendDataAsync(new Signal(protocolId, HexCodec.parseHex(command), bits)).join();
 	}
 	
-	/**
-	 * send Dec Value command. It work like sendHexValue(), but with decimal 
-	 * values. 
-	 * @param protocol protocol id
-	 * @param command hex command string (i.e. 3772793023 for E0E040BF).
-	 * @param bits command bit numbers 
-	 * @return true if success, false otherwise
-	 * */
-	private boolean sendDecValue(int protocol, String command, int bits) 
+	
+	@Override
+	public boolean sendData(Signal value) 
 	{
-		boolean success=false;
-		if(!arduino.isReady())
+		// sketch only sends codes up to 64 bits
+		if (!value.hasCode()) {
+			LogEvent.logger.fine("Not a code signal, not sent: "+value);
 			return false;
-		else {
-			if (this.isPassiveSnifferMode())
-				return false;
-			
-			String param1=String.valueOf(protocol);
-			String param2=String.valueOf(command);
+		}
+		
+		// channel keeps commands in order, no lock is held while waiting for response
+		return sendDataAsync(value).join();
+	}
+	
+	
+	@Override
+	public CompletableFuture<Boolean> sendDataAsync(Signal value) 
+	{
+		if (!arduino.isReady() || isPassiveSnifferMode() || !value.hasCode())
+			return CompletableFuture.completedFuture(false);
+		
+		final IRLib2CommandChannel current=startCommandChannel();
+		CompletableFuture<Boolean> sent;
+		
+		synchronized (burstLock) {
+			if (resumeTask!=null) {
+				resumeTask.cancel(false);
+				resumeTask=null;
+			}
 			
-			boolean wasReceiverEnabled=false;
+			// receiver is disabled only by first signal of a burst, sketch runs commands in order
+			if (!receiverSuspended && isReceiverEnabled) {
+				current.submit(1, 1, 0);
+				receiverSuspended=true;
+			}
 			
-			if (isReceiverEnabled) {
-				this.setReceiverEnabled(false);
-				wasReceiverEnabled=true;
+			burstSends++;
+			sent=current.submit(0, value.getProtocol(), value.getCode());
+		}
+		
+		sent.whenComplete(new BiConsumer<Boolean, Throwable>() {
+			@Override
+			public void accept(Boolean success, Throwable error) {
+				endSend(current);
 			}
+		});
+		
+		return sent;
+	}
+	
+	
+	/**
+	 * A burst signal has been sent: schedule receiver enabling after last one
+	 * */
+	private void endSend(final IRLib2CommandChannel current) 
+	{
+		synchronized (burstLock) {
+			if (--burstSends>0 || !receiverSuspended)
+				return;
 			
-			success=execIRDuino("0",param1, param2);
+			resumeTask=current.schedule(new Runnable() {
+				@Override
+				public void run() {
+					resumeReceiver(current);
+				}
+			}, IRDeviceDefaultSettings.RECEIVER_RESUME_DELAY);
 			
+			// channel stopped: nothing can be sent anymore
+			if (resumeTask==null)
+				receiverSuspended=false;
+		}
+	}
+	
+	
+	/**
+	 * Enable receiver again, if no signal has been sent meanwhile
+	 * */
+	private void resumeReceiver(IRLib2CommandChannel current) 
+	{
+		synchronized (burstLock) {
+			if (burstSends>0 || !receiverSuspended)
+				return;
 			
-			if(wasReceiverEnabled)
-				this.setReceiverEnabled(true);
+			receiverSuspended=false;
+			resumeTask=null;
 			
-			return success;
+			// receiver may have been disabled by user during burst
+			if (isReceiverEnabled)
+				current.submit(1, 1, 1);
 		}
 	}
 	
 	
-	@Override
-	public synchronized boolean sendData(Signal value) 
+	/**
+	 * @return device metrics, i.e. to register them on MetricsRegistry
+	 * */
+	public IRDeviceMetrics getMetrics() 
+	{
+		return metrics;
+	}
+	
+	
+	/**
+	 * Start command channel, if not running. Incoming lines are read by 
+	 * channel reader thread only.
+	 * @return running command channel
+	 * */
+	public IRLib2CommandChannel startCommandChannel() 
+	{
+		lock.lock();
+		try {
+			if (channel==null || !channel.isRunning()) {
+				IRLib2CommandChannel started=new IRLib2CommandChannel(arduino, 
+						IRDeviceDefaultSettings.MAX_PENDING_COMMANDS, metrics);
+				started.start();
+				channel=started;
+			}
+			
+			return channel;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	
+	/**
+	 * Stop command channel, pending commands fail. Next command or 
+	 * receiving call starts a new one.
+	 * */
+	public void stopCommandChannel() 
 	{
-		return sendHexValue(value.getProtocol(), value.getValue(), value.getBits());
+		lock.lock();
+		try {
+			if (channel!=null) {
+				channel.stop();
+				channel=null;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	
+	/**
+	 * @return asynchronous command channel, null if not started
+	 * */
+	public IRLib2CommandChannel getCommandChannel() {
+		return channel;
 	}
 	
 	
 	@Override
 	public String receiveHexValue() 
 	{
-		while (isPassiveSnifferMode())
-			try {
-				wait();
-			} catch (InterruptedException e) {}
+		if (!awaitSnifferOff())
+			return "";
 		
 		return JIRduinoHelper.getHexValue(waitResponse());
 	}
@@ -135,32 +344,60 @@ public class IRLib2Device implements IRDevice{
 	@Override
 	public Signal receiveData() 
 	{
-		while (isPassiveSnifferMode())
-			try {
-				wait();
-			} catch (InterruptedException e) {}
+		if (!awaitSnifferOff())
+			return Signal.getEmptySignal();
+		
+		IRLib2CommandChannel current=readingChannel();
+		if (current==null)
+			return Signal.getEmptySignal();
 		
-		String data=waitResponse().replace("\n", "").replace("\r", "");
-		int id=Integer.valueOf(JIRduinoHelper.getProtocolID(data));
-		String value=JIRduinoHelper.getHexValue(data);		
-		int bits=Integer.valueOf(JIRduinoHelper.getProtocolBits(data));
+		// lines not containing an IR frame are skipped
+		for(String line=current.takeLine(); !line.isEmpty(); line=current.takeLine()) 
+			synchronized (frame) {
+				if (frame.parse(line)) {
+					metrics.frameReceived();
+					return frame.toSignal();
+				}
+			}
 		
-		return new Signal(id, value, bits);
+		return Signal.getEmptySignal();
 	}
 	
 	
 	@Override
 	public String receiveProtocolID() 
 	{ 
-		while (isPassiveSnifferMode())
-			try {
-				wait();
-			} catch (InterruptedException e) {}
+		if (!awaitSnifferOff())
+			return "";
 	
 		return JIRduinoHelper.getProtocolID(waitResponse());
 	}
 	
 	
+	/**
+	 * Wait while passive sniffer mode is on, as IR frames are not decoded meanwhile
+	 * @return true if sniffer mode is off, false if thread has been interrupted
+	 * */
+	private boolean awaitSnifferOff() 
+	{
+		if (!passiveSnifferMode)
+			return true;
+		
+		lock.lock();
+		try {
+			while (passiveSnifferMode)
+				snifferOff.await();
+			
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	
 	@Override
 	public boolean isReceiverEnabled() {
 		return isReceiverEnabled;
@@ -170,31 +407,39 @@ public class IRLib2Device implements IRDevice{
 	 * Disconnect IR Device, closing connection with Arduino
 	 * @return true if success, false otherwise
 	 * */
-	public synchronized boolean disconnect() 
+	public boolean disconnect() 
 	{
-		return arduino.close();
+		lock.lock();
+		try {
+			stopCommandChannel();
+			return arduino.close();
+		} finally {
+			lock.unlock();
+		}
 	}
 	
 	
+	/**
+	 * Wait for IR Remote response line from Arduino. Lines are taken from
+	 * command channel, so command responses are not returned, and no 
+	 * device lock is held while waiting.
+	 * @return response as string, empty string if link has been closed
+	 * */
 	@Override
-	public synchronized String waitResponse() 
+	public String waitResponse() 
 	{
-		String resp="";
-		
-		while(!arduino.bufferAvailable())
-			try {
-				Thread.sleep(5);
-					
-			} catch (InterruptedException e) {}
+		IRLib2CommandChannel current=readingChannel();
 		
-			
-		arduino.setEndChar("\r\n");
-		
-		resp=arduino.receive();
-		
-		arduino.setEndChar(DefaultArduinoSerialMonitor.END_WITH);
-				
-		return resp;
+		return current!=null ? current.takeLine() : "";
+	}
+	
+	
+	/**
+	 * @return running command channel, started if needed, null if link is not ready
+	 * */
+	private IRLib2CommandChannel readingChannel() 
+	{
+		return arduino.isReady() ? startCommandChannel() : null;
 	}
 	
 	
@@ -202,13 +447,48 @@ public class IRLib2Device implements IRDevice{
 	 * Run single command string to Arduino
 	 * @return true if success, false otherwise
 	 * */
-	protected synchronized boolean execIRDuino(String opcode, String param1, String param2) 
+	protected boolean execIRDuino(String opcode, String param1, String param2) 
 	{
-		if(arduino.isReady())
-			arduino.send(opcode+","+param1+","+param2);
+		IRLib2CommandChannel current=readingChannel();
+		if (current==null) {
+			metrics.commandFailed();
+			return false;
+		}
 		
-		return waitResponse().contains("250 OK");
+		return current.submit(opcode, param1, param2).join();
+	}
+	
+	
+	/**
+	 * Run single command to Arduino, writing decimal digits straight into command bytes
+	 * @param opcode command opcode (0 send, 1 settings)
+	 * @param param1 first parameter
+	 * @param param2 second parameter, as unsigned value
+	 * @return true if success, false otherwise
+	 * */
+	protected boolean execIRDuino(int opcode, int param1, long param2) 
+	{
+		IRLib2CommandChannel current=readingChannel();
+		if (current==null) {
+			metrics.commandFailed();
+			return false;
+		}
 		
+		return current.submit(opcode, param1, param2).join();
+	}
+	
+	
+	/**
+	 * Run single command to Arduino, without waiting for response. 
+	 * Command channel is started if not running.
+	 * @param opcode command opcode (0 send, 1 settings)
+	 * @param param1 first parameter
+	 * @param param2 second parameter, as unsigned value
+	 * @return future completed with true if success, false otherwise
+	 * */
+	public CompletableFuture<Boolean> execIRDuinoAsync(int opcode, int param1, long param2) 
+	{
+		return startCommandChannel().submit(opcode, param1, param2);
 	}
 	
 	
@@ -219,21 +499,26 @@ public class IRLib2Device implements IRDevice{
 
 	
 	@Override
-	public synchronized boolean setPassiveSnifferMode(boolean value) {
+	public boolean setPassiveSnifferMode(boolean value) {
 		boolean success=false;
 		
-		if(value && !passiveSnifferMode) {
-			success=execIRDuino("1","3","1");
-			
-			if (success) 
-				IRLib2Device.passiveSnifferMode=true;
-		}else {
-			success=execIRDuino("1","3","0");
-			
-			if(success) {
-				IRLib2Device.passiveSnifferMode=false;
-				notifyAll();
+		lock.lock();
+		try {
+			if(value && !passiveSnifferMode) {
+				success=execIRDuino(1, 3, 1);
+				
+				if (success) 
+					this.passiveSnifferMode=true;
+			}else {
+				success=execIRDuino(1, 3, 0);
+				
+				if(success) {
+					this.passiveSnifferMode=false;
+					snifferOff.signalAll();
+				}
 			}
+		} finally {
+			lock.unlock();
 		}
 		
 		return success;
@@ -253,12 +538,12 @@ public class IRLib2Device implements IRDevice{
 		boolean success=false;
 		
 		if(value && !rcvLedOn) {
-			success=execIRDuino("1","2","1");
+			success=execIRDuino(1, 2, 1);
 			
 			if (success) 
 				this.rcvLedOn=true;
 		}else {
-			success=execIRDuino("1","2","0");
+			success=execIRDuino(1, 2, 0);
 			
 			if(success)
 				this.rcvLedOn=false;
@@ -269,20 +554,29 @@ public class IRLib2Device implements IRDevice{
 	}
 	
 	@Override
-	public synchronized boolean setReceiverEnabled(boolean value) {
+	public boolean setReceiverEnabled(boolean value) {
 				
 		boolean success=false;
 		
-		if(value && !isReceiverEnabled) {
-			success=execIRDuino("1","1","1");
-			
-			if (success) 
-				IRLib2Device.isReceiverEnabled=true;
-		}else {
-			success=execIRDuino("1","1","0");
+		lock.lock();
+		try {
+			// already enabled, nothing to send (it used to disable receiver)
+			if (value && isReceiverEnabled)
+				return true;
 			
-			if(success)
-				IRLib2Device.isReceiverEnabled=false;
+			if(value && !isReceiverEnabled) {
+				success=execIRDuino(1, 1, 1);
+				
+				if (success) 
+					this.isReceiverEnabled=true;
+			}else {
+				success=execIRDuino(1, 1, 0);
+				
+				if(success)
+					this.isReceiverEnabled=false;
+			}
+		} finally {
+			lock.unlock();
 		}
 		
 		return success;
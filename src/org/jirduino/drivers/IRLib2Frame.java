@@ -0,0 +1,163 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.HexCodec;
+import org.serialduino.drivers.LineConsumer;
+
+
+/**
+ * Received IR frame, as sent by IRDuino-IRLib2 Sketch:
+ *
+ * <pre>
+ *     value,protocol,bits   (i.e. E0E040BF,7,32)
+ * </pre>
+ *
+ * A frame object is reusable: parse() scans response line once,
+ * storing fields as primitives, without allocations.
+ *
+ * @author Emanuele Paiano
+ * */
+public class IRLib2Frame implements LineConsumer{
+
+	private boolean valid=false;
+
+	private int protocol=0;
+
+	private long value=0;
+
+	private int bits=0;
+
+	/**
+	 * hex value text, only for values longer than 64 bits
+	 * */
+	private String longValue;
+
+
+	/**
+	 * Parse a response line, replacing current fields.
+	 * @param line response line (i.e. E0E040BF,7,32)
+	 * @return true if line is a received IR frame, false otherwise
+	 * */
+	public boolean parse(CharSequence line)
+	{
+		valid=false;
+		protocol=0;
+		value=0;
+		bits=0;
+		longValue=null;
+
+		int field=0;
+		int valueDigits=0;
+		int protocolDigits=0;
+		int bitsDigits=0;
+
+		for(int i=0;i<line.length();i++) {
+			char c=line.charAt(i);
+
+			if (c==',') {
+				if (++field>2)
+					return false;
+				continue;
+			}
+
+			if (c=='\r' || c=='\n')
+				continue;
+
+			if (field==0) {
+				int digit=HexCodec.digit(c);
+				if (digit<0)
+					return false;
+				value=(value<<4) | digit;
+				valueDigits++;
+			}else {
+				if (c<'0' || c>'9')
+					return false;
+				if (field==1) {
+					protocol=protocol*10+(c-'0');
+					protocolDigits++;
+				}else {
+					bits=bits*10+(c-'0');
+					bitsDigits++;
+				}
+			}
+		}
+
+		if (valueDigits>HexCodec.MAX_HEX_DIGITS)
+			longValue=line.subSequence(0, valueDigits).toString().toUpperCase();
+
+		valid= field==2 && valueDigits>0 && protocolDigits>0 && bitsDigits>0;
+		return valid;
+	}
+
+
+	@Override
+	public void onLine(CharSequence line) {
+		parse(line);
+	}
+
+
+	/**
+	 * @return true if last parsed line was a received IR frame, false otherwise
+	 * */
+	public boolean isValid() {
+		return valid;
+	}
+
+	/**
+	 * @return protocol id
+	 * */
+	public int getProtocol() {
+		return protocol;
+	}
+
+	/**
+	 * @return command value (lower 64 bits)
+	 * */
+	public long getValue() {
+		return value;
+	}
+
+	/**
+	 * @return bit number
+	 * */
+	public int getBits() {
+		return bits;
+	}
+
+	/**
+	 * @return command value as hex string (i.e. E0E040BF)
+	 * */
+	public String getHexValue() {
+		if (longValue!=null)
+			return longValue;
+
+		return HexCodec.toHex(value);
+	}
+
+	/**
+	 * @return Signal object for current frame
+	 * */
+	public Signal toSignal() {
+		if (longValue!=null)
+			return new Signal(protocol, longValue, bits);
+		
+		return new Signal(protocol, value, bits);
+	}
+
+}
@@ -0,0 +1,662 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.JIRduinoThreads;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+import org.serialduino.drivers.LineConsumer;
+import org.serialduino.drivers.LineFramer;
+import org.serialduino.drivers.LinkDevice;
+
+
+/**
+ * In-process Arduino running IRDuino-IRLib2 Sketch, for load tests and
+ * benchmarks without hardware. It replies to commands like the Sketch
+ * (opcode 0 sends a signal, opcode 1 changes settings, "250 OK" response)
+ * and emits received IR frames ("value,protocol,bits") while receiver is
+ * enabled.
+ *
+ * Each line sent to host is delayed by serial transfer time (10 bits per
+ * byte at simulated baudrate), link latency and a random jitter, keeping
+ * sending order.
+ *
+ * Example:
+ *
+ * <pre>
+ *     IRLib2Simulator sim=new IRLib2Simulator();
+ *     sim.startGenerator(signals, 100, true);
+ *
+ *     IRDevice ir=new IRLib2Device(sim);
+ *     ir.init();
+ * </pre>
+ *
+ * @see IRDeviceDefaultSettings
+ * @author Emanuele Paiano
+ * */
+public class IRLib2Simulator implements LinkDevice {
+
+	/**
+	 * port name selecting simulator in irduino tools
+	 * */
+	public static final String PORT_NAME="simulator";
+
+	/**
+	 * bits transferred for each byte (start, 8 data, stop)
+	 * */
+	private static final int BITS_PER_BYTE=10;
+
+	/**
+	 * lines sent to host
+	 * */
+	private final LineFramer output=new LineFramer();
+
+	/**
+	 * bytes received from host, split into commands
+	 * */
+	private final LineFramer input=new LineFramer();
+
+	private final CommandParser parser=new CommandParser();
+
+	private final ScheduledExecutorService clock;
+
+	private final Random random;
+
+	/**
+	 * simulated link speed (bits per second)
+	 * */
+	private volatile int baudRate;
+
+	/**
+	 * simulated link latency (in micros)
+	 * */
+	private volatile long latency;
+
+	/**
+	 * max random delay (in micros) added to latency
+	 * */
+	private volatile long jitter;
+
+	/**
+	 * delivery time (System.nanoTime()) of last line sent to host, guarded by output
+	 * */
+	private long lastDelivery=0;
+
+	/**
+	 * lines to send to host, in delivery order, guarded by output
+	 * */
+	private final ArrayDeque<Delivery> deliveries=new ArrayDeque<Delivery>();
+
+	private volatile boolean opened=false;
+
+	private volatile boolean receiverEnabled=false;
+
+	private volatile boolean ledOn=false;
+
+	private volatile boolean snifferMode=false;
+
+	private final AtomicLong sentSignals=new AtomicLong();
+
+	private final AtomicLong commands=new AtomicLong();
+
+	private final AtomicLong emittedSignals=new AtomicLong();
+
+	private volatile Signal lastSent=Signal.getEmptySignal();
+
+	private ScheduledFuture<?> generator;
+
+	private final List<IRTransmitListener> listeners=new CopyOnWriteArrayList<IRTransmitListener>();
+
+
+	/**
+	 * Constructor. Link speed, latency and jitter from IRDeviceDefaultSettings
+	 * */
+	public IRLib2Simulator()
+	{
+		this(IRDeviceDefaultSettings.SIMULATOR_BAUDRATE, IRDeviceDefaultSettings.SIMULATOR_LATENCY,
+				IRDeviceDefaultSettings.SIMULATOR_JITTER, System.nanoTime());
+	}
+
+	/**
+	 * Constructor.
+	 * @param baudRate simulated link speed (i.e. 9600), 0 for no transfer time
+	 * @param latency simulated link latency (in micros)
+	 * @param jitter max random delay (in micros) added to latency
+	 * @param seed random seed for jitter and generator, same seed gives same sequence
+	 * */
+	public IRLib2Simulator(int baudRate, long latency, long jitter, long seed)
+	{
+		this.baudRate=baudRate;
+		this.latency=latency;
+		this.jitter=jitter;
+		this.random=new Random(seed);
+
+		clock=JIRduinoThreads.newScheduler("IRLib2Simulator-clock");
+	}
+
+
+	/**
+	 * Emit a received IR frame, if receiver is enabled. In passive sniffer
+	 * mode a dump line is emitted instead.
+	 * @param signal received signal
+	 * @return true if frame has been emitted, false if link is closed or receiver disabled
+	 * */
+	public boolean emit(Signal signal)
+	{
+		if (!opened || !receiverEnabled)
+			return false;
+
+		String line;
+
+		if (snifferMode)
+			line="Decoded protocol "+signal.getProtocol()+": Value:"+signal.getValue()+" ("+signal.getBits()+" bits)";
+		else
+			line=signal.getValue()+","+signal.getProtocol()+","+signal.getBits();
+
+		deliver(line);
+		emittedSignals.incrementAndGet();
+		return true;
+	}
+
+
+	/**
+	 * Start emitting signals periodically, replacing current generator
+	 * @param signals signals to emit
+	 * @param period pause (in millis) between signals
+	 * @param shuffle true to pick signals randomly, false to emit them in list order (cyclically)
+	 * */
+	public synchronized void startGenerator(List<Signal> signals, long period, final boolean shuffle)
+	{
+		stopGenerator();
+
+		final List<Signal> script=new ArrayList<Signal>(signals);
+
+		if (script.isEmpty())
+			return;
+
+		generator=clock.scheduleAtFixedRate(new Runnable() {
+			private int next=0;
+
+			@Override
+			public void run() {
+				int index;
+
+				if (shuffle)
+					synchronized (random) {
+						index=random.nextInt(script.size());
+					}
+				else
+					index=next++ % script.size();
+
+				emit(script.get(index));
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+
+	/**
+	 * Stop emitting signals
+	 * */
+	public synchronized void stopGenerator()
+	{
+		if (generator!=null) {
+			generator.cancel(false);
+			generator=null;
+		}
+	}
+
+
+	/**
+	 * Add a listener notified on each send command
+	 * @param listener IRTransmitListener object
+	 * */
+	public void addTransmitListener(IRTransmitListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a send commands listener
+	 * @param listener IRTransmitListener object
+	 * */
+	public void removeTransmitListener(IRTransmitListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+
+	/**
+	 * Stop simulator clock. Simulator can't be used anymore.
+	 * */
+	public void shutdown()
+	{
+		close();
+		clock.shutdownNow();
+	}
+
+
+	/**
+	 * run a complete command line, as Sketch does
+	 * */
+	private void onCommand(CharSequence line)
+	{
+		commands.incrementAndGet();
+
+		if (!parser.parse(line)) {
+			deliver("400 BAD REQUEST");
+			return;
+		}
+
+		if (parser.opcode==0) {
+			long now=System.nanoTime();
+			sentSignals.incrementAndGet();
+			lastSent=new Signal(parser.param1, parser.param2, 0);
+
+			for(IRTransmitListener listener: listeners)
+				listener.onTransmit(lastSent, now);
+		}else if (parser.opcode==1 && parser.param1==1)
+			receiverEnabled=parser.param2!=0;
+		else if (parser.opcode==1 && parser.param1==2)
+			ledOn=parser.param2!=0;
+		else if (parser.opcode==1 && parser.param1==3)
+			snifferMode=parser.param2!=0;
+		else {
+			deliver("404 NOT FOUND");
+			return;
+		}
+
+		deliver("250 OK");
+	}
+
+
+	/**
+	 * send a line to host after transfer time, latency and jitter
+	 * */
+	private void deliver(String line)
+	{
+		final byte[] data=(line+"\n").getBytes(StandardCharsets.ISO_8859_1);
+
+		long delay=latency*1000;
+
+		if (jitter>0)
+			synchronized (random) {
+				delay+=(long)(random.nextDouble()*jitter*1000);
+			}
+
+		if (baudRate>0)
+			delay+=data.length*BITS_PER_BYTE*1000000000L/baudRate;
+
+		synchronized (output) {
+			// a line can't overtake previous ones: queued lines are sent in order
+			long due=Math.max(System.nanoTime()+delay, lastDelivery);
+			lastDelivery=due;
+			deliveries.add(new Delivery(due, data));
+
+			clock.schedule(new Runnable() {
+				@Override
+				public void run() {
+					deliverDue();
+				}
+			}, Math.max(0, due-System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+	}
+
+
+	/**
+	 * send to host queued lines whose delivery time has come, in order
+	 * */
+	private void deliverDue()
+	{
+		long now=System.nanoTime();
+
+		synchronized (output) {
+			Delivery next;
+
+			while((next=deliveries.peek())!=null && next.due-now<=0) {
+				deliveries.poll();
+
+				if (opened)
+					output.feed(next.data, 0, next.data.length);
+			}
+		}
+	}
+
+
+	/**
+	 * split received bytes into commands
+	 * */
+	private void received()
+	{
+		while(input.readLine(parser.runner)) {
+			// run by parser.runner
+		}
+	}
+
+
+	@Override
+	public int write(String data) {
+		if (!opened)
+			return -1;
+
+		byte[] bytes=data.getBytes(StandardCharsets.ISO_8859_1);
+
+		synchronized (input) {
+			input.feed(bytes, 0, bytes.length);
+			received();
+		}
+
+		return bytes.length;
+	}
+
+	@Override
+	public int write(ByteBuffer data) {
+		if (!opened)
+			return -1;
+
+		int length=data.remaining();
+
+		synchronized (input) {
+			input.feed(data);
+			received();
+		}
+
+		return length;
+	}
+
+	@Override
+	public long write(ByteBuffer[] data) {
+		if (!opened)
+			return -1;
+
+		long length=0;
+
+		synchronized (input) {
+			for(ByteBuffer buffer: data) {
+				length+=buffer.remaining();
+				input.feed(buffer);
+			}
+			received();
+		}
+
+		return length;
+	}
+
+	@Override
+	public String read(int bytes) {
+		return opened ? output.read(bytes) : null;
+	}
+
+	@Override
+	public String read() {
+		return opened ? output.read() : null;
+	}
+
+	@Override
+	public int read(ByteBuffer data) {
+		return opened ? output.read(data) : 0;
+	}
+
+	@Override
+	public long read(ByteBuffer[] data) {
+		return opened ? output.read(data) : 0;
+	}
+
+	@Override
+	public boolean awaitLine(long timeout) {
+		return opened && output.awaitLine(timeout);
+	}
+
+	@Override
+	public String readLine() {
+		return opened ? output.readLine() : null;
+	}
+
+	@Override
+	public boolean readLine(LineConsumer consumer) {
+		return opened && output.readLine(consumer);
+	}
+
+	/**
+	 * Open link. Sketch state is reset, like Arduino does on serial connection.
+	 * */
+	@Override
+	public synchronized boolean open() {
+		if (opened)
+			return true;
+
+		output.clear();
+		input.clear();
+
+		synchronized (output) {
+			lastDelivery=0;
+			deliveries.clear();
+		}
+
+		receiverEnabled=false;
+		ledOn=false;
+		snifferMode=false;
+		opened=true;
+		return true;
+	}
+
+	@Override
+	public synchronized boolean close() {
+		if (!opened)
+			return false;
+
+		opened=false;
+		// wakes up line readers
+		output.close();
+		return true;
+	}
+
+	@Override
+	public boolean isReady() {
+		return opened;
+	}
+
+	@Override
+	public boolean bufferAvailable() {
+		return opened && output.available()>0;
+	}
+
+	@Override
+	public Object getDevice() {
+		return this;
+	}
+
+
+	/**
+	 * @param baudRate simulated link speed, 0 for no transfer time
+	 * */
+	public void setBaudRate(int baudRate) {
+		this.baudRate = baudRate;
+	}
+
+	/**
+	 * @return simulated link speed
+	 * */
+	public int getBaudRate() {
+		return baudRate;
+	}
+
+	/**
+	 * @param latency simulated link latency (in micros)
+	 * */
+	public void setLatency(long latency) {
+		this.latency = latency;
+	}
+
+	/**
+	 * @return simulated link latency (in micros)
+	 * */
+	public long getLatency() {
+		return latency;
+	}
+
+	/**
+	 * @param jitter max random delay (in micros) added to latency
+	 * */
+	public void setJitter(long jitter) {
+		this.jitter = jitter;
+	}
+
+	/**
+	 * @return max random delay (in micros) added to latency
+	 * */
+	public long getJitter() {
+		return jitter;
+	}
+
+	/**
+	 * @return true if Sketch receiver is enabled
+	 * */
+	public boolean isReceiverEnabled() {
+		return receiverEnabled;
+	}
+
+	/**
+	 * @return true if Sketch receiving led is on
+	 * */
+	public boolean isLedOn() {
+		return ledOn;
+	}
+
+	/**
+	 * @return true if Sketch is in passive sniffer mode
+	 * */
+	public boolean isSnifferMode() {
+		return snifferMode;
+	}
+
+	/**
+	 * @return signals sent by host (opcode 0 commands)
+	 * */
+	public long getSentSignals() {
+		return sentSignals.get();
+	}
+
+	/**
+	 * @return commands received from host
+	 * */
+	public long getCommands() {
+		return commands.get();
+	}
+
+	/**
+	 * @return IR frames emitted to host
+	 * */
+	public long getEmittedSignals() {
+		return emittedSignals.get();
+	}
+
+	/**
+	 * @return last signal sent by host (bits are not part of send command, so they are 0)
+	 * */
+	public Signal getLastSent() {
+		return lastSent;
+	}
+
+
+	/**
+	 * parses "opcode,param1,param2" commands, used holding input lock
+	 * */
+	private class CommandParser {
+
+		int opcode;
+
+		int param1;
+
+		long param2;
+
+		final LineConsumer runner=new LineConsumer() {
+			@Override
+			public void onLine(CharSequence line) {
+				onCommand(line);
+			}
+		};
+
+		/**
+		 * @return true if line is a valid command, false otherwise
+		 * */
+		boolean parse(CharSequence line)
+		{
+			opcode=0;
+			param1=0;
+			param2=0;
+
+			int field=0;
+			int digits=0;
+
+			for(int i=0;i<line.length();i++) {
+				char c=line.charAt(i);
+
+				if (c=='\r' || c=='\n')
+					continue;
+
+				if (c==',') {
+					if (digits==0 || ++field>2)
+						return false;
+					digits=0;
+					continue;
+				}
+
+				if (c<'0' || c>'9' || ++digits>20)
+					return false;
+
+				if (field==0)
+					opcode=opcode*10+(c-'0');
+				else if (field==1)
+					param1=param1*10+(c-'0');
+				else
+					param2=param2*10+(c-'0');
+			}
+
+			return field==2 && digits>0;
+		}
+	}
+
+
+	/**
+	 * line to send to host at delivery time
+	 * */
+	private static class Delivery {
+
+		final long due;
+
+		final byte[] data;
+
+		Delivery(long due, byte[] data)
+		{
+			this.due=due;
+			this.data=data;
+		}
+	}
+
+}
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jirduino.helpers.JIRduinoThreads;
+
+
+/**
+ * Simulated Arduino replaying a capture written by IRCaptureWriter: frames
+ * are emitted with their original spacing, divided by replay speed. Replay
+ * starts when receiver is enabled (i.e. by IRLib2Device.setReceiverEnabled())
+ * and runs once for each open(). Commands are answered like IRLib2Simulator
+ * does, with no simulated transfer time.
+ *
+ * Example:
+ *
+ * <pre>
+ *     IRReplayLinkDevice replay=new IRReplayLinkDevice(new IRCaptureReader("living-room.ircap"), 10);
+ *     IRDevice ir=new IRLib2Device(replay);
+ *     ir.init();
+ *     ir.setReceiverEnabled(true);
+ * </pre>
+ *
+ * @see IRCaptureReader
+ * @author Emanuele Paiano
+ * */
+public class IRReplayLinkDevice extends IRLib2Simulator {
+
+	/**
+	 * port name prefix selecting a replay in irduino tools (i.e. replay:living-room.ircap)
+	 * */
+	public static final String PORT_PREFIX="replay:";
+
+	private final IRCaptureReader capture;
+
+	/**
+	 * replay speed: 1 for original speed, 10 for 10 times faster, 0 for no pauses
+	 * */
+	private final double speed;
+
+	private Thread player;
+
+	private volatile boolean finished=false;
+
+	private volatile long replayed=0;
+
+	private volatile long dropped=0;
+
+
+	/**
+	 * Constructor. Frames are replayed at original speed.
+	 * @param capture capture to replay, used only by this device
+	 * */
+	public IRReplayLinkDevice(IRCaptureReader capture)
+	{
+		this(capture, 1);
+	}
+
+	/**
+	 * Constructor.
+	 * @param capture capture to replay, used only by this device
+	 * @param speed replay speed: 1 for original speed, 10 for 10 times faster, 0 for no pauses
+	 * */
+	public IRReplayLinkDevice(IRCaptureReader capture, double speed)
+	{
+		super(0, 0, 0, 0);
+		this.capture=capture;
+		this.speed=speed;
+	}
+
+
+	/**
+	 * Open link and start replay thread
+	 * */
+	@Override
+	public synchronized boolean open() {
+		if (isReady())
+			return true;
+
+		super.open();
+
+		finished=false;
+		replayed=0;
+		dropped=0;
+
+		player=JIRduinoThreads.start("IRReplayLinkDevice-player", new Runnable() {
+			@Override
+			public void run() {
+				play();
+			}
+		});
+
+		return true;
+	}
+
+	/**
+	 * Stop replay and close link
+	 * */
+	@Override
+	public synchronized boolean close() {
+		if (player!=null)
+			player.interrupt();
+
+		return super.close();
+	}
+
+
+	/**
+	 * Wait for replay end
+	 * @param timeout max waiting time in millis, 0 to wait forever
+	 * @return true if all frames have been replayed, false otherwise
+	 * */
+	public boolean awaitEnd(long timeout)
+	{
+		Thread current;
+
+		synchronized (this) {
+			current=player;
+		}
+
+		if (current==null)
+			return false;
+
+		try {
+			current.join(timeout);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		return finished;
+	}
+
+
+	/**
+	 * @return true if all frames have been replayed
+	 * */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return frames emitted since open()
+	 * */
+	public long getReplayed() {
+		return replayed;
+	}
+
+	/**
+	 * @return frames not emitted since open(), because receiver was disabled
+	 * */
+	public long getDropped() {
+		return dropped;
+	}
+
+
+	/**
+	 * player thread: wait for receiver, then emit frames on time
+	 * */
+	private void play()
+	{
+		Thread current=Thread.currentThread();
+
+		while(isReady() && !isReceiverEnabled()) {
+			LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+
+			if (current.isInterrupted())
+				return;
+		}
+
+		capture.rewind();
+
+		long base=System.nanoTime();
+		long first=-1;
+
+		while(capture.next()) {
+			if (first<0)
+				first=capture.getTime();
+
+			if (speed>0) {
+				long due=base+(long)((capture.getTime()-first)/speed);
+				long wait;
+
+				while((wait=due-System.nanoTime())>0 && !current.isInterrupted())
+					LockSupport.parkNanos(wait);
+			}
+
+			if (current.isInterrupted() || !isReady())
+				return;
+
+			if (emit(capture.getSignal()))
+				replayed++;
+			else
+				dropped++;
+		}
+
+		finished=true;
+	}
+
+}
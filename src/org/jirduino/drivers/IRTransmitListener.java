@@ -0,0 +1,38 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import org.jirduino.core.Signal;
+
+
+/**
+ * Signals transmitted by a simulated Arduino, i.e. to measure latency
+ * from a received frame to its translated signal.
+ *
+ * @see IRLib2Simulator
+ * @author Emanuele Paiano
+ * */
+public interface IRTransmitListener {
+
+	/**
+	 * Arduino got a send command
+	 * @param signal signal to transmit (bits are not part of send command, so they are 0)
+	 * @param nanos command receiving time, as System.nanoTime()
+	 * */
+	public void onTransmit(Signal signal, long nanos);
+
+}
@@ -0,0 +1,565 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.drivers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.LogEvent;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+
+
+/**
+ * Pool of transmitting IR devices covering the same space (i.e. several
+ * boards in the same room): each signal is sent by one of them, so bulk
+ * sends (macro playback, device provisioning) run on all boards at once.
+ *
+ * Devices are chosen round-robin or least loaded (fewest signals in flight),
+ * skipping devices not ready, unhealthy or with TRANSMITTER_MAX_IN_FLIGHT
+ * signals in flight. When all devices are busy, senders wait for a free one
+ * (up to COMMAND_TIMEOUT millis). A device failing TRANSMITTER_MAX_FAILURES
+ * sends in a row is unhealthy: it's tried again, with a single signal,
+ * after TRANSMITTER_RETRY_TIME millis. A signal whose device link is not
+ * ready is sent on another device; a signal failing after being written
+ * (i.e. timeout) is sent again once on another device only if retry of
+ * failed sends is enabled, as it may have been emitted anyway.
+ *
+ * Signals sent by different devices can overlap: use a single device for
+ * sequences whose order matters.
+ *
+ * Example:
+ *
+ * <pre>
+ *     IRTransmitterPool transmitters=new IRTransmitterPool();
+ *     transmitters.addReadyDevices(devicePool);
+ *     for(Signal signal: macro)
+ *         transmitters.sendAsync(signal);
+ * </pre>
+ *
+ * @see IRDevicePool
+ * @author Emanuele Paiano
+ * */
+public class IRTransmitterPool {
+
+	/**
+	 * How a device is chosen for next signal
+	 * */
+	public enum Scheduling {
+		/**
+		 * devices in turn
+		 * */
+		ROUND_ROBIN,
+		/**
+		 * device with fewest signals in flight
+		 * */
+		LEAST_LOADED
+	}
+
+	private final Scheduling scheduling;
+
+	private final int maxInFlight;
+
+	/**
+	 * pool devices, guarded by this
+	 * */
+	private final List<Member> members=new ArrayList<Member>();
+
+	/**
+	 * next device to try, guarded by this
+	 * */
+	private int next=0;
+
+	/**
+	 * threads waiting for a free device, guarded by this
+	 * */
+	private int waiters=0;
+
+	/**
+	 * signals not sent because no device was available
+	 * */
+	private final AtomicLong rejected=new AtomicLong();
+
+	/**
+	 * if true, signals failing after being written are sent again on another device
+	 * */
+	private volatile boolean retryFailedSends=IRDeviceDefaultSettings.TRANSMITTER_RETRY_FAILED_SENDS;
+
+
+	/**
+	 * Constructor. Least loaded scheduling, TRANSMITTER_MAX_IN_FLIGHT signals
+	 * in flight on each device.
+	 * */
+	public IRTransmitterPool()
+	{
+		this(Scheduling.LEAST_LOADED, IRDeviceDefaultSettings.TRANSMITTER_MAX_IN_FLIGHT);
+	}
+
+	/**
+	 * Constructor.
+	 * @param scheduling how a device is chosen for next signal
+	 * @param maxInFlight max signals in flight on each device
+	 * */
+	public IRTransmitterPool(Scheduling scheduling, int maxInFlight)
+	{
+		this.scheduling=scheduling;
+		this.maxInFlight=Math.max(1, maxInFlight);
+	}
+
+
+	/**
+	 * Add a transmitting device
+	 * @param name device name (i.e. port name)
+	 * @param device IRDevice object, initialized
+	 * @return true if success, false if name is already used
+	 * */
+	public synchronized boolean add(String name, IRDevice device)
+	{
+		if (find(name)!=null)
+			return false;
+
+		members.add(new Member(name, device));
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Add opened devices of an IRDevicePool whose link is ready, not
+	 * already added. Devices are not acquired: they're still managed by
+	 * device pool.
+	 * @param pool IRDevicePool object
+	 * @return added devices number
+	 * */
+	public int addReadyDevices(IRDevicePool pool)
+	{
+		List<IRDevice> ready=pool.getReadyDevices();
+		int added=0;
+
+		for(String name: pool.getNames()) {
+			IRDevice device=pool.getDevice(name);
+
+			if (device!=null && ready.contains(device) && add(name, device))
+				added++;
+		}
+
+		return added;
+	}
+
+	/**
+	 * Remove a device. Signals in flight on it are still completed.
+	 * @param name device name
+	 * @return removed device, null if not found
+	 * */
+	public synchronized IRDevice remove(String name)
+	{
+		Member member=find(name);
+
+		if (member==null)
+			return null;
+
+		members.remove(member);
+		return member.device;
+	}
+
+
+	/**
+	 * Send a signal by next available device, waiting for one up to
+	 * COMMAND_TIMEOUT millis if all are busy.
+	 * @param value signal to send
+	 * @return completed with true when sketch answers OK, false on failure
+	 * or if no device is available
+	 * */
+	public CompletableFuture<Boolean> sendAsync(Signal value)
+	{
+		Member member=acquire(IRDeviceDefaultSettings.COMMAND_TIMEOUT);
+
+		if (member==null) {
+			rejected.incrementAndGet();
+			return CompletableFuture.completedFuture(false);
+		}
+
+		CompletableFuture<Boolean> result=new CompletableFuture<Boolean>();
+		dispatch(member, value, result, false);
+		return result;
+	}
+
+	/**
+	 * Send a signal and wait for sketch answer
+	 * @param value signal to send
+	 * @return true if success, false otherwise
+	 * */
+	public boolean send(Signal value)
+	{
+		return sendAsync(value).join();
+	}
+
+	/**
+	 * Send signals on all devices, waiting for all answers
+	 * @param values signals to send
+	 * @return sent signals number
+	 * */
+	public int sendAll(List<Signal> values)
+	{
+		List<CompletableFuture<Boolean>> results=new ArrayList<CompletableFuture<Boolean>>(values.size());
+
+		for(Signal value: values)
+			results.add(sendAsync(value));
+
+		int sent=0;
+
+		for(CompletableFuture<Boolean> result: results)
+			if (result.join())
+				sent++;
+
+		return sent;
+	}
+
+
+	/**
+	 * @return scheduling policy
+	 * */
+	public Scheduling getScheduling() {
+		return scheduling;
+	}
+
+	/**
+	 * @return max signals in flight on each device
+	 * */
+	public int getMaxInFlight() {
+		return maxInFlight;
+	}
+
+	/**
+	 * @return true if signals failing after being written are sent again on another device
+	 * */
+	public boolean isRetryFailedSends() {
+		return retryFailedSends;
+	}
+
+	/**
+	 * Enable retry of signals failing after being written (i.e. timeout). Failed
+	 * device may have already emitted them: don't enable it for toggle commands.
+	 * @param retryFailedSends true to send them again once on another device
+	 * (default IRDeviceDefaultSettings.TRANSMITTER_RETRY_FAILED_SENDS)
+	 * */
+	public void setRetryFailedSends(boolean retryFailedSends) {
+		this.retryFailedSends = retryFailedSends;
+	}
+
+	/**
+	 * @return devices number
+	 * */
+	public synchronized int size() {
+		return members.size();
+	}
+
+	/**
+	 * @return device names
+	 * */
+	public synchronized List<String> getNames() {
+		List<String> names=new ArrayList<String>();
+
+		for(Member member: members)
+			names.add(member.name);
+
+		return names;
+	}
+
+	/**
+	 * @return healthy devices with link ready
+	 * */
+	public synchronized int getHealthyDevices() {
+		int healthy=0;
+
+		for(Member member: members)
+			if (member.healthy && member.device.getArduino().isReady())
+				healthy++;
+
+		return healthy;
+	}
+
+	/**
+	 * @param name device name
+	 * @return true if device is healthy, false if unhealthy or not found
+	 * */
+	public synchronized boolean isHealthy(String name) {
+		Member member=find(name);
+		return member!=null && member.healthy;
+	}
+
+	/**
+	 * @return signals in flight on all devices
+	 * */
+	public synchronized int getInFlight() {
+		int inFlight=0;
+
+		for(Member member: members)
+			inFlight+=member.inFlight;
+
+		return inFlight;
+	}
+
+	/**
+	 * @param name device name
+	 * @return signals in flight on device, -1 if not found
+	 * */
+	public synchronized int getInFlight(String name) {
+		Member member=find(name);
+		return member!=null ? member.inFlight : -1;
+	}
+
+	/**
+	 * @param name device name
+	 * @return signals sent by device, -1 if not found
+	 * */
+	public synchronized long getSent(String name) {
+		Member member=find(name);
+		return member!=null ? member.sent : -1;
+	}
+
+	/**
+	 * @param name device name
+	 * @return failed sends of device, -1 if not found
+	 * */
+	public synchronized long getFailed(String name) {
+		Member member=find(name);
+		return member!=null ? member.failed : -1;
+	}
+
+	/**
+	 * @return signals not sent because no device was available
+	 * */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+
+	/**
+	 * send signal on a device, sending it once on another device if link is not
+	 * ready, or if it fails and retry of failed sends is enabled
+	 * */
+	private void dispatch(final Member member, final Signal value, final CompletableFuture<Boolean> result, final boolean retry)
+	{
+		CompletableFuture<Boolean> sent;
+		boolean ready=member.device.getArduino().isReady();
+
+		if (ready) {
+			try {
+				sent=member.device.sendDataAsync(value);
+			} catch (RuntimeException e) {
+				sent=CompletableFuture.completedFuture(false);
+			}
+		}else
+			sent=CompletableFuture.completedFuture(false);
+
+		// link not ready: nothing has been written, so it's safe to send on another device
+		final boolean retryable=!ready || retryFailedSends;
+
+		sent.whenComplete(new BiConsumer<Boolean, Throwable>() {
+			@Override
+			public void accept(Boolean success, Throwable error) {
+				boolean ok=error==null && Boolean.TRUE.equals(success);
+				Member other=null;
+
+				synchronized (IRTransmitterPool.this) {
+					completed(member, ok);
+
+					if (!ok && !retry && retryable)
+						other=select(member);
+				}
+
+				if (other!=null)
+					dispatch(other, value, result, true);
+				else
+					result.complete(ok);
+			}
+		});
+	}
+
+
+	/**
+	 * choose a device, waiting for one if all are busy
+	 * @return chosen device, with a reserved in flight signal; null on timeout
+	 * */
+	private synchronized Member acquire(long timeout)
+	{
+		long deadline=System.currentTimeMillis()+timeout;
+
+		while(true) {
+			Member member=select(null);
+
+			if (member!=null)
+				return member;
+
+			long remaining=deadline-System.currentTimeMillis();
+
+			if (remaining<=0)
+				return null;
+
+			waiters++;
+			try {
+				// links and unhealthy devices may come back meanwhile
+				wait(Math.min(remaining, IRDeviceDefaultSettings.LINE_POLL_TIME));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			} finally {
+				waiters--;
+			}
+		}
+	}
+
+
+	/**
+	 * choose an available device and reserve an in flight signal on it. Lock must be held
+	 * @param exclude device not to choose, null for none
+	 * @return chosen device, null if none is available
+	 * */
+	private Member select(Member exclude)
+	{
+		int size=members.size();
+
+		if (size==0)
+			return null;
+
+		long now=System.currentTimeMillis();
+		Member chosen=null;
+		int chosenIndex=0;
+
+		for(int i=0;i<size;i++) {
+			int index=(next+i)%size;
+			Member member=members.get(index);
+
+			if (member==exclude || !member.isAvailable(now, maxInFlight))
+				continue;
+
+			if (chosen==null || member.inFlight<chosen.inFlight) {
+				chosen=member;
+				chosenIndex=index;
+
+				if (scheduling==Scheduling.ROUND_ROBIN || member.inFlight==0)
+					break;
+			}
+		}
+
+		if (chosen==null)
+			return null;
+
+		next=(chosenIndex+1)%size;
+		chosen.inFlight++;
+		return chosen;
+	}
+
+
+	/**
+	 * update device state after a send. Lock must be held
+	 * */
+	private void completed(Member member, boolean ok)
+	{
+		member.inFlight--;
+
+		if (ok) {
+			member.sent++;
+			member.failures=0;
+
+			if (!member.healthy)
+				LogEvent.logger.info("IR transmitter "+member.name+" healthy again");
+
+			member.healthy=true;
+		}else {
+			member.failed++;
+
+			if (++member.failures>=IRDeviceDefaultSettings.TRANSMITTER_MAX_FAILURES) {
+				if (member.healthy)
+					LogEvent.logger.warning("IR transmitter "+member.name+" unhealthy after "+member.failures+" failed sends");
+
+				member.healthy=false;
+				member.retryTime=System.currentTimeMillis()+IRDeviceDefaultSettings.TRANSMITTER_RETRY_TIME;
+			}
+		}
+
+		if (waiters>0)
+			notifyAll();
+	}
+
+
+	/**
+	 * device by name, lock must be held
+	 * */
+	private Member find(String name)
+	{
+		for(Member member: members)
+			if (member.name.equals(name))
+				return member;
+
+		return null;
+	}
+
+
+	/**
+	 * pool device and its state, guarded by pool
+	 * */
+	private static class Member {
+
+		final String name;
+
+		final IRDevice device;
+
+		int inFlight=0;
+
+		long sent=0;
+
+		long failed=0;
+
+		/**
+		 * failed sends in a row
+		 * */
+		int failures=0;
+
+		boolean healthy=true;
+
+		/**
+		 * time (millis) when an unhealthy device can be tried again
+		 * */
+		long retryTime=0;
+
+		Member(String name, IRDevice device)
+		{
+			this.name=name;
+			this.device=device;
+		}
+
+		/**
+		 * @return true if device can send a signal now
+		 * */
+		boolean isAvailable(long now, int maxInFlight)
+		{
+			if (!device.getArduino().isReady())
+				return false;
+
+			// unhealthy device is tried with a single signal
+			if (!healthy)
+				return now>=retryTime && inFlight==0;
+
+			return inFlight<maxInFlight;
+		}
+	}
+
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.helpers;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * Lookup table based hex/decimal codec for IR command values.
+ * Values are handled as unsigned 64-bit codes (up to 16 hex digits),
+ * decimal digits are written straight into command buffers.
+ *
+ * @author Emanuele Paiano
+ * */
+public class HexCodec {
+
+	/**
+	 * max hex digits for a 64-bit code
+	 * */
+	public static final int MAX_HEX_DIGITS=16;
+
+	/**
+	 * hex digit value for each ASCII char, -1 if not hex digit
+	 * */
+	private static final byte[] HEX_VALUES=new byte[128];
+
+	private static final char[] HEX_DIGITS="0123456789ABCDEF".toCharArray();
+
+	/**
+	 * tens and ones digits for numbers 0..99
+	 * */
+	private static final char[] DIGIT_TENS=new char[100];
+
+	private static final char[] DIGIT_ONES=new char[100];
+
+	static {
+		for(int i=0;i<HEX_VALUES.length;i++)
+			HEX_VALUES[i]=(byte)Character.digit((char)i, 16);
+
+		for(int i=0;i<100;i++) {
+			DIGIT_TENS[i]=(char)('0'+i/10);
+			DIGIT_ONES[i]=(char)('0'+i%10);
+		}
+	}
+
+
+	/**
+	 * @param c char to decode
+	 * @return hex digit value, -1 if c is not a hex digit
+	 * */
+	public static int digit(char c)
+	{
+		return c<128 ? HEX_VALUES[c] : -1;
+	}
+
+
+	/**
+	 * Check if value is a hex code of 1 to 16 digits
+	 * @param value hex string (i.e. E0E040BF)
+	 * @return true if value can be parsed by parseHex(), false otherwise
+	 * */
+	public static boolean isHex(CharSequence value)
+	{
+		if (value==null || value.length()==0 || value.length()>MAX_HEX_DIGITS)
+			return false;
+
+		for(int i=0;i<value.length();i++)
+			if (digit(value.charAt(i))<0)
+				return false;
+
+		return true;
+	}
+
+
+	/**
+	 * Parse hex string as unsigned 64-bit code
+	 * @param value hex string (i.e. E0E040BF)
+	 * @return code (i.e. 3772793023)
+	 * @throws NumberFormatException if value is not a hex code of 1 to 16 digits
+	 * */
+	public static long parseHex(CharSequence value)
+	{
+		if (value==null || value.length()==0 || value.length()>MAX_HEX_DIGITS)
+			throw new NumberFormatException("Invalid hex code: "+value);
+
+		long code=0;
+
+		for(int i=0;i<value.length();i++) {
+			int digit=digit(value.charAt(i));
+			if (digit<0)
+				throw new NumberFormatException("Invalid hex code: "+value);
+			code=(code<<4) | digit;
+		}
+
+		return code;
+	}
+
+
+	/**
+	 * Convert unsigned 64-bit code to hex string, without leading zeros
+	 * @param code code (i.e. 3772793023)
+	 * @return uppercase hex string (i.e. E0E040BF)
+	 * */
+	public static String toHex(long code)
+	{
+		return appendHex(new StringBuilder(MAX_HEX_DIGITS), code).toString();
+	}
+
+
+	/**
+	 * Append unsigned 64-bit code as uppercase hex digits, without leading zeros
+	 * @param buffer output buffer
+	 * @param code code to write
+	 * @return buffer
+	 * */
+	public static StringBuilder appendHex(StringBuilder buffer, long code)
+	{
+		int digits=Math.max(1, (67-Long.numberOfLeadingZeros(code))/4);
+		int pos=buffer.length()+digits;
+		buffer.setLength(pos);
+
+		for(int i=0;i<digits;i++) {
+			buffer.setCharAt(--pos, HEX_DIGITS[(int)(code & 0xF)]);
+			code>>>=4;
+		}
+
+		return buffer;
+	}
+
+
+	/**
+	 * Append unsigned 64-bit code as decimal digits
+	 * @param buffer output buffer (i.e. command buffer)
+	 * @param code code to write (i.e. 0xE0E040BFL)
+	 * @return buffer
+	 * */
+	public static StringBuilder appendUnsignedDecimal(StringBuilder buffer, long code)
+	{
+		int pos=buffer.length()+unsignedDecimalLength(code);
+		buffer.setLength(pos);
+
+		if (code<0) {
+			// unsigned division by 10 for codes greater than Long.MAX_VALUE
+			long quotient=(code>>>1)/5;
+			buffer.setCharAt(--pos, (char)('0'+(int)(code-quotient*10)));
+			code=quotient;
+		}
+
+		while(code>=100) {
+			long quotient=code/100;
+			int pair=(int)(code-quotient*100);
+			code=quotient;
+			buffer.setCharAt(--pos, DIGIT_ONES[pair]);
+			buffer.setCharAt(--pos, DIGIT_TENS[pair]);
+		}
+
+		buffer.setCharAt(--pos, DIGIT_ONES[(int)code]);
+		if (code>=10)
+			buffer.setCharAt(--pos, DIGIT_TENS[(int)code]);
+
+		return buffer;
+	}
+
+
+	/**
+	 * Put unsigned 64-bit code as ASCII decimal digits
+	 * @param buffer output buffer (i.e. command buffer), position is moved after digits
+	 * @param code code to write (i.e. 0xE0E040BFL)
+	 * @return buffer
+	 * */
+	public static ByteBuffer putUnsignedDecimal(ByteBuffer buffer, long code)
+	{
+		int start=buffer.position();
+		int pos=start+unsignedDecimalLength(code);
+		buffer.position(pos);
+
+		if (code<0) {
+			long quotient=(code>>>1)/5;
+			buffer.put(--pos, (byte)('0'+(int)(code-quotient*10)));
+			code=quotient;
+		}
+
+		while(code>=100) {
+			long quotient=code/100;
+			int pair=(int)(code-quotient*100);
+			code=quotient;
+			buffer.put(--pos, (byte)DIGIT_ONES[pair]);
+			buffer.put(--pos, (byte)DIGIT_TENS[pair]);
+		}
+
+		buffer.put(--pos, (byte)DIGIT_ONES[(int)code]);
+		if (code>=10)
+			buffer.put(--pos, (byte)DIGIT_TENS[(int)code]);
+
+		return buffer;
+	}
+
+
+	/**
+	 * @param code unsigned 64-bit code
+	 * @return decimal digits number
+	 * */
+	public static int unsignedDecimalLength(long code)
+	{
+		if (code<0)
+			return 1+unsignedDecimalLength((code>>>1)/5);
+
+		int digits=1;
+		long limit=10;
+
+		while(digits<19 && code>=limit) {
+			digits++;
+			limit*=10;
+		}
+
+		return digits;
+	}
+
+}
@@ -16,9 +16,10 @@
 
 package org.jirduino.helpers;
 
-import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.jirduino.core.Signal;
 import org.jirduino.config.ConfigController;
 import org.jirduino.translators.SignalRule;
 import org.jirduino.translators.SignalRuleTable;
@@ -33,10 +34,12 @@ import com.google.gson.JsonParser;
 public class JIRduinoHelper {
 	
 	/**
-	 * Convert HEX String to decimal long integer
+	 * Convert HEX String to decimal long integer. Values greater than
+	 * Long.MAX_VALUE (16 hex digits) are returned as unsigned.
+	 * @see HexCodec
 	 * */
 	public static long hex2decimal(String s) {
-		return Long.parseLong(new BigInteger(s, 16).toString());
+		return HexCodec.parseHex(s);
     }
 	
 	
@@ -119,16 +122,37 @@ public class JIRduinoHelper {
 	public static SignalRuleTable makeRuleTable(ConfigController source, ConfigController target, int delaySend) {
 		SignalRuleTable ruleTable=new SignalRuleTable();
 		List<String> targetKeys=target.getAvailableKeys();
+		List<SignalRule> rules=new ArrayList<SignalRule>(targetKeys.size());
 		
 		for(String key: targetKeys) {
 			if (source.hasKey(key)) {
-				ruleTable.addRule(new SignalRule(source.getKeyPress(key), target.getKeyPress(key), delaySend, true));				
+				// held and released keys are translated to target key down and release
+				Signal outHold=isKeyDefined(target.getKeyDown(key)) ? target.getKeyDown(key) : Signal.getEmptySignal();
+				Signal outRelease=isKeyDefined(target.getKeyRelease(key)) ? target.getKeyRelease(key) : Signal.getEmptySignal();
+				
+				// source key down frames are repeats of held key only, as keys may share them
+				Signal inHold=isKeyDefined(source.getKeyDown(key)) && !source.getKeyDown(key).isEquals(source.getKeyPress(key)) 
+						? source.getKeyDown(key) : Signal.getEmptySignal();
+				
+				rules.add(new SignalRule(source.getKeyPress(key), target.getKeyPress(key), 
+						delaySend, true, null, outHold, outRelease, inHold));
 			}
 		}
 		
+		ruleTable.addRules(rules);
+		
 		return ruleTable;
 		
 	}
 	
 	
+	/**
+	 * Return true if a key command is defined (not empty, not "0")
+	 * @param key key signal from a config controller
+	 * */
+	public static boolean isKeyDefined(Signal key) {
+		return key!=null && !key.isEmpty() && !(key.hasCode() && key.getCode()==0);
+	}
+	
+	
 }
@@ -0,0 +1,194 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.helpers;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+import org.jirduino.settings.IRDeviceDefaultSettings;
+
+
+/**
+ * Creates JIRduino threads (converters, device readers, dispatchers, timers).
+ * When virtual threads are enabled and the JVM supports them (Java 21 or
+ * later), threads are virtual, so hundreds of converters and devices can run
+ * on a few carrier threads; otherwise they are platform threads. Virtual
+ * threads are looked up by reflection, so JIRduino still runs on older JVMs.
+ *
+ * Switch is read when threads are created: enable it before starting devices
+ * and converters (i.e. -Djirduino.virtualThreads=true or
+ * setVirtualThreadsEnabled(true)). Virtual threads are always daemon threads.
+ *
+ * @author Emanuele Paiano
+ * */
+public class JIRduinoThreads {
+
+	/**
+	 * Thread.ofVirtual(), Thread.Builder.name(String), Thread.Builder.factory(),
+	 * null if virtual threads are not supported
+	 * */
+	private static final Method OF_VIRTUAL;
+
+	private static final Method BUILDER_NAME;
+
+	private static final Method BUILDER_FACTORY;
+
+	private static volatile boolean virtualThreadsEnabled=IRDeviceDefaultSettings.VIRTUAL_THREADS;
+
+	static {
+		Method ofVirtual=null;
+		Method name=null;
+		Method factory=null;
+
+		try {
+			ofVirtual=Thread.class.getMethod("ofVirtual");
+			Class<?> builder=Class.forName("java.lang.Thread$Builder");
+			name=builder.getMethod("name", String.class);
+			factory=builder.getMethod("factory");
+
+			// preview API on Java 19 and 20: it fails without --enable-preview
+			ofVirtual.invoke(null);
+		} catch (Exception e) {
+			ofVirtual=null;
+		}
+
+		OF_VIRTUAL=ofVirtual;
+		BUILDER_NAME=name;
+		BUILDER_FACTORY=factory;
+	}
+
+
+	private JIRduinoThreads()
+	{
+	}
+
+
+	/**
+	 * @return true if JVM supports virtual threads
+	 * */
+	public static boolean isVirtualThreadsAvailable() {
+		return OF_VIRTUAL!=null;
+	}
+
+	/**
+	 * @return true if new threads will be virtual
+	 * */
+	public static boolean isVirtualThreadsEnabled() {
+		return virtualThreadsEnabled && OF_VIRTUAL!=null;
+	}
+
+	/**
+	 * Enable or disable virtual threads for threads created from now on.
+	 * If JVM doesn't support them, platform threads are still used.
+	 * @param enabled true for virtual threads, false for platform threads
+	 * @return true if new threads will be virtual
+	 * */
+	public static boolean setVirtualThreadsEnabled(boolean enabled) {
+		virtualThreadsEnabled=enabled;
+		return isVirtualThreadsEnabled();
+	}
+
+
+	/**
+	 * Create a thread factory
+	 * @param name threads name
+	 * @return ThreadFactory creating virtual threads if enabled, daemon platform threads otherwise
+	 * */
+	public static ThreadFactory newThreadFactory(final String name)
+	{
+		ThreadFactory virtual=virtualThreadFactory(name);
+
+		if (virtual!=null)
+			return virtual;
+
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t=new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+
+	/**
+	 * Create a thread, not started
+	 * @param name thread name
+	 * @param task thread task
+	 * @param daemon true for a daemon platform thread, ignored for virtual threads
+	 * @return virtual thread if enabled, platform thread otherwise
+	 * */
+	public static Thread newThread(String name, Runnable task, boolean daemon)
+	{
+		ThreadFactory virtual=virtualThreadFactory(name);
+
+		if (virtual!=null)
+			return virtual.newThread(task);
+
+		Thread t=new Thread(task, name);
+		t.setDaemon(daemon);
+		return t;
+	}
+
+
+	/**
+	 * Create and start a daemon thread
+	 * @param name thread name
+	 * @param task thread task
+	 * @return started thread, virtual if enabled
+	 * */
+	public static Thread start(String name, Runnable task)
+	{
+		Thread t=newThread(name, task, true);
+		t.start();
+		return t;
+	}
+
+
+	/**
+	 * Create a single thread scheduler. Delayed tasks wait in scheduler
+	 * queue, not on their own thread.
+	 * @param name scheduler thread name
+	 * @return ScheduledExecutorService object
+	 * */
+	public static ScheduledExecutorService newScheduler(String name)
+	{
+		return Executors.newSingleThreadScheduledExecutor(newThreadFactory(name));
+	}
+
+
+	/**
+	 * virtual thread factory, null if virtual threads are disabled or unsupported
+	 * */
+	private static ThreadFactory virtualThreadFactory(String name)
+	{
+		if (!isVirtualThreadsEnabled())
+			return null;
+
+		try {
+			Object builder=BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+			return (ThreadFactory)BUILDER_FACTORY.invoke(builder);
+		} catch (Exception e) {
+			LogEvent.logger.warning("Virtual threads not available: "+e);
+			return null;
+		}
+	}
+
+}
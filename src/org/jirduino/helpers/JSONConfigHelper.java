@@ -158,7 +158,7 @@ public static Signal parseJSONSignal(JSONObject signal) {
 			
 			
 			String value=(String) signal.get("value");
-			return new Signal(id, value, cmdLength);
+			return Signal.valueOf(id, value, cmdLength);
 		}
 		
 		return Signal.getEmptySignal();
@@ -174,8 +174,16 @@ public static Signal parseJSONSignal(JSONObject signal) {
 			Signal signalOut=parseJSONSignal((JSONObject)rule.get("signal_out"));
 			long delay=(Long)rule.get("delay");
 			boolean enabled=(boolean)rule.get("enabled");
+			String zone=(String)rule.get("zone");
 			
-			return new SignalRule(signalIn, signalOut, delay, enabled);
+			Signal signalHold=rule.containsKey("signal_hold") ? 
+					parseJSONSignal((JSONObject)rule.get("signal_hold")) : Signal.getEmptySignal();
+			Signal signalRelease=rule.containsKey("signal_release") ? 
+					parseJSONSignal((JSONObject)rule.get("signal_release")) : Signal.getEmptySignal();
+			Signal signalInHold=rule.containsKey("signal_in_hold") ? 
+					parseJSONSignal((JSONObject)rule.get("signal_in_hold")) : Signal.getEmptySignal();
+			
+			return new SignalRule(signalIn, signalOut, delay, enabled, zone, signalHold, signalRelease, signalInHold);
 		}
 		
 		return SignalRule.getEmptySignalRule();
@@ -0,0 +1,200 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.helpers;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Latency histogram with bounded relative error, in the style of
+ * HdrHistogram: values up to 256 are counted exactly, bigger values in
+ * buckets 1/128 of their magnitude wide (less than 0.8% error), so a
+ * fixed array of counters covers any long value.
+ *
+ * Recording doesn't allocate or lock, so it can be done by several
+ * threads on a hot path.
+ *
+ * @author Emanuele Paiano
+ * */
+public class LatencyHistogram {
+
+	/**
+	 * sub-buckets for each magnitude (power of two), as bits
+	 * */
+	private static final int SUB_BITS=7;
+
+	private static final int SUB_COUNT=1<<SUB_BITS;
+
+	private final AtomicLongArray counts=new AtomicLongArray((64-SUB_BITS)*SUB_COUNT);
+
+	private final AtomicLong count=new AtomicLong();
+
+	private final AtomicLong total=new AtomicLong();
+
+	private final AtomicLong max=new AtomicLong();
+
+
+	/**
+	 * Record a value
+	 * @param value value to record (i.e. nanos), negative values are recorded as 0
+	 * */
+	public void record(long value)
+	{
+		if (value<0)
+			value=0;
+
+		counts.incrementAndGet(indexOf(value));
+		count.incrementAndGet();
+		total.addAndGet(value);
+
+		long current;
+		while(value>(current=max.get()) && !max.compareAndSet(current, value));
+	}
+
+
+	/**
+	 * Add all values recorded by another histogram
+	 * @param other histogram to add
+	 * */
+	public void add(LatencyHistogram other)
+	{
+		for(int i=0;i<counts.length();i++) {
+			long c=other.counts.get(i);
+			if (c>0)
+				counts.addAndGet(i, c);
+		}
+
+		count.addAndGet(other.count.get());
+		total.addAndGet(other.total.get());
+
+		long value=other.max.get();
+		long current;
+		while(value>(current=max.get()) && !max.compareAndSet(current, value));
+	}
+
+
+	/**
+	 * Discard recorded values
+	 * */
+	public void reset()
+	{
+		for(int i=0;i<counts.length();i++)
+			counts.set(i, 0);
+
+		count.set(0);
+		total.set(0);
+		max.set(0);
+	}
+
+
+	/**
+	 * @return recorded values number
+	 * */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return max recorded value, 0 if empty
+	 * */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return mean of recorded values, 0 if empty
+	 * */
+	public double getMean() {
+		long n=count.get();
+		return n==0 ? 0 : (double)total.get()/n;
+	}
+
+
+	/**
+	 * Get value at percentile: percentile of recorded values are lower
+	 * than or equal to it (within histogram precision).
+	 * @param percentile percentile, from 0 to 100 (i.e. 99.9)
+	 * @return value, 0 if empty
+	 * */
+	public long getValueAtPercentile(double percentile)
+	{
+		long n=count.get();
+
+		if (n==0)
+			return 0;
+
+		long rank=Math.max(1, (long)Math.ceil(Math.min(percentile, 100)/100*n));
+		long seen=0;
+
+		for(int i=0;i<counts.length();i++) {
+			seen+=counts.get(i);
+
+			if (seen>=rank)
+				return Math.min(highestValueOf(i), max.get());
+		}
+
+		return max.get();
+	}
+
+
+	/**
+	 * @param scale unit divider (i.e. 1000 to print nanos as micros)
+	 * @return count, mean, p50, p99, p99.9 and max, divided by scale
+	 * */
+	public String toString(double scale)
+	{
+		return String.format("count=%d mean=%.1f p50=%.1f p99=%.1f p999=%.1f max=%.1f",
+				getCount(), getMean()/scale, getValueAtPercentile(50)/scale, getValueAtPercentile(99)/scale,
+				getValueAtPercentile(99.9)/scale, getMax()/scale);
+	}
+
+	@Override
+	public String toString() {
+		return toString(1);
+	}
+
+
+	/**
+	 * bucket of value: value itself up to 2*SUB_COUNT, then SUB_COUNT buckets for each magnitude
+	 * */
+	private static int indexOf(long value)
+	{
+		int shift=63-Long.numberOfLeadingZeros(value|1)-SUB_BITS;
+
+		if (shift<=0)
+			return (int)value;
+
+		return shift*SUB_COUNT+(int)(value>>>shift);
+	}
+
+
+	/**
+	 * highest value counted by bucket
+	 * */
+	private static long highestValueOf(int index)
+	{
+		if (index<2*SUB_COUNT)
+			return index;
+
+		int shift=index/SUB_COUNT-1;
+		long sub=index-shift*SUB_COUNT;
+
+		return ((sub+1)<<shift)-1;
+	}
+
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.LatencyHistogram;
+import org.jirduino.translators.SignalConverter;
+import org.jirduino.translators.SignalConverterListener;
+import org.jirduino.translators.SignalRule;
+
+
+/**
+ * SignalConverter metrics: received, matched, unmatched, sent and failed
+ * signals, resolve time (received - rule found) and dispatch time (received -
+ * translated signal sent by IR device, including guard time, rule delay and
+ * Arduino response). Counters are lock-free, updated as converter listener.
+ *
+ * Example:
+ *
+ * <pre>
+ *     ConverterMetrics metrics=new ConverterMetrics(converter);
+ *     MetricsRegistry.getShared().register("converter", metrics);
+ * </pre>
+ *
+ * @author Emanuele Paiano
+ * */
+public class ConverterMetrics implements ConverterMetricsMBean, SignalConverterListener {
+
+	private final SignalConverter converter;
+
+	private final LongAdder received=new LongAdder();
+
+	private final LongAdder matched=new LongAdder();
+
+	private final LongAdder sent=new LongAdder();
+
+	private final LongAdder failed=new LongAdder();
+
+	private final LatencyHistogram resolveTime=new LatencyHistogram();
+
+	private final LatencyHistogram dispatchTime=new LatencyHistogram();
+
+
+	/**
+	 * Constructor. Metrics are added to converter listeners.
+	 * @param converter measured converter
+	 * */
+	public ConverterMetrics(SignalConverter converter)
+	{
+		this.converter=converter;
+		converter.addListener(this);
+	}
+
+
+	/**
+	 * Stop measuring converter
+	 * */
+	public void detach()
+	{
+		converter.removeListener(this);
+	}
+
+
+	@Override
+	public void onResolved(Signal in, SignalRule rule, long receivedNanos, long resolvedNanos) {
+		received.increment();
+
+		if (rule!=null)
+			matched.increment();
+
+		resolveTime.record(resolvedNanos-receivedNanos);
+	}
+
+	@Override
+	public void onSent(Signal out, boolean success, long receivedNanos, long sentNanos) {
+		if (!success) {
+			failed.increment();
+			return;
+		}
+
+		sent.increment();
+		dispatchTime.record(sentNanos-receivedNanos);
+	}
+
+
+	@Override
+	public long getReceived() {
+		return received.sum();
+	}
+
+	@Override
+	public long getMatched() {
+		return matched.sum();
+	}
+
+	@Override
+	public long getUnmatched() {
+		return received.sum()-matched.sum();
+	}
+
+	@Override
+	public long getSent() {
+		return sent.sum();
+	}
+
+	@Override
+	public long getFailed() {
+		return failed.sum();
+	}
+
+	@Override
+	public int getPendingSends() {
+		return converter.getPendingSends();
+	}
+
+	@Override
+	public double getResolveTimeP50() {
+		return resolveTime.getValueAtPercentile(50)/1000.0;
+	}
+
+	@Override
+	public double getResolveTimeP99() {
+		return resolveTime.getValueAtPercentile(99)/1000.0;
+	}
+
+	@Override
+	public double getResolveTimeMax() {
+		return resolveTime.getMax()/1000.0;
+	}
+
+	@Override
+	public double getDispatchTimeP50() {
+		return dispatchTime.getValueAtPercentile(50)/1000.0;
+	}
+
+	@Override
+	public double getDispatchTimeP99() {
+		return dispatchTime.getValueAtPercentile(99)/1000.0;
+	}
+
+	@Override
+	public double getDispatchTimeP999() {
+		return dispatchTime.getValueAtPercentile(99.9)/1000.0;
+	}
+
+	@Override
+	public double getDispatchTimeMax() {
+		return dispatchTime.getMax()/1000.0;
+	}
+
+	/**
+	 * @return resolve time histogram (in nanos)
+	 * */
+	public LatencyHistogram getResolveTime() {
+		return resolveTime;
+	}
+
+	/**
+	 * @return dispatch time histogram (in nanos)
+	 * */
+	public LatencyHistogram getDispatchTime() {
+		return dispatchTime;
+	}
+
+	@Override
+	public void resetCounters() {
+		received.reset();
+		matched.reset();
+		sent.reset();
+		failed.reset();
+		resolveTime.reset();
+		dispatchTime.reset();
+	}
+
+}
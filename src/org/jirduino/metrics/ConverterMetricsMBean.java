@@ -0,0 +1,74 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.metrics;
+
+/**
+ * JMX view of ConverterMetrics. Times are in micros.
+ * @author Emanuele Paiano
+ * */
+public interface ConverterMetricsMBean {
+
+	/**
+	 * @return received signals
+	 * */
+	public long getReceived();
+
+	/**
+	 * @return received signals matching a rule
+	 * */
+	public long getMatched();
+
+	/**
+	 * @return received signals not matching any rule
+	 * */
+	public long getUnmatched();
+
+	/**
+	 * @return translated signals sent by IR device
+	 * */
+	public long getSent();
+
+	/**
+	 * @return translated signals IR device failed to send (i.e. no Arduino response)
+	 * */
+	public long getFailed();
+
+	/**
+	 * @return translated signals scheduled and not yet sent
+	 * */
+	public int getPendingSends();
+
+	public double getResolveTimeP50();
+
+	public double getResolveTimeP99();
+
+	public double getResolveTimeMax();
+
+	public double getDispatchTimeP50();
+
+	public double getDispatchTimeP99();
+
+	public double getDispatchTimeP999();
+
+	public double getDispatchTimeMax();
+
+	/**
+	 * Set counters to 0 and clear histograms
+	 * */
+	public void resetCounters();
+
+}
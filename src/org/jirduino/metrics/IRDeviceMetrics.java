@@ -0,0 +1,168 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.jirduino.drivers.IRLib2CommandChannel;
+import org.jirduino.drivers.IRLib2Device;
+import org.jirduino.helpers.LatencyHistogram;
+
+
+/**
+ * IRLib2Device metrics: commands, failures, received frames and command
+ * round-trip time (command sent - response received). Counters are
+ * lock-free, so they are updated on device hot paths.
+ *
+ * @see IRLib2Device#getMetrics()
+ * @author Emanuele Paiano
+ * */
+public class IRDeviceMetrics implements IRDeviceMetricsMBean {
+
+	private final IRLib2Device device;
+
+	private final LongAdder commands=new LongAdder();
+
+	private final LongAdder failedCommands=new LongAdder();
+
+	private final LongAdder timedOutCommands=new LongAdder();
+
+	private final LongAdder framesReceived=new LongAdder();
+
+	private final LatencyHistogram commandTime=new LatencyHistogram();
+
+
+	/**
+	 * Constructor.
+	 * @param device measured device
+	 * */
+	public IRDeviceMetrics(IRLib2Device device)
+	{
+		this.device=device;
+	}
+
+
+	/**
+	 * A command got its response
+	 * @param ok true if response is "250 OK"
+	 * @param nanos round-trip time
+	 * */
+	public void commandCompleted(boolean ok, long nanos)
+	{
+		commands.increment();
+		commandTime.record(nanos);
+
+		if (!ok)
+			failedCommands.increment();
+	}
+
+	/**
+	 * A command can't be sent
+	 * */
+	public void commandFailed()
+	{
+		commands.increment();
+		failedCommands.increment();
+	}
+
+	/**
+	 * A command got no response within timeout
+	 * */
+	public void commandTimedOut()
+	{
+		commands.increment();
+		failedCommands.increment();
+		timedOutCommands.increment();
+	}
+
+	/**
+	 * An IR frame has been received
+	 * */
+	public void frameReceived()
+	{
+		framesReceived.increment();
+	}
+
+
+	@Override
+	public long getCommands() {
+		return commands.sum();
+	}
+
+	@Override
+	public long getFailedCommands() {
+		return failedCommands.sum();
+	}
+
+	@Override
+	public long getTimedOutCommands() {
+		return timedOutCommands.sum();
+	}
+
+	@Override
+	public long getFramesReceived() {
+		return framesReceived.sum();
+	}
+
+	@Override
+	public int getPendingCommands() {
+		IRLib2CommandChannel channel=device.getCommandChannel();
+		return channel==null ? 0 : channel.pendingCommands();
+	}
+
+	@Override
+	public double getCommandTimeMean() {
+		return commandTime.getMean()/1000;
+	}
+
+	@Override
+	public double getCommandTimeP50() {
+		return commandTime.getValueAtPercentile(50)/1000.0;
+	}
+
+	@Override
+	public double getCommandTimeP99() {
+		return commandTime.getValueAtPercentile(99)/1000.0;
+	}
+
+	@Override
+	public double getCommandTimeP999() {
+		return commandTime.getValueAtPercentile(99.9)/1000.0;
+	}
+
+	@Override
+	public double getCommandTimeMax() {
+		return commandTime.getMax()/1000.0;
+	}
+
+	/**
+	 * @return command round-trip time histogram (in nanos)
+	 * */
+	public LatencyHistogram getCommandTime() {
+		return commandTime;
+	}
+
+	@Override
+	public void resetCounters() {
+		commands.reset();
+		failedCommands.reset();
+		timedOutCommands.reset();
+		framesReceived.reset();
+		commandTime.reset();
+	}
+
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.metrics;
+
+/**
+ * JMX view of IRDeviceMetrics. Times are in micros.
+ * @author Emanuele Paiano
+ * */
+public interface IRDeviceMetricsMBean {
+
+	/**
+	 * @return commands run (completed, failed or timed out)
+	 * */
+	public long getCommands();
+
+	/**
+	 * @return commands not sent or without "250 OK" response
+	 * */
+	public long getFailedCommands();
+
+	/**
+	 * @return commands without response within timeout (command channel only)
+	 * */
+	public long getTimedOutCommands();
+
+	/**
+	 * @return received IR frames
+	 * */
+	public long getFramesReceived();
+
+	/**
+	 * @return commands waiting for response or for a free slot in command channel
+	 * */
+	public int getPendingCommands();
+
+	public double getCommandTimeMean();
+
+	public double getCommandTimeP50();
+
+	public double getCommandTimeP99();
+
+	public double getCommandTimeP999();
+
+	public double getCommandTimeMax();
+
+	/**
+	 * Set counters to 0 and clear command time histogram
+	 * */
+	public void resetCounters();
+
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.jirduino.helpers.LogEvent;
+
+
+/**
+ * Metrics registry. Registered metrics (standard MBeans, i.e. 
+ * ConverterMetrics, IRDeviceMetrics or MeteredLinkDevice) are exposed by
+ * JMX as org.jirduino:type=&lt;class&gt;,name=&lt;name&gt;, and can be read
+ * without JMX clients by snapshot().
+ *
+ * Example:
+ *
+ * <pre>
+ *     MetricsRegistry metrics=MetricsRegistry.getShared();
+ *     metrics.register("ttyACM0", ir.getMetrics());
+ *     metrics.register("converter", new ConverterMetrics(converter));
+ *     ...
+ *     System.out.println(metrics.snapshot());
+ * </pre>
+ *
+ * @author Emanuele Paiano
+ * */
+public class MetricsRegistry {
+
+	/**
+	 * JMX domain of registered metrics
+	 * */
+	public static final String DOMAIN="org.jirduino";
+
+	/**
+	 * registry on platform MBean server, created on first use
+	 * */
+	private static MetricsRegistry shared;
+
+	private final MBeanServer server;
+
+	/**
+	 * registered metrics names, in registration order
+	 * */
+	private final Map<String, ObjectName> names=new LinkedHashMap<String, ObjectName>();
+
+
+	/**
+	 * Constructor. Metrics are registered on platform MBean server.
+	 * */
+	public MetricsRegistry()
+	{
+		this(ManagementFactory.getPlatformMBeanServer());
+	}
+
+	/**
+	 * Constructor.
+	 * @param server MBean server where metrics are registered
+	 * */
+	public MetricsRegistry(MBeanServer server)
+	{
+		this.server=server;
+	}
+
+
+	/**
+	 * @return registry on platform MBean server
+	 * */
+	public static synchronized MetricsRegistry getShared()
+	{
+		if (shared==null)
+			shared=new MetricsRegistry();
+
+		return shared;
+	}
+
+
+	/**
+	 * Register metrics
+	 * @param name metrics name (i.e. port or converter name)
+	 * @param metrics standard MBean (class X implementing interface XMBean)
+	 * @return true if success, false if name is already registered or metrics is not a MBean
+	 * */
+	public synchronized boolean register(String name, Object metrics)
+	{
+		if (names.containsKey(name))
+			return false;
+
+		try {
+			ObjectName objectName=new ObjectName(DOMAIN+":type="+metrics.getClass().getSimpleName()
+					+",name="+ObjectName.quote(name));
+			server.registerMBean(metrics, objectName);
+			names.put(name, objectName);
+			return true;
+		} catch (JMException e) {
+			LogEvent.logger.warning("Can't register metrics "+name+": "+e.getMessage());
+			return false;
+		}
+	}
+
+
+	/**
+	 * Unregister metrics
+	 * @param name metrics name
+	 * @return true if success, false if name is not registered
+	 * */
+	public synchronized boolean unregister(String name)
+	{
+		ObjectName objectName=names.remove(name);
+
+		if (objectName==null)
+			return false;
+
+		try {
+			server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			// already unregistered by someone else
+		}
+
+		return true;
+	}
+
+
+	/**
+	 * Unregister all metrics
+	 * */
+	public synchronized void close()
+	{
+		for(String name: new ArrayList<String>(names.keySet()))
+			unregister(name);
+	}
+
+
+	/**
+	 * @return registered metrics names
+	 * */
+	public synchronized List<String> getNames()
+	{
+		return new ArrayList<String>(names.keySet());
+	}
+
+
+	/**
+	 * Read current values of all registered metrics
+	 * @return attribute values for each metrics name (new maps)
+	 * */
+	public synchronized Map<String, Map<String, Object>> snapshot()
+	{
+		Map<String, Map<String, Object>> values=new LinkedHashMap<String, Map<String, Object>>();
+
+		for(String name: names.keySet())
+			values.put(name, snapshot(name));
+
+		return values;
+	}
+
+
+	/**
+	 * Read current values of registered metrics
+	 * @param name metrics name
+	 * @return attribute values (new map), null if name is not registered
+	 * */
+	public synchronized Map<String, Object> snapshot(String name)
+	{
+		ObjectName objectName=names.get(name);
+
+		if (objectName==null)
+			return null;
+
+		Map<String, Object> values=new LinkedHashMap<String, Object>();
+
+		try {
+			MBeanAttributeInfo[] attributes=server.getMBeanInfo(objectName).getAttributes();
+			String[] attributeNames=new String[attributes.length];
+
+			for(int i=0;i<attributes.length;i++)
+				attributeNames[i]=attributes[i].getName();
+
+			for(Attribute attribute: server.getAttributes(objectName, attributeNames).asList())
+				values.put(attribute.getName(), attribute.getValue());
+		} catch (JMException e) {
+			LogEvent.logger.warning("Can't read metrics "+name+": "+e.getMessage());
+		}
+
+		return values;
+	}
+
+}
@@ -27,5 +27,35 @@ public interface ConverterDefaultSettings {
 	 * Extension for config file
 	 * */
 	public static String JSON_SUFFIX="json";
+	
+	/**
+	 * Pause (in millis) between received signal and translated signal sending
+	 * */
+	public static long SEND_GUARD_TIME=300;
+	
+	/**
+	 * Max translated signals waiting on each RoutingSignalConverter 
+	 * transmitter (scheduled or being sent), next ones are dropped
+	 * */
+	public static int MAX_PENDING_SENDS=1024;
+	
+	/**
+	 * Max pause (in millis) between frames of a held key, 0 to translate each 
+	 * frame (default). When set, use a value longer than repeat period plus 
+	 * receiver pause after a sent signal (IRDeviceDefaultSettings.RECEIVER_RESUME_DELAY), 
+	 * as repeats are lost meanwhile (i.e. 300)
+	 * */
+	public static long REPEAT_WINDOW=0;
+	
+	/**
+	 * Max pause (in millis) between identical full frames of a held key (i.e. 
+	 * Sony, RC5 repeats): identical frames received later are a new key press
+	 * */
+	public static long REPEAT_PERIOD=150;
+	
+	/**
+	 * Code received for repeat frames (i.e. NEC repeat, IRLib2 REPEAT_CODE)
+	 * */
+	public static long REPEAT_CODE=0xFFFFFFFFL;
 
 }
@@ -22,4 +22,95 @@ package org.jirduino.settings;
  * */
 public interface IRDeviceDefaultSettings {
 	
+	/**
+	 * Max waiting time (in millis) for a command response
+	 * */
+	public static long COMMAND_TIMEOUT=1000;
+	
+	/**
+	 * Max commands sent to Arduino and waiting for response. 
+	 * Keep it low: Arduino serial input buffer is 64 bytes
+	 * */
+	public static int MAX_PENDING_COMMANDS=4;
+	
+	/**
+	 * Max received lines kept while nobody is receiving
+	 * */
+	public static int RECEIVED_QUEUE_SIZE=64;
+	
+	/**
+	 * Waiting time (in millis) between receiving mode checks
+	 * */
+	public static long LINE_POLL_TIME=200;
+	
+	/**
+	 * Pause (in millis) after last sent signal before enabling receiver again:
+	 * signals sent meanwhile don't need to disable it
+	 * */
+	public static long RECEIVER_RESUME_DELAY=100;
+	
+	/**
+	 * Pause (in millis) between IRDevicePool health checks
+	 * */
+	public static long HEALTH_CHECK_PERIOD=5000;
+	
+	/**
+	 * Simulated link speed (bits per second) of IRLib2Simulator
+	 * */
+	public static int SIMULATOR_BAUDRATE=9600;
+	
+	/**
+	 * Simulated link latency (in micros) of IRLib2Simulator
+	 * */
+	public static long SIMULATOR_LATENCY=2000;
+	
+	/**
+	 * Max random delay (in micros) added to IRLib2Simulator latency
+	 * */
+	public static long SIMULATOR_JITTER=1000;
+	
+	/**
+	 * Pause (in millis) between signals received by simulated Arduino in irduino tools
+	 * */
+	public static long SIMULATOR_EVENT_PERIOD=1000;
+	
+	/**
+	 * Bytes of capture file mapped at a time by IRCaptureWriter
+	 * */
+	public static int CAPTURE_MAP_SIZE=1<<20;
+	
+	/**
+	 * Frames held by IRFrameBus ring, for subscribers lagging behind
+	 * */
+	public static int FRAME_BUS_SIZE=1024;
+	
+	/**
+	 * If true, JIRduino threads are virtual threads when JVM supports them
+	 * (i.e. -Djirduino.virtualThreads=true)
+	 * @see org.jirduino.helpers.JIRduinoThreads
+	 * */
+	public static boolean VIRTUAL_THREADS=Boolean.getBoolean("jirduino.virtualThreads");
+	
+	/**
+	 * Max signals in flight on each IRTransmitterPool device
+	 * */
+	public static int TRANSMITTER_MAX_IN_FLIGHT=MAX_PENDING_COMMANDS;
+	
+	/**
+	 * Consecutive failed sends marking an IRTransmitterPool device as unhealthy
+	 * */
+	public static int TRANSMITTER_MAX_FAILURES=3;
+	
+	/**
+	 * Pause (in millis) before an unhealthy IRTransmitterPool device is tried again
+	 * */
+	public static long TRANSMITTER_RETRY_TIME=5000;
+	
+	/**
+	 * If true, an IRTransmitterPool signal failing after being written (i.e. timeout)
+	 * is sent again once on another device. Off by default, as failed device may 
+	 * have already emitted it, and toggle commands (i.e. power) would be sent twice
+	 * */
+	public static boolean TRANSMITTER_RETRY_FAILED_SENDS=false;
+	
 }
@@ -2,12 +2,13 @@ package org.jirduino.tools;
 import org.jirduino.core.Signal;
 import org.jirduino.drivers.IRDevice;
 import org.jirduino.drivers.IRLib2Device;
-import org.serialduino.drivers.ComLinkDevice;
+import org.jirduino.drivers.IRLib2Simulator;
+import org.serialduino.drivers.LinkDevice;
 
 public class IRSenderTools {
 	public static void runSender(String[] args) {
 		if (args.length>4) {
-			ComLinkDevice port=new ComLinkDevice(ComLinkDevice.getPortByName(args[1]), ComLinkDevice.BAUDRATE_9600);
+			LinkDevice port=IRduinoTools.getLinkDevice(args[1]);
 		
 			IRDevice ir=new IRLib2Device(port);
 		
@@ -27,7 +28,7 @@ public class IRSenderTools {
 		System.out.println("");
 		System.out.println("- value, integer in hex format for command value (i.e. E13650AF).");
 		System.out.println("");
-		System.out.println("- port, arduino-connected serial port (i.e. /dev/ttyUSB0)");
+		System.out.println("- port, arduino-connected serial port (i.e. /dev/ttyUSB0) or \""+IRLib2Simulator.PORT_NAME+"\"");
 		System.out.println("");
 	}
 	
@@ -15,20 +15,27 @@
  * */
 
 package org.jirduino.tools;
+import java.io.IOException;
+
+import org.jirduino.core.Signal;
+import org.jirduino.drivers.IRCaptureWriter;
 import org.jirduino.drivers.IRLib2Device;
-import org.serialduino.drivers.ComLinkDevice;
+import org.serialduino.drivers.LinkDevice;
 
 
 /**
- * Trivial jIRDuino Sniffer. Print received HEX codes and protocol info
+ * Trivial jIRDuino Sniffer. Print received HEX codes and protocol info.
+ * With a capture file, received frames are also recorded for replaying.
  * 
  * @author Emanuele Paiano
  * */
 public class IRSerialSnifferTools {
 	
 	public static void runSniffer(String[] args){
-		if (args.length>1) {
-			ComLinkDevice port=new ComLinkDevice(ComLinkDevice.getPortByName(args[1]), ComLinkDevice.BAUDRATE_9600);
+		if (args.length>2) {
+			runCapture(args);
+		}else if (args.length>1) {
+			LinkDevice port=IRduinoTools.getLinkDevice(args[1]);
 			IRLib2Device ir=new IRLib2Device(port);
 			ir.init();
 			ir.setPassiveSnifferMode(true);
@@ -40,9 +47,50 @@ public class IRSerialSnifferTools {
 			printHelp();
 	}
 	
+	/**
+	 * Print received frames and append them to capture file
+	 * */
+	private static void runCapture(String[] args) {
+		final IRCaptureWriter capture;
+		
+		try {
+			capture=new IRCaptureWriter(args[2]);
+		} catch (IOException e) {
+			System.out.println("irduino: can't open capture file: "+e.getMessage());
+			return;
+		}
+		
+		Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+			@Override
+			public void run() {
+				capture.close();
+			}
+		}));
+		
+		LinkDevice port=IRduinoTools.getLinkDevice(args[1]);
+		IRLib2Device ir=new IRLib2Device(port);
+		ir.init();
+		ir.setReceiverEnabled(true);
+		
+		while(port.isReady()) {
+			Signal signal=ir.receiveData();
+			long time=System.nanoTime();
+			
+			if (signal.isEmpty())
+				continue;
+			
+			capture.append(signal, time);
+			System.out.println(signal);
+		}
+		
+		capture.close();
+	}
+	
 	public static void printHelp() {
 		System.out.println("");
-		System.out.println("Use: java -jar irduino-tools.jar sniff <port>");
+		System.out.println("Use: java -jar irduino-tools.jar sniff <port> [capture file]");
+		System.out.println("");
+		System.out.println("- capture file, append received frames to file, to replay them with port replay:<capture file>");
 		System.out.println("");
 	}
 	
@@ -16,6 +16,18 @@
 
 package org.jirduino.tools;
 
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jirduino.core.Protocols;
+import org.jirduino.core.Signal;
+import org.jirduino.drivers.IRCaptureReader;
+import org.jirduino.drivers.IRLib2Simulator;
+import org.jirduino.drivers.IRReplayLinkDevice;
+import org.jirduino.settings.IRDeviceDefaultSettings;
+import org.serialduino.drivers.ComLinkDevice;
+import org.serialduino.drivers.LinkDevice;
+
 public class IRduinoTools {
 	
 	public static String version="0.9.5";
@@ -68,6 +80,9 @@ public class IRduinoTools {
 		System.out.println("> probe-json    	 probe exists json config, by key pressing");
 		System.out.println("> convert-signal     	 convert single signal between different protocols");
 		System.out.println("");
+		System.out.println("Use port \""+IRLib2Simulator.PORT_NAME+"\" for a simulated Arduino (no hardware)");
+		System.out.println("or \""+IRReplayLinkDevice.PORT_PREFIX+"<capture file>\" to replay a capture (see sniff)");
+		System.out.println("");
 		System.out.println("Run java -jar irduino-tools.jar <command> for advanced help");
 		System.out.println("");
 		
@@ -93,4 +108,34 @@ public class IRduinoTools {
 		System.out.println("");
 	}
 	
+	/**
+	 * Open link to Arduino-connected port. Port IRLib2Simulator.PORT_NAME 
+	 * gives a simulated Arduino, receiving random signals; port 
+	 * IRReplayLinkDevice.PORT_PREFIX followed by a capture file replays it.
+	 * @param portName serial port name (i.e. /dev/ttyUSB0), IRLib2Simulator.PORT_NAME or replay:<capture file>
+	 * @return LinkDevice object, not opened
+	 * */
+	public static LinkDevice getLinkDevice(String portName) {
+		if (portName.startsWith(IRReplayLinkDevice.PORT_PREFIX)) {
+			try {
+				return new IRReplayLinkDevice(new IRCaptureReader(portName.substring(IRReplayLinkDevice.PORT_PREFIX.length())));
+			} catch (IOException e) {
+				System.out.println("irduino: can't open capture file: "+e.getMessage());
+				System.exit(1);
+			}
+		}
+		
+		if (portName.equalsIgnoreCase(IRLib2Simulator.PORT_NAME)) {
+			IRLib2Simulator simulator=new IRLib2Simulator();
+			simulator.startGenerator(Arrays.asList(
+					new Signal(Protocols.NEC, "FF906F", 32), 
+					new Signal(Protocols.NECx, "E0E040BF", 32), 
+					new Signal(Protocols.SONY, "A90", 12)), 
+					IRDeviceDefaultSettings.SIMULATOR_EVENT_PERIOD, true);
+			return simulator;
+		}
+		
+		return new ComLinkDevice(ComLinkDevice.getPortByName(portName), ComLinkDevice.BAUDRATE_9600);
+	}
+	
 }
@@ -20,7 +20,7 @@ import java.util.List;
 import org.jirduino.config.JSONController;
 import org.jirduino.drivers.IRDevice;
 import org.jirduino.drivers.IRLib2Device;
-import org.serialduino.drivers.ComLinkDevice;
+import org.serialduino.drivers.LinkDevice;
 
 public class JSONDetectorTools {
 	
@@ -29,7 +29,7 @@ public class JSONDetectorTools {
 		
 		if (args.length==3) {
 		
-			ComLinkDevice port=new ComLinkDevice(ComLinkDevice.getPortByName(args[1]), ComLinkDevice.BAUDRATE_9600);
+			LinkDevice port=IRduinoTools.getLinkDevice(args[1]);
 			
 			IRDevice ir=new IRLib2Device(port);
 			
@@ -23,7 +23,7 @@ import org.jirduino.core.Signal;
 import org.jirduino.drivers.IRDevice;
 import org.jirduino.drivers.IRLib2Device;
 import org.jirduino.settings.RemoteDefaultSettings;
-import org.serialduino.drivers.ComLinkDevice;
+import org.serialduino.drivers.LinkDevice;
 
 public class JSONGeneratorTools {
 	
@@ -34,7 +34,7 @@ public class JSONGeneratorTools {
 	public static void runGenerator(String[] args) {
 		
 		if (args.length>2) {
-			ComLinkDevice port=new ComLinkDevice(ComLinkDevice.getPortByName(args[1]), ComLinkDevice.BAUDRATE_9600);
+			LinkDevice port=IRduinoTools.getLinkDevice(args[1]);
 			
 			ir=new IRLib2Device(port);
 			
@@ -1,19 +1,27 @@
 package org.jirduino.tools;
 
 import org.jirduino.core.Signal;
-import org.jirduino.drivers.IRDevice;
 import org.jirduino.drivers.IRLib2Device;
+import org.jirduino.metrics.ConverterMetrics;
+import org.jirduino.metrics.MetricsRegistry;
 import org.jirduino.translators.SignalConverter;
 import org.jirduino.translators.SignalRuleTable;
-import org.serialduino.drivers.ComLinkDevice;
+import org.serialduino.drivers.MeteredLinkDevice;
 
 public class SignalConverterTools {
 	public static void runSignalConverter(String[] args){
 		if (args.length>7) {
-			ComLinkDevice port=new ComLinkDevice(ComLinkDevice.getPortByName(args[1]), ComLinkDevice.BAUDRATE_9600);
-			IRDevice ir=new IRLib2Device(port);
+			MeteredLinkDevice port=new MeteredLinkDevice(IRduinoTools.getLinkDevice(args[1]));
+			IRLib2Device ir=new IRLib2Device(port);
 			ir.init();
 			SignalConverter converter=new SignalConverter(new SignalRuleTable(),ir);
+			
+			// exposed by JMX (i.e. jconsole)
+			MetricsRegistry metrics=MetricsRegistry.getShared();
+			metrics.register("link", port);
+			metrics.register("device", ir.getMetrics());
+			metrics.register("converter", new ConverterMetrics(converter));
+			
 			Signal source=new Signal(Integer.parseInt(args[2]), args[3], Integer.parseInt(args[4]));
 			Signal target=new Signal(Integer.parseInt(args[5]), args[6], Integer.parseInt(args[7]));
 			converter.addRule(source, target);
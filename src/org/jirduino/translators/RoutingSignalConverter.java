@@ -0,0 +1,623 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.translators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.jirduino.core.Signal;
+import org.jirduino.drivers.IRDevice;
+import org.jirduino.drivers.IRFrameBus;
+import org.jirduino.drivers.IRFrameSubscriber;
+import org.jirduino.drivers.IRFrameSubscription;
+import org.jirduino.helpers.JIRduinoThreads;
+import org.jirduino.helpers.LogEvent;
+import org.jirduino.settings.ConverterDefaultSettings;
+
+
+/**
+ * IR Signal Converter routing signals across several devices. Frames
+ * received by N receivers (each one tagged with a zone, i.e. a room) are
+ * resolved on a shared Signal-Rules Table, and translated signals are sent
+ * by transmitters of rule zone:
+ *
+ * <ul>
+ *   <li>rule zone null: transmitters of receiver zone</li>
+ *   <li>rule zone ALL_ZONES: all transmitters</li>
+ *   <li>otherwise: transmitters tagged with rule zone</li>
+ * </ul>
+ *
+ * Each transmitter has its own send queue and dispatcher thread, so
+ * transmitters send in parallel and a slow board doesn't delay the others.
+ * Receivers are read through IRFrameBus, so they can be shared with other
+ * frame consumers.
+ *
+ * Example:
+ *
+ * <pre>
+ *     RoutingSignalConverter router=new RoutingSignalConverter(rules);
+ *     router.addReceiver("living-room", livingRoomBoard);
+ *     router.addReceiver("kitchen", kitchenBoard);
+ *     router.addTransmitter("living-room-tv", "living-room", livingRoomBoard);
+ *     router.addTransmitter("kitchen-hifi", "kitchen", hifiBoard);
+ *     router.start();
+ * </pre>
+ *
+ * @see SignalRule#getZone()
+ * @author Emanuele Paiano
+ * */
+public class RoutingSignalConverter {
+
+	/**
+	 * rule zone sending on all transmitters
+	 * */
+	public static final String ALL_ZONES="*";
+
+	/**
+	 * Translation rules table
+	 * */
+	private final SignalRuleTable ruleTable;
+
+	private final List<Receiver> receivers=new CopyOnWriteArrayList<Receiver>();
+
+	/**
+	 * transmitters by name, guarded by this
+	 * */
+	private final Map<String, Transmitter> transmitters=new LinkedHashMap<String, Transmitter>();
+
+	/**
+	 * transmitters by zone, rebuilt on changes
+	 * */
+	private volatile Map<String, Transmitter[]> zones=new HashMap<String, Transmitter[]>();
+
+	private volatile Transmitter[] allTransmitters=new Transmitter[0];
+
+	private final List<SignalConverterListener> listeners=new CopyOnWriteArrayList<SignalConverterListener>();
+
+	private volatile boolean isRunning=false;
+
+	private volatile boolean debugModeOn=false;
+
+	/**
+	 * pause (in millis) between received signal and translated signal sending
+	 * */
+	private volatile long sendGuardTime=ConverterDefaultSettings.SEND_GUARD_TIME;
+
+	private final AtomicLong received=new AtomicLong();
+
+	private final AtomicLong unmatched=new AtomicLong();
+
+	/**
+	 * translated signals with no transmitter in their zone
+	 * */
+	private final AtomicLong unrouted=new AtomicLong();
+
+
+	/**
+	 * Constructor.
+	 * @param ruleTable a SignalRuleTable object, rules may have a zone tag
+	 * */
+	public RoutingSignalConverter(SignalRuleTable ruleTable)
+	{
+		this.ruleTable=ruleTable;
+	}
+
+
+	/**
+	 * Add a receiving device, read by a new IRFrameBus started and
+	 * stopped with converter
+	 * @param zone receiver zone tag (i.e. "living-room")
+	 * @param device IRDevice object, initialized
+	 * @return frame bus reading device, i.e. to add other subscribers
+	 * */
+	public IRFrameBus addReceiver(String zone, IRDevice device)
+	{
+		IRFrameBus bus=new IRFrameBus(device);
+		addReceiver(zone, bus, true);
+		return bus;
+	}
+
+	/**
+	 * Add a receiving device read by a frame bus. Bus is not started or
+	 * stopped by converter.
+	 * @param zone receiver zone tag (i.e. "living-room")
+	 * @param bus IRFrameBus object
+	 * */
+	public void addReceiver(String zone, IRFrameBus bus)
+	{
+		addReceiver(zone, bus, false);
+	}
+
+	private synchronized void addReceiver(String zone, IRFrameBus bus, boolean owned)
+	{
+		Receiver receiver=new Receiver(zone, bus, owned);
+		receivers.add(receiver);
+
+		if (isRunning)
+			receiver.start();
+	}
+
+
+	/**
+	 * Add a transmitting device
+	 * @param name transmitter name (i.e. "living-room-tv")
+	 * @param zone transmitter zone tag (i.e. "living-room")
+	 * @param device IRDevice object, initialized
+	 * @return true if success, false if name is already used
+	 * */
+	public synchronized boolean addTransmitter(String name, String zone, IRDevice device)
+	{
+		if (transmitters.containsKey(name))
+			return false;
+
+		Transmitter transmitter=new Transmitter(name, zone, device);
+		transmitters.put(name, transmitter);
+
+		if (isRunning)
+			transmitter.start();
+
+		rebuildZones();
+		return true;
+	}
+
+	/**
+	 * Remove a transmitting device. Its signals not yet sent are discarded.
+	 * @param name transmitter name
+	 * @return removed device, null if not found
+	 * */
+	public synchronized IRDevice removeTransmitter(String name)
+	{
+		Transmitter transmitter=transmitters.remove(name);
+
+		if (transmitter==null)
+			return null;
+
+		rebuildZones();
+		transmitter.stop();
+		return transmitter.device;
+	}
+
+
+	/**
+	 * Start receivers and transmitters dispatchers
+	 * */
+	public synchronized void start()
+	{
+		if (isRunning)
+			return;
+
+		isRunning=true;
+
+		for(Transmitter transmitter: transmitters.values())
+			transmitter.start();
+
+		for(Receiver receiver: receivers)
+			receiver.start();
+	}
+
+	/**
+	 * Stop converter. Signals not yet sent are discarded.
+	 * */
+	public synchronized void stop()
+	{
+		if (!isRunning)
+			return;
+
+		isRunning=false;
+
+		for(Receiver receiver: receivers)
+			receiver.stop();
+
+		for(Transmitter transmitter: transmitters.values())
+			transmitter.stop();
+	}
+
+
+	/**
+	 * Add a listener notified on each resolved and sent signal
+	 * @param listener SignalConverterListener object
+	 * */
+	public void addListener(SignalConverterListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a converter events listener
+	 * @param listener SignalConverterListener object
+	 * */
+	public void removeListener(SignalConverterListener listener) {
+		listeners.remove(listener);
+	}
+
+
+	/**
+	 * Return Rules Table
+	 * */
+	public SignalRuleTable getRuleTable() {
+		return ruleTable;
+	}
+
+	/**
+	 * Return true if converter is running, false otherwise
+	 * */
+	public boolean isRunning() {
+		return isRunning;
+	}
+
+	/**
+	 * Return true if VERBOSE/DEBUG mode is on, false otherwise
+	 * */
+	public boolean isDebugModeOn() {
+		return debugModeOn;
+	}
+
+	/**
+	 * Enable VERBOSE/DEBUG mode, printing events on Console
+	 * @param debugModeOn true to enable, false to disable
+	 * */
+	public void setDebugModeOn(boolean debugModeOn) {
+		this.debugModeOn = debugModeOn;
+	}
+
+	/**
+	 * Return pause (in millis) between received signal and translated
+	 * signal sending. Rule delay is added to this value.
+	 * */
+	public long getSendGuardTime() {
+		return sendGuardTime;
+	}
+
+	/**
+	 * Set pause (in millis) between received signal and translated signal sending
+	 * @param sendGuardTime value in milliseconds (default ConverterDefaultSettings.SEND_GUARD_TIME)
+	 * */
+	public void setSendGuardTime(long sendGuardTime) {
+		this.sendGuardTime = sendGuardTime;
+	}
+
+	/**
+	 * Return transmitters names
+	 * */
+	public synchronized List<String> getTransmitterNames() {
+		return new ArrayList<String>(transmitters.keySet());
+	}
+
+	/**
+	 * Return frames received by all receivers
+	 * */
+	public long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * Return received frames matching no rule
+	 * */
+	public long getUnmatched() {
+		return unmatched.get();
+	}
+
+	/**
+	 * Return translated signals with no transmitter in their zone
+	 * */
+	public long getUnrouted() {
+		return unrouted.get();
+	}
+
+	/**
+	 * Return translated signals scheduled on all transmitters and not yet 
+	 * sent, including the ones waiting for Arduino response
+	 * */
+	public int getPendingSends() {
+		int pending=0;
+
+		for(Transmitter transmitter: allTransmitters)
+			pending+=transmitter.pending.get();
+
+		return pending;
+	}
+
+	/**
+	 * Return translated signals scheduled on a transmitter and not yet sent,
+	 * including the ones waiting for Arduino response
+	 * @param name transmitter name
+	 * @return pending signals, -1 if transmitter is not found
+	 * */
+	public synchronized int getPendingSends(String name) {
+		Transmitter transmitter=transmitters.get(name);
+		return transmitter!=null ? transmitter.pending.get() : -1;
+	}
+
+	/**
+	 * Return signals sent by a transmitter
+	 * @param name transmitter name
+	 * @return sent signals, -1 if transmitter is not found
+	 * */
+	public synchronized long getSentSignals(String name) {
+		Transmitter transmitter=transmitters.get(name);
+		return transmitter!=null ? transmitter.sent.get() : -1;
+	}
+
+	/**
+	 * Return signals a transmitter failed to send (i.e. no Arduino response)
+	 * @param name transmitter name
+	 * @return failed signals, -1 if transmitter is not found
+	 * */
+	public synchronized long getFailedSends(String name) {
+		Transmitter transmitter=transmitters.get(name);
+		return transmitter!=null ? transmitter.failed.get() : -1;
+	}
+
+	/**
+	 * Return signals dropped by a transmitter, because its queue was full
+	 * @param name transmitter name
+	 * @return dropped signals, -1 if transmitter is not found
+	 * */
+	public synchronized long getDroppedSends(String name) {
+		Transmitter transmitter=transmitters.get(name);
+		return transmitter!=null ? transmitter.dropped.get() : -1;
+	}
+
+
+	/**
+	 * Resolve a received frame and schedule translated signal on
+	 * destination transmitters
+	 * @param zone receiver zone
+	 * @param in received signal
+	 * @param receivedNanos receiving time, as System.nanoTime()
+	 * */
+	private void route(String zone, Signal in, long receivedNanos)
+	{
+		received.incrementAndGet();
+
+		if (debugModeOn)
+			LogEvent.receivedSignal(in);
+
+		SignalRule rule=ruleTable.lookup(in);
+
+		if (!listeners.isEmpty()) {
+			long resolved=System.nanoTime();
+			for(SignalConverterListener listener: listeners)
+				listener.onResolved(in, rule, receivedNanos, resolved);
+		}
+
+		if (rule==null) {
+			unmatched.incrementAndGet();
+
+			if (debugModeOn)
+				LogEvent.noRuleMatching(in);
+			return;
+		}
+
+		Signal out=rule.getOut();
+
+		if (debugModeOn)
+			LogEvent.resolvedRule(in, out);
+
+		if (out.isEmpty() || !rule.isEnabled())
+			return;
+
+		String destination=rule.getZone()!=null ? rule.getZone() : zone;
+		Transmitter[] targets=ALL_ZONES.equals(destination) ? allTransmitters : zones.get(destination);
+
+		if (targets==null || targets.length==0) {
+			unrouted.incrementAndGet();
+
+			if (debugModeOn)
+				LogEvent.logger.warning("No transmitter in zone "+destination+" for "+out);
+			return;
+		}
+
+		long delay=sendGuardTime+rule.getDelaySend();
+
+		for(Transmitter transmitter: targets)
+			transmitter.schedule(out, delay, receivedNanos);
+	}
+
+
+	/**
+	 * rebuild transmitters by zone, lock must be held
+	 * */
+	private void rebuildZones()
+	{
+		Map<String, List<Transmitter>> grouped=new HashMap<String, List<Transmitter>>();
+
+		for(Transmitter transmitter: transmitters.values()) {
+			List<Transmitter> zone=grouped.get(transmitter.zone);
+
+			if (zone==null) {
+				zone=new ArrayList<Transmitter>();
+				grouped.put(transmitter.zone, zone);
+			}
+
+			zone.add(transmitter);
+		}
+
+		Map<String, Transmitter[]> rebuilt=new HashMap<String, Transmitter[]>();
+
+		for(Map.Entry<String, List<Transmitter>> entry: grouped.entrySet())
+			rebuilt.put(entry.getKey(), entry.getValue().toArray(new Transmitter[0]));
+
+		zones=rebuilt;
+		allTransmitters=transmitters.values().toArray(new Transmitter[0]);
+	}
+
+
+	/**
+	 * receiving device, with its bus subscription
+	 * */
+	private class Receiver implements IRFrameSubscriber {
+
+		final String zone;
+
+		final IRFrameBus bus;
+
+		/**
+		 * true if bus has been created by converter
+		 * */
+		final boolean owned;
+
+		IRFrameSubscription subscription;
+
+		Receiver(String zone, IRFrameBus bus, boolean owned)
+		{
+			this.zone=zone;
+			this.bus=bus;
+			this.owned=owned;
+		}
+
+		void start()
+		{
+			subscription=bus.subscribe("RoutingSignalConverter-"+zone, this, IRFrameBus.Backpressure.BLOCK);
+
+			if (owned)
+				bus.start();
+		}
+
+		void stop()
+		{
+			if (owned)
+				bus.stop();
+			else if (subscription!=null)
+				subscription.cancel();
+
+			subscription=null;
+		}
+
+		@Override
+		public void onFrame(Signal signal, long nanos) {
+			route(zone, signal, nanos);
+		}
+	}
+
+
+	/**
+	 * transmitting device, with its send queue and dispatcher thread
+	 * */
+	private class Transmitter {
+
+		final String name;
+
+		final String zone;
+
+		final IRDevice device;
+
+		/**
+		 * signals scheduled or waiting for Arduino response
+		 * */
+		final AtomicInteger pending=new AtomicInteger();
+
+		final AtomicLong sent=new AtomicLong();
+
+		final AtomicLong failed=new AtomicLong();
+
+		final AtomicLong dropped=new AtomicLong();
+
+		volatile ScheduledExecutorService dispatcher;
+
+		Transmitter(String name, String zone, IRDevice device)
+		{
+			this.name=name;
+			this.zone=zone;
+			this.device=device;
+		}
+
+		void start()
+		{
+			dispatcher=JIRduinoThreads.newScheduler("RoutingSignalConverter-"+name);
+		}
+
+		void stop()
+		{
+			ScheduledExecutorService current=dispatcher;
+			dispatcher=null;
+
+			// signals being sent leave when completed
+			if (current!=null)
+				pending.addAndGet(-current.shutdownNow().size());
+		}
+
+		/**
+		 * schedule a translated signal, dropping it if queue is full. 
+		 * Signal is pending until its send is completed, so a slow
+		 * device fills its queue.
+		 * */
+		void schedule(final Signal out, long delay, final long receivedNanos)
+		{
+			ScheduledExecutorService current=dispatcher;
+
+			if (current==null || current.isShutdown())
+				return;
+
+			if (pending.incrementAndGet()>ConverterDefaultSettings.MAX_PENDING_SENDS) {
+				pending.decrementAndGet();
+				dropped.incrementAndGet();
+				return;
+			}
+
+			try {
+				current.schedule(new Runnable() {
+					@Override
+					public void run() {
+						// not waiting for Arduino response: next signals are sent in a row
+						device.sendDataAsync(out).whenComplete(new BiConsumer<Boolean, Throwable>() {
+							@Override
+							public void accept(Boolean success, Throwable error) {
+								completed(out, Boolean.TRUE.equals(success), receivedNanos);
+							}
+						});
+					}
+				}, delay, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// stopped meanwhile
+				pending.decrementAndGet();
+			}
+		}
+
+		/**
+		 * count send result and notify it to listeners, on thread completing the send
+		 * */
+		void completed(Signal out, boolean success, long receivedNanos)
+		{
+			pending.decrementAndGet();
+
+			if (success)
+				sent.incrementAndGet();
+			else
+				failed.incrementAndGet();
+
+			if (!listeners.isEmpty()) {
+				long sentNanos=System.nanoTime();
+				for(SignalConverterListener listener: listeners)
+					listener.onSent(out, success, receivedNanos, sentNanos);
+			}
+
+			if (debugModeOn && success)
+				LogEvent.sentSignal(out);
+		}
+	}
+
+}
@@ -17,15 +17,46 @@
 package org.jirduino.translators;
 
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
 import org.jirduino.core.Signal;
 import org.jirduino.drivers.IRDevice;
+import org.jirduino.drivers.IRFrameBus;
+import org.jirduino.drivers.IRFrameSubscriber;
+import org.jirduino.drivers.IRFrameSubscription;
+import org.jirduino.helpers.JIRduinoThreads;
 import org.jirduino.helpers.LogEvent;
+import org.jirduino.settings.ConverterDefaultSettings;
+import org.jirduino.settings.IRDeviceDefaultSettings;
 
 
 /**
  * IR Signal Converter thread. It converts received signals between
  * protocols, reading rules from Signal-Rules Table.
  * from a protocol table.
+ * 
+ * Receiving thread only decodes and resolves signals: translated signals are
+ * scheduled on a dispatcher thread, and sent after guard time plus rule delay,
+ * without waiting for Arduino response. So receiving is never blocked by 
+ * transmit timing.
+ * 
+ * Holding a remote key produces a stream of repeat codes (or identical 
+ * frames). When repeat window is set, repeat codes received within it, and
+ * identical frames received within repeat period, are repeats of the same 
+ * key. Repeats are coalesced into a rule hold signal (at most one per 
+ * window), and rule release signal is sent when no repeat is received for
+ * a window. Frames not matching any rule don't release a held key.
+ * Rule input hold signal (i.e. source key down frame) is a repeat of the
+ * held key only, it isn't translated when received alone.
+ * 
+ * Converter can run on its own thread, reading IRDevice exclusively, or 
+ * subscribe to an IRFrameBus shared with other frame consumers.
  * @see SignalRuleTable
  * 
  * @author Emanuele Paiano
@@ -56,6 +87,76 @@ public class SignalConverter implements Runnable{
 	 * */
 	private volatile boolean debugModeOn=false;
 	
+	/**
+	 * pause (in millis) between received signal and translated signal sending
+	 * */
+	private volatile long sendGuardTime=ConverterDefaultSettings.SEND_GUARD_TIME;
+	
+	/**
+	 * translated signals dispatcher, active while running
+	 * */
+	private volatile ScheduledExecutorService dispatcher;
+	
+	/**
+	 * thread of last run, interrupted by stop()
+	 * */
+	private volatile Thread thread;
+	
+	/**
+	 * converter events listeners
+	 * */
+	private final List<SignalConverterListener> listeners=new CopyOnWriteArrayList<SignalConverterListener>();
+	
+	/**
+	 * translated signals scheduled and not yet sent
+	 * */
+	private final AtomicInteger pendingSends=new AtomicInteger();
+	
+	/**
+	 * frame bus subscription, if converter has been subscribed to a bus
+	 * */
+	private volatile IRFrameSubscription subscription;
+	
+	/**
+	 * max pause (in millis) between frames of a held key, 0 to translate each frame
+	 * */
+	private volatile long repeatWindow=ConverterDefaultSettings.REPEAT_WINDOW;
+	
+	/**
+	 * max pause (in millis) between identical frames of a held key
+	 * */
+	private volatile long repeatPeriod=ConverterDefaultSettings.REPEAT_PERIOD;
+	
+	/**
+	 * if true, held keys are translated to rule hold and release signals,
+	 * otherwise repeats are dropped
+	 * */
+	private volatile boolean holdTranslationOn=true;
+	
+	/**
+	 * guards held key state, used by receiving and dispatcher threads
+	 * */
+	private final Object holdLock=new Object();
+	
+	/**
+	 * rule of held key, null if no key is held
+	 * */
+	private SignalRule heldRule;
+	
+	/**
+	 * last frame of held key and last forwarded one, as System.nanoTime()
+	 * */
+	private long lastFrame;
+	
+	private long lastForward;
+	
+	private boolean releaseScheduled=false;
+	
+	/**
+	 * repeat frames not translated
+	 * */
+	private final AtomicLong suppressedRepeats=new AtomicLong();
+	
 	/**
 	 * Constructor. 
 	 * @param RuleTable a SignalRuleTables object (i.e. new SignalRuleTable())
@@ -150,6 +251,24 @@ public class SignalConverter implements Runnable{
 	
 	
 	
+	/**
+	 * Add a listener notified on each resolved and sent signal, 
+	 * i.e. to measure latencies
+	 * @param listener SignalConverterListener object
+	 * */
+	public void addListener(SignalConverterListener listener) {
+		listeners.add(listener);
+	}
+	
+	/**
+	 * Remove a converter events listener
+	 * @param listener SignalConverterListener object
+	 * */
+	public void removeListener(SignalConverterListener listener) {
+		listeners.remove(listener);
+	}
+	
+	
 	/**
 	 * Return true if VERBOSE/DEBUG mode is on, false otherwise
 	 * 
@@ -169,66 +288,443 @@ public class SignalConverter implements Runnable{
 	public synchronized void setDebugModeOn(boolean debugModeOn) {
 		this.debugModeOn = debugModeOn;
 	}
+	
+	/**
+	 * Return pause (in millis) between received signal and translated 
+	 * signal sending. Rule delay is added to this value.
+	 * */
+	public long getSendGuardTime() {
+		return sendGuardTime;
+	}
+	
+	/**
+	 * Set pause (in millis) between received signal and translated signal sending
+	 * @param sendGuardTime value in milliseconds (default ConverterDefaultSettings.SEND_GUARD_TIME)
+	 * */
+	public void setSendGuardTime(long sendGuardTime) {
+		this.sendGuardTime = sendGuardTime;
+	}
+	
+	/**
+	 * Return max pause (in millis) between frames of a held key
+	 * */
+	public long getRepeatWindow() {
+		return repeatWindow;
+	}
+	
+	/**
+	 * Set max pause (in millis) between frames of a held key: repeat codes
+	 * received within it are coalesced as repeats of same key press
+	 * @param repeatWindow value in milliseconds (default ConverterDefaultSettings.REPEAT_WINDOW), 
+	 * 0 to translate each frame
+	 * */
+	public void setRepeatWindow(long repeatWindow) {
+		this.repeatWindow = repeatWindow;
+	}
+	
+	/**
+	 * Return max pause (in millis) between identical frames of a held key
+	 * */
+	public long getRepeatPeriod() {
+		return repeatPeriod;
+	}
+	
+	/**
+	 * Set max pause (in millis) between identical frames of a held key: 
+	 * identical frames received later are translated as a new key press
+	 * @param repeatPeriod value in milliseconds (default ConverterDefaultSettings.REPEAT_PERIOD)
+	 * */
+	public void setRepeatPeriod(long repeatPeriod) {
+		this.repeatPeriod = repeatPeriod;
+	}
+	
+	/**
+	 * Return true if held keys are translated to rule hold and release signals
+	 * */
+	public boolean isHoldTranslationOn() {
+		return holdTranslationOn;
+	}
+	
+	/**
+	 * Enable hold translation
+	 * @param holdTranslationOn true to send rule hold and release signals for held keys, 
+	 * false to drop repeats
+	 * */
+	public void setHoldTranslationOn(boolean holdTranslationOn) {
+		this.holdTranslationOn = holdTranslationOn;
+	}
+	
+	/**
+	 * Return repeat frames not translated
+	 * */
+	public long getSuppressedRepeats() {
+		return suppressedRepeats.get();
+	}
+	
+	/**
+	 * Return true if converter is running, false otherwise
+	 * */
+	public boolean isRunning() {
+		return isRunning;
+	}
+	
+	/**
+	 * Return translated signals scheduled and not yet sent
+	 * */
+	public int getPendingSends() {
+		return pendingSends.get();
+	}
+	
+	/**
+	 * Stop converter. Scheduled signals not yet sent will be discarded.
+	 * Converter thread, waiting for a frame, is interrupted.
+	 * */
+	public void stop() {
+		Thread running;
+		
+		synchronized (this) {
+			isRunning=false;
+			running=thread;
+		}
+		
+		if (running!=null && running!=Thread.currentThread())
+			running.interrupt();
+		
+		IRFrameSubscription currentSubscription=subscription;
+		if (currentSubscription!=null) {
+			currentSubscription.cancel();
+			subscription=null;
+		}
+		
+		ScheduledExecutorService current=dispatcher;
+		if (current!=null)
+			current.shutdownNow();
+		
+		pendingSends.set(0);
+		
+		synchronized (holdLock) {
+			heldRule=null;
+			releaseScheduled=false;
+		}
+	}
+
+	/**
+	 * Start converter on a new thread: a virtual thread if enabled, 
+	 * a platform thread otherwise.
+	 * @return converter thread, null if converter is running or thread 
+	 * of previous run has not exited yet
+	 * @see JIRduinoThreads
+	 * */
+	public synchronized Thread start() 
+	{
+		if (isRunning || isThreadAlive())
+			return null;
+		
+		Thread t=JIRduinoThreads.newThread("SignalConverter", this, false);
+		thread=t;
+		t.start();
+		return t;
+	}
+	
+	/**
+	 * Start converting frames published by a bus, instead of running
+	 * converter thread. Converter blocks bus when it's lagging behind,
+	 * so no frame is lost: other subscribers should drop frames. 
+	 * Call stop() to unsubscribe.
+	 * @param bus IRFrameBus object, reading converter IRDevice
+	 * @return bus subscription, null if converter is already running
+	 * */
+	public synchronized IRFrameSubscription subscribe(IRFrameBus bus) 
+	{
+		if (isRunning || isThreadAlive())
+			return null;
+		
+		isRunning=true;
+		startDispatcher();
+		
+		subscription=bus.subscribe("SignalConverter", new IRFrameSubscriber() {
+			@Override
+			public void onFrame(Signal in, long nanos) {
+				if (debugModeOn)		
+					LogEvent.receivedSignal(in);
+				
+				translateAndSend(in, nanos);
+			}
+		}, IRFrameBus.Backpressure.BLOCK);
+		
+		return subscription;
+	}
 
 	@Override
 	public void run() {
-		isRunning=true;
+		ScheduledExecutorService current;
+		
+		synchronized (this) {
+			// already converting, on another thread or from a bus
+			if (isRunning)
+				return;
+			
+			isRunning=true;
+			thread=Thread.currentThread();
+			current=startDispatcher();
+		}
 		
 		irDevice.setReceiverEnabled(true);
 		
-		while(isRunning) 
+		// after stop(), a newer run has its own dispatcher: this one just exits
+		while(isRunning && dispatcher==current && !Thread.currentThread().isInterrupted()) 
 		{
-			if(!irDevice.isPassiveSnifferMode()) 
-			{				
+			// link closed or reconnecting: reads return at once, so wait for it
+			if (!irDevice.getArduino().isReady()) {
 				try {
-					Signal in=irDevice.receiveData();
-					
-					if (debugModeOn)		
-						LogEvent.receivedSignal(in);
-					
-					translateAndSend(in);
-					
+					Thread.sleep(IRDeviceDefaultSettings.LINE_POLL_TIME);
 				} catch (InterruptedException e) {
+					break;
 				}
+				continue;
+			}
+			
+			if(!irDevice.isPassiveSnifferMode()) 
+			{				
+				Signal in=irDevice.receiveData();
+				long received=System.nanoTime();
+				
+				if (in.isEmpty())
+					continue;
+				
+				if (debugModeOn)		
+					LogEvent.receivedSignal(in);
+				
+				translateAndSend(in, received);
 				
 			}else
 				System.out.println(irDevice.waitResponse());
 		}
 		
+		current.shutdownNow();
+		
+		synchronized (this) {
+			// interrupted without stop()
+			if (dispatcher==current)
+				isRunning=false;
+		}
+		
 	}
 	
 	
 	/**
-	 * Translated and send routine
-	 * 
+	 * create dispatcher thread for translated signals
+	 * @return created dispatcher
+	 * */
+	private ScheduledExecutorService startDispatcher() 
+	{
+		ScheduledExecutorService created=JIRduinoThreads.newScheduler("SignalConverter-dispatcher");
+		dispatcher=created;
+		return created;
+	}
+	
+	
+	/**
+	 * @return true if thread of last run is still running, lock must be held
+	 * */
+	private boolean isThreadAlive() 
+	{
+		return thread!=null && thread.isAlive();
+	}
+	
+	
+	/**
+	 * Translated and send routine. It resolves signal and schedules
+	 * translated one on dispatcher thread.
+	 * @param in received signal
+	 * @param received receiving time, as System.nanoTime()
 	 * */
-	private void translateAndSend(Signal in) throws InterruptedException 
+	private void translateAndSend(Signal in, long received) 
 	{
 		
-		if(ruleTable.match(in)) {
-			Thread.sleep(300);
+		SignalRule rule=ruleTable.lookup(in);
+		Signal out=rule!=null ? rule.getOut() : null;
+		SignalRule released=null;
+		
+		if (repeatWindow>0) {
+			long window=TimeUnit.MILLISECONDS.toNanos(repeatWindow);
+			long period=Math.min(window, TimeUnit.MILLISECONDS.toNanos(repeatPeriod));
+			boolean repeatCode=in.hasCode() && in.getCode()==ConverterDefaultSettings.REPEAT_CODE;
 			
-			SignalRule rule=ruleTable.getRule(in);
-			Signal out=rule.getOut();
+			synchronized (holdLock) {
+				SignalRule held=heldRule;
+				long silence=received-lastFrame;
+				
+				// repeat code, held key down frame, or same key again within repeat period
+				boolean repeat=held!=null && silence<=window 
+						&& (repeatCode || (!held.getInHold().isEmpty() && in.isEquals(held.getInHold())) 
+						|| (silence<=period && rule==held));
+				
+				if (repeat) {
+					rule=held;
+					out=null;
+					lastFrame=received;
+					
+					if (holdTranslationOn && received-lastForward>=window) {
+						lastForward=received;
+						out=held.getOutHold().isEmpty() ? held.getOut() : held.getOutHold();
+					}else
+						suppressedRepeats.incrementAndGet();
+					
+				}else if (rule!=null) {
+					// new key press: held one has been released.
+					// Frames without rule (i.e. other remotes, noise) don't end hold
+					released=held;
+					heldRule=rule;
+					lastFrame=received;
+					lastForward=received;
+					scheduleReleaseCheck(window);
+				}
+			}
+		}
+		
+		if (released!=null)
+			sendRelease(released, received);
+		
+		if (!listeners.isEmpty()) {
+			long resolved=System.nanoTime();
+			for(SignalConverterListener listener: listeners)
+				listener.onResolved(in, rule, received, resolved);
+		}
+		
+		if(rule!=null) {
+			if (out==null)
+				return;
 			
 			if (debugModeOn)  
 				LogEvent.resolvedRule(in, out);
 			
 			
-			if(!out.isEquals(Signal.getEmptySignal()) && rule.isEnabled()) {
-				
-				Thread.sleep(rule.getDelaySend());
-				
-				irDevice.sendData(out);
-				
-				if (debugModeOn)  
-					LogEvent.sentSignal(out);
-				
-			}
+			if(!out.isEmpty() && rule.isEnabled()) 
+				scheduleSend(out, sendGuardTime+rule.getDelaySend(), received);
+			
 		}else 
 			if (debugModeOn)
 				LogEvent.noRuleMatching(in);
 	}
+	
+	
+	/**
+	 * Send release signal of a released key, if hold translation is on
+	 * @param rule released key rule
+	 * @param received receiving time of last event, as System.nanoTime()
+	 * */
+	private void sendRelease(SignalRule rule, long received) 
+	{
+		Signal release=rule.getOutRelease();
+		
+		if (holdTranslationOn && !release.isEmpty() && rule.isEnabled())
+			scheduleSend(release, sendGuardTime+rule.getDelaySend(), received);
+	}
+	
+	
+	/**
+	 * Schedule a check for held key release on dispatcher thread, 
+	 * if not already scheduled. Hold lock must be held.
+	 * @param delay pause (in nanos) before check
+	 * */
+	private void scheduleReleaseCheck(long delay) 
+	{
+		ScheduledExecutorService current=dispatcher;
+		
+		if (releaseScheduled || current==null || current.isShutdown())
+			return;
+		
+		releaseScheduled=true;
+		
+		current.schedule(new Runnable() {
+			@Override
+			public void run() {
+				checkRelease();
+			}
+		}, delay, TimeUnit.NANOSECONDS);
+	}
+	
+	
+	/**
+	 * Release held key if no frame has been received for repeat window
+	 * */
+	private void checkRelease() 
+	{
+		SignalRule released;
+		long now=System.nanoTime();
+		
+		synchronized (holdLock) {
+			releaseScheduled=false;
+			
+			if (heldRule==null)
+				return;
+			
+			long window=TimeUnit.MILLISECONDS.toNanos(repeatWindow);
+			long silence=now-lastFrame;
+			
+			if (silence<window) {
+				scheduleReleaseCheck(window-silence);
+				return;
+			}
+			
+			released=heldRule;
+			heldRule=null;
+		}
+		
+		sendRelease(released, now);
+	}
+	
+	
+	/**
+	 * Schedule translated signal sending on dispatcher thread
+	 * @param out signal to send
+	 * @param delay pause (in millis) before sending
+	 * @param received receiving time of input signal, as System.nanoTime()
+	 * */
+	private void scheduleSend(final Signal out, long delay, final long received) 
+	{
+		ScheduledExecutorService current=dispatcher;
+		
+		if (current==null || current.isShutdown())
+			return;
+		
+		pendingSends.incrementAndGet();
+		
+		current.schedule(new Runnable() {
+			@Override
+			public void run() {
+				pendingSends.decrementAndGet();
+				
+				// not waiting for Arduino response: next signals are sent in a row
+				irDevice.sendDataAsync(out).whenComplete(new BiConsumer<Boolean, Throwable>() {
+					@Override
+					public void accept(Boolean success, Throwable error) {
+						sendCompleted(out, Boolean.TRUE.equals(success), received);
+					}
+				});
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+	
+	
+	/**
+	 * Notify send result to listeners, on thread completing the send
+	 * @param out sent signal
+	 * @param success true if signal has been sent, false otherwise
+	 * @param received receiving time of input signal, as System.nanoTime()
+	 * */
+	private void sendCompleted(Signal out, boolean success, long received) 
+	{
+		if (!listeners.isEmpty()) {
+			long sent=System.nanoTime();
+			for(SignalConverterListener listener: listeners)
+				listener.onSent(out, success, received, sent);
+		}
+		
+		if (debugModeOn && success)  
+			LogEvent.sentSignal(out);
+	}
 
 
 }
@@ -0,0 +1,51 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.translators;
+
+import org.jirduino.core.Signal;
+
+
+/**
+ * SignalConverter events, with System.nanoTime() timestamps so each
+ * stage latency can be measured. Methods are called on converter
+ * threads: they should return quickly and not block.
+ *
+ * @see SignalConverter
+ * @author Emanuele Paiano
+ * */
+public interface SignalConverterListener {
+
+	/**
+	 * A received signal has been looked up into rules table
+	 * @param in received signal
+	 * @param rule matching rule, null if no rule matches
+	 * @param receivedNanos receiving time
+	 * @param resolvedNanos lookup end time
+	 * */
+	public void onResolved(Signal in, SignalRule rule, long receivedNanos, long resolvedNanos);
+
+	/**
+	 * A translated signal send has been completed by IR device (i.e. Arduino 
+	 * response received, or timeout)
+	 * @param out translated signal
+	 * @param success true if signal has been sent, false otherwise
+	 * @param receivedNanos receiving time of input signal
+	 * @param sentNanos send completion time
+	 * */
+	public void onSent(Signal out, boolean success, long receivedNanos, long sentNanos);
+
+}
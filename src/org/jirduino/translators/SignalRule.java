@@ -21,7 +21,8 @@ import org.jirduino.core.Signal;
 /**
  * Signals Rule item, a SignalRule object will be stored into Signal Rules Table.
  * It contains input/output signals and attributes like delay time
- * (to wait before send output signal) and enable/disable sending flag.
+ * (to wait before send output signal), enable/disable sending flag and
+ * destination zone (used by RoutingSignalConverter).
  * 
  * Rule fields:
  * 
@@ -36,7 +37,14 @@ import org.jirduino.core.Signal;
  *	 <li> OUT: Output Signal</li>
  *	 <li> DELAY: Delay time (in millis) to wait before sending (by Arduino) output signal</li>
  *	 <li> ENABLED: if false, output signal won't be sent by Arduino.</li>
+ *	 <li> ZONE: transmitters zone tag (i.e. "living-room"), null for receiver zone.</li>
+ *	 <li> HOLD: signal sent while input key is held (i.e. target key down), empty for OUT.</li>
+ *	 <li> RELEASE: signal sent when input key is released (i.e. target key release), empty for none.</li>
+ *	 <li> IN HOLD: signal received while input key is held (i.e. source key down), empty for none.</li>
  * </ul>
+ * 
+ * Rules are immutable, as they're shared by table snapshots read without locking:
+ * to change a stored rule, replace it with SignalRuleTable.replaceRule().
  * @see Signal   
  * 
  * @author Emanuele Paiano
@@ -47,23 +55,43 @@ public class SignalRule {
 	/**
 	 * if false, output signal won't be sent by Arduino
 	 ***/
-	private boolean enabled;
+	private final boolean enabled;
 	
 	/**
 	 * input signal 
 	 */
-	private Signal in;
+	private final Signal in;
 	
 	/**
 	 * output (translated) signal
 	 */
-	private Signal out;
+	private final Signal out;
 	
 	
 	/**
 	 * Delay time (in millis) to wait before sending (by Arduino) output signal
 	 */
-	private long delaySend;
+	private final long delaySend;
+	
+	/**
+	 * destination zone tag, null for receiver zone
+	 */
+	private final String zone;
+	
+	/**
+	 * signal sent while input key is held, empty for output signal
+	 */
+	private final Signal outHold;
+	
+	/**
+	 * signal sent when input key is released, empty for none
+	 */
+	private final Signal outRelease;
+	
+	/**
+	 * signal received while input key is held, empty for none
+	 */
+	private final Signal inHold;
 	
 	
 	/**
@@ -75,10 +103,7 @@ public class SignalRule {
 	 **/
 	public SignalRule(Signal in, Signal out, long delaySend, boolean enabled) 
 	{
-		this.in=in;
-		this.out=out;
-		this.delaySend=delaySend;
-		this.enabled=enabled;
+		this(in, out, delaySend, enabled, null);
 	}
 	
 	/**
@@ -113,6 +138,60 @@ public class SignalRule {
 		this(in, out, 0, enabled);
 	}
 	
+	/**
+	 * Constructor.
+	 * @param in input (received) signal
+	 * @param out output (translated) signal
+	 * @param delaySend Delay time (in millis) to wait before sending (by Arduino) output signal 
+	 * @param if false, output signal won't be sent by Arduino
+	 * @param zone destination zone tag (i.e. "living-room"), null for receiver zone
+	 **/
+	public SignalRule(Signal in, Signal out, long delaySend, boolean enabled, String zone) 
+	{
+		this(in, out, delaySend, enabled, zone, Signal.getEmptySignal(), Signal.getEmptySignal());
+	}
+	
+	/**
+	 * Constructor.
+	 * @param in input (received) signal
+	 * @param out output (translated) signal
+	 * @param delaySend Delay time (in millis) to wait before sending (by Arduino) output signal 
+	 * @param if false, output signal won't be sent by Arduino
+	 * @param zone destination zone tag (i.e. "living-room"), RoutingSignalConverter.ALL_ZONES 
+	 * for all transmitters, null for receiver zone
+	 * @param outHold signal sent while input key is held (i.e. target key down), empty signal to send output signal
+	 * @param outRelease signal sent when input key is released (i.e. target key release), empty signal for none
+	 **/
+	public SignalRule(Signal in, Signal out, long delaySend, boolean enabled, String zone, Signal outHold, Signal outRelease) 
+	{
+		this(in, out, delaySend, enabled, zone, outHold, outRelease, Signal.getEmptySignal());
+	}
+	
+	/**
+	 * Constructor.
+	 * @param in input (received) signal
+	 * @param out output (translated) signal
+	 * @param delaySend Delay time (in millis) to wait before sending (by Arduino) output signal 
+	 * @param if false, output signal won't be sent by Arduino
+	 * @param zone destination zone tag (i.e. "living-room"), RoutingSignalConverter.ALL_ZONES 
+	 * for all transmitters, null for receiver zone
+	 * @param outHold signal sent while input key is held (i.e. target key down), empty signal to send output signal
+	 * @param outRelease signal sent when input key is released (i.e. target key release), empty signal for none
+	 * @param inHold signal received while input key is held (i.e. source key down), empty signal for none. 
+	 * It's not looked up as input signal: it's a repeat of this rule only while its key is held.
+	 **/
+	public SignalRule(Signal in, Signal out, long delaySend, boolean enabled, String zone, Signal outHold, Signal outRelease, Signal inHold) 
+	{
+		this.in=in;
+		this.out=out;
+		this.delaySend=delaySend;
+		this.enabled=enabled;
+		this.zone=zone;
+		this.outHold=outHold;
+		this.outRelease=outRelease;
+		this.inHold=inHold;
+	}
+	
 	/**
 	 * return enabled rule status
 	 */
@@ -120,14 +199,6 @@ public class SignalRule {
 		return enabled;
 	}
 
-	/**
-	 * Enable or disable rule
-	 * @param enabled true for enabled, false for disabled
-	 */
-	public void setEnabled(boolean enabled) {
-		this.enabled = enabled;
-	}
-
 	/**
 	 * get input signal
 	 **/
@@ -142,26 +213,42 @@ public class SignalRule {
 		return out;
 	}
 
-	/**
-	 * set output signal
-	 **/
-	public void setOut(Signal out) {
-		this.out = out;
-	}
-
 	/**
 	 * get delay time (in millis) before sending output signal
 	 **/
 	public long getDelaySend() {
 		return delaySend;
 	}
+	
+	/**
+	 * get destination zone tag, null for receiver zone
+	 * @see RoutingSignalConverter
+	 **/
+	public String getZone() {
+		return zone;
+	}
+	
+	/**
+	 * get signal sent while input key is held, empty for output signal
+	 * @see SignalConverter#setRepeatWindow(long)
+	 **/
+	public Signal getOutHold() {
+		return outHold;
+	}
 
 	/**
-	 * set delay time (in millis) before sending output signal
-	 * @param delaySend value in milliseconds
+	 * get signal sent when input key is released, empty for none
 	 **/
-	public void setDelaySend(long delaySend) {
-		this.delaySend = delaySend;
+	public Signal getOutRelease() {
+		return outRelease;
+	}
+	
+	/**
+	 * get signal received while input key is held, empty for none
+	 * @see SignalConverter#setRepeatWindow(long)
+	 **/
+	public Signal getInHold() {
+		return inHold;
 	}
 	
 	/**
@@ -208,7 +295,21 @@ public class SignalRule {
 	@Override
 	public String toString() {
 		String res="[ IN: "+in.toString()+", OUT: "+out.toString();
-		res+=", DELAY: "+this.delaySend+", ENABLED: "+enabled+" ]";
+		res+=", DELAY: "+this.delaySend+", ENABLED: "+enabled;
+		
+		if (zone!=null)
+			res+=", ZONE: "+zone;
+		
+		if (!outHold.isEmpty())
+			res+=", HOLD: "+outHold;
+		
+		if (!outRelease.isEmpty())
+			res+=", RELEASE: "+outRelease;
+		
+		if (!inHold.isEmpty())
+			res+=", IN HOLD: "+inHold;
+		
+		res+=" ]";
 		return res;
 		
 	}
@@ -0,0 +1,331 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.jirduino.translators;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jirduino.core.Signal;
+import org.jirduino.helpers.HexCodec;
+
+
+/**
+ * Primitive rules index used by SignalRuleTable. Rules are stored into an
+ * open-addressing table keyed by input protocol and input hex value parsed
+ * as 64-bit code, so a lookup for a received signal doesn't allocate.
+ *
+ * Values that can't be parsed as 64-bit hex code (i.e. longer than 16 digits)
+ * are stored into a fallback HashMap, keyed by SignalRule.hashKey().
+ *
+ * @see SignalRuleTable
+ *
+ * @author Emanuele Paiano
+ *
+ * */
+public class SignalRuleIndex {
+
+	/**
+	 * initial slots number (power of two)
+	 * */
+	private static final int INITIAL_CAPACITY=16;
+
+	/**
+	 * input protocols, one for each slot
+	 * */
+	private int[] protocols;
+
+	/**
+	 * input codes, one for each slot
+	 * */
+	private long[] codes;
+
+	/**
+	 * stored rules, null if slot is free
+	 * */
+	private SignalRule[] values;
+
+	/**
+	 * slots number - 1
+	 * */
+	private int mask;
+
+	/**
+	 * rules stored into primitive slots
+	 * */
+	private int size=0;
+
+	/**
+	 * rules with not parsable input value
+	 * */
+	private Map<String, SignalRule> fallback;
+
+
+	/**
+	 * Constructor.
+	 * */
+	public SignalRuleIndex()
+	{
+		allocate(INITIAL_CAPACITY);
+		fallback=new HashMap<String, SignalRule>();
+	}
+
+
+	/**
+	 * Copy constructor. Rules are shared, slots are copied.
+	 * @param other index to copy
+	 * */
+	public SignalRuleIndex(SignalRuleIndex other)
+	{
+		protocols=other.protocols.clone();
+		codes=other.codes.clone();
+		values=other.values.clone();
+		mask=other.mask;
+		size=other.size;
+		fallback=new HashMap<String, SignalRule>(other.fallback);
+	}
+
+
+	/**
+	 * Get rule associated to input protocol and code
+	 * @param protocol input signal protocol
+	 * @param code input signal value as 64-bit code
+	 * @return SignalRule object, null if not exists
+	 * */
+	public SignalRule get(int protocol, long code)
+	{
+		int slot=indexOf(protocol, code);
+
+		while(values[slot]!=null) {
+			if(protocols[slot]==protocol && codes[slot]==code)
+				return values[slot];
+			slot=(slot+1) & mask;
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * Get rule associated to input protocol and hex value
+	 * @param protocol input signal protocol
+	 * @param value input signal hex value
+	 * @return SignalRule object, null if not exists
+	 * */
+	public SignalRule get(int protocol, String value)
+	{
+		if (isIndexable(value))
+			return get(protocol, parseCode(value));
+
+		if (fallback.isEmpty())
+			return null;
+
+		return fallback.get(protocol+value);
+	}
+
+
+	/**
+	 * Store rule, using input signal as key.
+	 * @param rule rule to store
+	 * @return previous rule associated to input signal, null if not exists
+	 * */
+	public SignalRule put(SignalRule rule)
+	{
+		Signal in=rule.getIn();
+
+		if (!in.hasCode())
+			return fallback.put(rule.hashKey(), rule);
+
+		int protocol=in.getProtocol();
+		long code=in.getCode();
+		int slot=indexOf(protocol, code);
+
+		while(values[slot]!=null) {
+			if(protocols[slot]==protocol && codes[slot]==code) {
+				SignalRule previous=values[slot];
+				values[slot]=rule;
+				return previous;
+			}
+			slot=(slot+1) & mask;
+		}
+
+		protocols[slot]=protocol;
+		codes[slot]=code;
+		values[slot]=rule;
+
+		if (++size*2>values.length)
+			resize(values.length*2);
+
+		return null;
+	}
+
+
+	/**
+	 * Remove rule associated to input protocol and hex value
+	 * @param protocol input signal protocol
+	 * @param value input signal hex value
+	 * @return removed rule, null if not exists
+	 * */
+	public SignalRule remove(int protocol, String value)
+	{
+		if (!isIndexable(value))
+			return fallback.remove(protocol+value);
+
+		long code=parseCode(value);
+		int slot=indexOf(protocol, code);
+
+		while(values[slot]!=null) {
+			if(protocols[slot]==protocol && codes[slot]==code) {
+				SignalRule removed=values[slot];
+				shiftBack(slot);
+				size--;
+				return removed;
+			}
+			slot=(slot+1) & mask;
+		}
+
+		return null;
+	}
+
+
+	/**
+	 * @return stored rules number
+	 * */
+	public int size()
+	{
+		return size+fallback.size();
+	}
+
+
+	/**
+	 * @return all stored rules (new list)
+	 * */
+	public List<SignalRule> rules()
+	{
+		List<SignalRule> list=new ArrayList<SignalRule>(size());
+
+		for(SignalRule rule: values)
+			if (rule!=null)
+				list.add(rule);
+
+		list.addAll(fallback.values());
+		return list;
+	}
+
+
+	/**
+	 * Check if a hex value can be stored as 64-bit code
+	 * @param value hex value (i.e. E0E040BF)
+	 * @return true if value has 1 to 16 hex digits, false otherwise
+	 * */
+	public static boolean isIndexable(String value)
+	{
+		return HexCodec.isHex(value);
+	}
+
+
+	/**
+	 * Parse hex value as 64-bit code. Value must be checked with isIndexable() first.
+	 * @param value hex value (i.e. E0E040BF)
+	 * @return code
+	 * */
+	public static long parseCode(String value)
+	{
+		return HexCodec.parseHex(value);
+	}
+
+
+	/**
+	 * first slot for protocol and code
+	 * */
+	private int indexOf(int protocol, long code)
+	{
+		long h=(code ^ ((long)protocol<<56 | protocol)) * 0x9E3779B97F4A7C15L;
+		return (int)(h ^ (h>>>32)) & mask;
+	}
+
+
+	/**
+	 * fill freed slot moving back next rules of same cluster
+	 * */
+	private void shiftBack(int free)
+	{
+		int slot=free;
+
+		while(true) {
+			slot=(slot+1) & mask;
+
+			if (values[slot]==null)
+				break;
+
+			int home=indexOf(protocols[slot], codes[slot]);
+
+			// rule can move only if its home slot is not between free and current slot
+			boolean canMove = free<=slot ? (home<=free || home>slot) : (home<=free && home>slot);
+
+			if (canMove) {
+				protocols[free]=protocols[slot];
+				codes[free]=codes[slot];
+				values[free]=values[slot];
+				free=slot;
+			}
+		}
+
+		values[free]=null;
+	}
+
+
+	/**
+	 * allocate empty slots
+	 * */
+	private void allocate(int capacity)
+	{
+		protocols=new int[capacity];
+		codes=new long[capacity];
+		values=new SignalRule[capacity];
+		mask=capacity-1;
+	}
+
+
+	/**
+	 * move rules into a bigger table
+	 * */
+	private void resize(int capacity)
+	{
+		int[] oldProtocols=protocols;
+		long[] oldCodes=codes;
+		SignalRule[] oldValues=values;
+
+		allocate(capacity);
+
+		for(int i=0;i<oldValues.length;i++) {
+			if (oldValues[i]==null)
+				continue;
+
+			int slot=indexOf(oldProtocols[i], oldCodes[i]);
+
+			while(values[slot]!=null)
+				slot=(slot+1) & mask;
+
+			protocols[slot]=oldProtocols[i];
+			codes[slot]=oldCodes[i];
+			values[slot]=oldValues[i];
+		}
+	}
+
+}
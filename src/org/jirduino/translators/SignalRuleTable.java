@@ -16,8 +16,9 @@
 
 package org.jirduino.translators;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 import org.jirduino.config.ConfigController;
 import org.jirduino.core.Signal;
@@ -26,23 +27,58 @@ import org.jirduino.helpers.JIRduinoHelper;
 
 /**
  * Signals translation table. It will contain rules needed to translate
- * signal, stored into HashMap: input protocol and value are used to 
- * generate hash key for SignalRule Object.
+ * signal, stored into a primitive index: input protocol and value (parsed
+ * as 64-bit code) are used as key for SignalRule Object.
+ * 
+ * Table is copy-on-write: readers use current index snapshot without locking,
+ * while writers copy it, apply changes and publish new snapshot. So editing
+ * rules never stops a running SignalConverter. For many changes use bulk methods
+ * (i.e. addRules()), they publish a single snapshot.
  * @see SignalRule   
+ * @see SignalRuleIndex
  * 
  * @author Emanuele Paiano
  * 
  * */
 public class SignalRuleTable {
 	
-	private Map<String, SignalRule> rules;
+	/**
+	 * current rules snapshot, never modified after publishing
+	 * */
+	private volatile SignalRuleIndex rules;
 	
 	/**
 	 * Constructor. 
 	 * */
 	public SignalRuleTable() 
 	{
-		rules=new LinkedHashMap<String, SignalRule>();
+		rules=new SignalRuleIndex();
+	}
+	
+	/**
+	 * Lookup rule associated to input protocol and code. It doesn't allocate,
+	 * so it should be used while receiving signals.
+	 * @param inProtocol input signal protocol
+	 * @param inCode input signal value as 64-bit code (i.e. 0xE0E040BFL)
+	 * @return SignalRule object, null if not exists
+	 * */
+	public SignalRule lookup(int inProtocol, long inCode) 
+	{
+		return rules.get(inProtocol, inCode);
+	}
+	
+	/**
+	 * Lookup rule associated to input signal. It doesn't allocate
+	 * for values up to 64 bits.
+	 * @param in input signal
+	 * @return SignalRule object, null if not exists
+	 * */
+	public SignalRule lookup(Signal in) 
+	{
+		if (in.hasCode())
+			return rules.get(in.getProtocol(), in.getCode());
+		
+		return rules.get(in.getProtocol(), in.getValue());
 	}
 	
 	/**
@@ -53,21 +89,28 @@ public class SignalRuleTable {
 	 * */
 	public SignalRule getRule(int inProtocol, String inValue) 
 	{
-		return getRule(inProtocol+inValue);	
+		SignalRule rule=rules.get(inProtocol, inValue);
+		
+		if (rule!=null)
+			return rule;
+		else
+			return SignalRule.getEmptySignalRule();
 	}
 	
 	
 	/**
 	 * Get stored rule associated to input protocol and value.
-	 * @param key key to recover rules from hashmap 
+	 * It scans all rules, use getRule(int, String) or lookup() instead.
+	 * @param key key to recover rules (see SignalRule.hashKey()) 
 	 * @return SignalRule object
 	 * */
 	public SignalRule getRule(String key) 
 	{
-		if (rules.containsKey(key))
-			return rules.get(key);
-		else
-			return SignalRule.getEmptySignalRule();
+		for(SignalRule rule: rules.rules())
+			if (rule.hashKey().equals(key))
+				return rule;
+		
+		return SignalRule.getEmptySignalRule();
 		
 	}	
 	
@@ -78,23 +121,83 @@ public class SignalRuleTable {
 	 * */
 	public SignalRule getRule(Signal in) 
 	{
-		return getRule(in.getProtocol()+in.getValue());		
+		return getRule(in.getProtocol(), in.getValue());		
 	}	
 	
 
 	/**
-	 * Add rule to table
+	 * Add rule to table. Each call copies the table: use addRules() for many rules.
 	 * @param rule signal rule to store
 	 * @return SignalRule object
 	 * */
 	public synchronized SignalRule addRule(SignalRule rule) 
 	{
-		if (!match(rule.getIn().getProtocol(),rule.getIn().getValue())) 
-			return rules.put(rule.hashKey(), rule);
-		else 
+		if (!match(rule.getIn().getProtocol(),rule.getIn().getValue())) {
+			SignalRuleIndex next=new SignalRuleIndex(rules);
+			SignalRule previous=next.put(rule);
+			rules=next;
+			return previous;
+		}else 
 			return new SignalRule(Signal.getEmptySignal(), Signal.getEmptySignal(), false);
 	}
 	
+	
+	/**
+	 * Add rules to table, publishing them at the same time. 
+	 * Rules with already stored input signal are skipped.
+	 * @param newRules signal rules to store
+	 * @return added rules number
+	 * */
+	public synchronized int addRules(Collection<SignalRule> newRules) 
+	{
+		SignalRuleIndex next=new SignalRuleIndex(rules);
+		int added=0;
+		
+		for(SignalRule rule: newRules) {
+			if (next.get(rule.getIn().getProtocol(), rule.getIn().getValue())==null) {
+				next.put(rule);
+				added++;
+			}
+		}
+		
+		rules=next;
+		return added;
+	}
+	
+	
+	/**
+	 * Add rule to table, replacing stored rule with same input signal.
+	 * Rules are immutable, so it's the way to change a stored rule.
+	 * @param rule signal rule to store
+	 * @return replaced rule, empty rule if not exists
+	 * */
+	public synchronized SignalRule replaceRule(SignalRule rule) 
+	{
+		SignalRuleIndex next=new SignalRuleIndex(rules);
+		SignalRule previous=next.put(rule);
+		rules=next;
+		
+		if (previous!=null)
+			return previous;
+		
+		return SignalRule.getEmptySignalRule();
+	}
+	
+	
+	/**
+	 * Replace all rules into table, publishing them at the same time.
+	 * @param newRules signal rules to store
+	 * */
+	public synchronized void setRules(Collection<SignalRule> newRules) 
+	{
+		SignalRuleIndex next=new SignalRuleIndex();
+		
+		for(SignalRule rule: newRules)
+			next.put(rule);
+		
+		rules=next;
+	}
+	
 	/**
 	 * Add rule to table
 	 * @param in input signal to translate (i.e. new Signal(Protocols.NEC, "FFEA15", 32))
@@ -158,9 +261,9 @@ public class SignalRuleTable {
 	 * @return true if exists, false otherwise
 	 * 
 	 * */
-	public synchronized boolean match(SignalRule rule) 
+	public boolean match(SignalRule rule) 
 	{
-		return rules.containsKey(rule.hashKey());
+		return match(rule.getIn());
 	}
 	
 	
@@ -172,7 +275,7 @@ public class SignalRuleTable {
 	 * */
 	public boolean match(Signal in) 
 	{
-		return rules.containsKey(in.getProtocol()+in.getValue());
+		return lookup(in)!=null;
 	}
 	
 	
@@ -185,7 +288,7 @@ public class SignalRuleTable {
 	 * */
 	public boolean match(int inProtocol, String inValue) 
 	{
-		return rules.containsKey(inProtocol+inValue);
+		return rules.get(inProtocol, inValue)!=null;
 	}
 	
 	/**
@@ -197,8 +300,12 @@ public class SignalRuleTable {
 	 * */
 	public synchronized SignalRule removeRule(int inProtocol, String inValue) 
 	{
-		if(this.match(inProtocol, inValue)) 
-			return rules.remove(inProtocol+inValue);
+		if(this.match(inProtocol, inValue)) {
+			SignalRuleIndex next=new SignalRuleIndex(rules);
+			SignalRule removed=next.remove(inProtocol, inValue);
+			rules=next;
+			return removed;
+		}
 		
 		return SignalRule.getEmptySignalRule();
 	}
@@ -216,6 +323,53 @@ public class SignalRuleTable {
 	}
 	
 	
+	/**
+	 * Remove rules containing given input signals, publishing changes at the same time.
+	 * @param inputs signals contained into remove-candidate rules  
+	 * @return removed rules number
+	 * 
+	 * */
+	public synchronized int removeRules(Collection<Signal> inputs) 
+	{
+		SignalRuleIndex next=new SignalRuleIndex(rules);
+		int removed=0;
+		
+		for(Signal in: inputs)
+			if (next.remove(in.getProtocol(), in.getValue())!=null)
+				removed++;
+		
+		rules=next;
+		return removed;
+	}
+	
+	
+	/**
+	 * Remove all rules
+	 * */
+	public synchronized void clear() 
+	{
+		rules=new SignalRuleIndex();
+	}
+	
+	
+	/**
+	 * @return read-only list of rules stored into current snapshot
+	 * */
+	public List<SignalRule> getRules() 
+	{
+		return Collections.unmodifiableList(rules.rules());
+	}
+	
+	
+	/**
+	 * @return stored rules number
+	 * */
+	public int size() 
+	{
+		return rules.size();
+	}
+	
+	
 	/**
 	 * Generate Rule Table from input config remotes. For each key into target controller
 	 * it associate same source controller key. All keys commons will be translated.
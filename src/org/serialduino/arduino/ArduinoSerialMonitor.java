@@ -16,11 +16,19 @@
 
 package org.serialduino.arduino;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.serialduino.drivers.LineConsumer;
 import org.serialduino.drivers.LinkDevice;
 import org.serialduino.settings.DefaultArduinoSerialMonitor;
 
 /**
- * SerialDuino. Arduino serial monitor
+ * SerialDuino. Arduino serial monitor. Incoming data is read from link 
+ * port with a single call for all available bytes: bytes following a 
+ * requested termination char are kept for next receiving calls.
+ * Data is moved through reusable byte buffers (LinkDevice ByteBuffer API), 
+ * strings are created only when returned to caller.
  * @author Emanuele Paiano 
  * https://emanuelepaiano.github.io
  * @see DefaultArduinoSerialMonitor
@@ -32,6 +40,11 @@ public class ArduinoSerialMonitor {
 	 **/
 	private String end_with=DefaultArduinoSerialMonitor.END_WITH;
 	
+	/**
+	 * end_with bytes
+	 * */
+	private ByteBuffer endBytes=encode(end_with);
+	
 	
 	
 	/**
@@ -62,6 +75,23 @@ public class ArduinoSerialMonitor {
 	 * */
 	private LinkDevice port;
 	
+	/**
+	 * bytes read from port and not yet returned, from 0 to position
+	 * */
+	private ByteBuffer pending=ByteBuffer.allocate(256);
+	
+	/**
+	 * reusable sending buffer, guarded by sendLock
+	 * */
+	private ByteBuffer output=ByteBuffer.allocate(64);
+	
+	/**
+	 * reusable gather buffers (data and end chars), guarded by sendLock
+	 * */
+	private final ByteBuffer[] frame=new ByteBuffer[2];
+	
+	private final Object sendLock=new Object();
+	
 	
 	/**
 	 *  Constructor 
@@ -81,8 +111,49 @@ public class ArduinoSerialMonitor {
 	public int send(String data)
 	{
 		if (port.isReady()){
-				this.port.write(data+end_with);
-				return data.length();
+			synchronized (sendLock) {
+				int length=data.length()+end_with.length();
+				
+				if (output.capacity()<length)
+					output=ByteBuffer.allocate(Math.max(length, output.capacity()*2));
+				
+				output.clear();
+				for(int i=0;i<data.length();i++)
+					output.put((byte)data.charAt(i));
+				for(int i=0;i<end_with.length();i++)
+					output.put((byte)end_with.charAt(i));
+				output.flip();
+				
+				if (this.port.write(output)<0)
+					return -1;
+			}
+			return data.length();
+		}
+		return -1;
+	}
+	
+	
+	/**
+	 * Send buffer remaining bytes with ENDCHAR (see setEndChar() method), 
+	 * as a single gathering write
+	 * @param data bytes to send, position is moved after sent bytes
+	 * @return sent bytes number (without ENDCHAR) if success, -1 otherwise
+	 * */
+	public int send(ByteBuffer data)
+	{
+		if (port.isReady()){
+			synchronized (sendLock) {
+				int length=data.remaining();
+				
+				frame[0]=data;
+				frame[1]=endBytes;
+				endBytes.rewind();
+				
+				long written=this.port.write(frame);
+				frame[0]=null;
+				
+				return written<0 ? -1 : length;
+			}
 		}
 		return -1;
 	}
@@ -93,13 +164,13 @@ public class ArduinoSerialMonitor {
 	 * @return single char
 	 * 
 	 * */
-	public String receiveChar()
+	public synchronized String receiveChar()
 	{	
 		String tmp=null;
 		if (port.isReady())
 		{
-			if (bufferAvailable())	
-					tmp=port.read(1);
+			if (fill())
+				tmp=take(1, 1);
 			
 		}
 		return tmp;
@@ -123,19 +194,16 @@ public class ArduinoSerialMonitor {
 	 * @return string sent from arduino
 	 * 
 	 * */
-	public String receiveUntil(char ch)
+	public synchronized String receiveUntil(char ch)
 	{	
 		String tmp=null;
 		
-		if (port.isReady() && bufferAvailable())
+		if (port.isReady() && fill())
 		{
-			tmp="";
-			while(bufferAvailable()){
-				String current=receiveChar();
-				tmp+=current;
-				if(current.toCharArray()[0]==ch)
-					break;
-			}
+			int end=indexOf(ch);
+			end = end<0 ? pending.position() : end+1;
+			
+			tmp=take(end, end);
 		}
 		return tmp;
 	}
@@ -147,23 +215,170 @@ public class ArduinoSerialMonitor {
 	 * @return string sent from arduino
 	 * 
 	 * */
-	public String receive()
+	public synchronized String receive()
 	{	
 		String tmp=null;
 		
-		if (port.isReady() && bufferAvailable())
+		if (port.isReady() && fill())
 		{
-			tmp="";
-			while(bufferAvailable()){
-				String current=receiveChar();
-				if(!current.contains(this.end_with))
-					tmp+=current;
+			// single received chars are discarded only if they match whole end_with
+			if (end_with.length()==1) {
+				byte end=(byte)end_with.charAt(0);
+				byte[] bytes=pending.array();
+				int j=0;
+				
+				for(int i=0;i<pending.position();i++)
+					if (bytes[i]!=end)
+						bytes[j++]=bytes[i];
+				
+				pending.position(j);
 			}
+			
+			tmp=take(pending.position(), pending.position());
 		}
 		return tmp;
 	}
 	
 	
+	/**
+	 * move all available data from port to pending buffer
+	 * @return true if pending buffer is not empty, false otherwise
+	 * */
+	private boolean fill()
+	{
+		while(port.bufferAvailable()) {
+			if (!pending.hasRemaining()) {
+				ByteBuffer bigger=ByteBuffer.allocate(pending.capacity()*2);
+				pending.flip();
+				bigger.put(pending);
+				pending=bigger;
+			}
+			
+			if (port.read(pending)<=0)
+				break;
+		}
+		
+		return pending.position()>0;
+	}
+	
+	
+	/**
+	 * @return first ch position into pending buffer, -1 if not found
+	 * */
+	private int indexOf(char ch)
+	{
+		byte[] bytes=pending.array();
+		
+		for(int i=0;i<pending.position();i++)
+			if (bytes[i]==(byte)ch)
+				return i;
+		
+		return -1;
+	}
+	
+	
+	/**
+	 * remove first pending bytes, returning some of them as string
+	 * @param textLength bytes number to return
+	 * @param length bytes number to remove
+	 * */
+	private String take(int textLength, int length)
+	{
+		byte[] bytes=pending.array();
+		String text=new String(bytes, 0, textLength, StandardCharsets.ISO_8859_1);
+		
+		int rest=pending.position()-length;
+		System.arraycopy(bytes, length, bytes, 0, rest);
+		pending.position(rest);
+		
+		return text;
+	}
+	
+	
+	/**
+	 * @return string bytes, as sent to port
+	 * */
+	private static ByteBuffer encode(String data)
+	{
+		return ByteBuffer.wrap(data.getBytes(StandardCharsets.ISO_8859_1));
+	}
+	
+	
+	/**
+	 * wait for a complete line from Arduino, without reading it
+	 * @param timeout max waiting time in millis, 0 to wait forever
+	 * @return true if a line can be read, false otherwise
+	 * 
+	 * */
+	public boolean awaitLine(long timeout)
+	{
+		synchronized (this) {
+			if (indexOf('\n')>=0)
+				return true;
+		}
+		
+		return port.awaitLine(timeout);
+	}
+	
+	
+	/**
+	 * receive a complete line from Arduino
+	 * @return line without "\r\n", null if there isn't a complete line
+	 * 
+	 * */
+	public synchronized String receiveLine()
+	{
+		if (!port.isReady())
+			return null;
+		
+		if (pending.position()==0)
+			return port.readLine();
+		
+		int end=indexOf('\n');
+		
+		if (end<0) {
+			// pending data is the beginning of next port line 
+			String rest=port.readLine();
+			if (rest==null)
+				return null;
+			
+			String line=take(pending.position(), pending.position())+rest;
+			return line.endsWith("\r") ? line.substring(0, line.length()-1) : line;
+		}
+		
+		int textEnd = (end>0 && pending.get(end-1)=='\r') ? end-1 : end;
+		return take(textEnd, end+1);
+	}
+	
+	
+	/**
+	 * hand a complete line from Arduino to consumer. Line is a view over
+	 * receiving buffer, so no string is allocated by port drivers based on LineFramer.
+	 * @param consumer line consumer
+	 * @return true if a line has been consumed, false otherwise
+	 * 
+	 * */
+	public boolean receiveLine(LineConsumer consumer)
+	{
+		if (!port.isReady())
+			return false;
+		
+		synchronized (this) {
+			if (pending.position()>0) {
+				String line=receiveLine();
+				
+				if (line==null)
+					return false;
+				
+				consumer.onLine(line);
+				return true;
+			}
+		}
+		
+		return port.readLine(consumer);
+	}
+	
+	
 	/**
 	 * Open connection on port and wait 2 seconds for Arduino Boot
 	 * @return true if success, false otherwise
@@ -198,7 +413,10 @@ public class ArduinoSerialMonitor {
 	public boolean setEndChar(String endCh)
 	{
 		if(!isReady()){
-			this.end_with=endCh;
+			synchronized (sendLock) {
+				this.end_with=endCh;
+				this.endBytes=encode(endCh);
+			}
 			return true;
 		}else{
 			return false;
@@ -218,9 +436,9 @@ public class ArduinoSerialMonitor {
 	/**
 	 * @return true if buffer not empty, false otherwise
 	 * */
-	public boolean bufferAvailable()
+	public synchronized boolean bufferAvailable()
 	{
-		return port.bufferAvailable();
+		return pending.position()>0 || port.bufferAvailable();
 	}
 
 }
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import org.serialduino.arduino.ArduinoSerialMonitor;
+import org.serialduino.drivers.LineConsumer;
+import org.serialduino.drivers.LineFramer;
+import org.serialduino.drivers.LinkDevice;
+
+/**
+ * ArduinoSerialMonitor receiving benchmark. It compares the old char by char
+ * receiving (read(1) and string concatenation) with framed receiving,
+ * printing time and allocated bytes for each received frame.
+ *
+ * Use: java org.serialduino.benchmarks.SerialMonitorBenchmark [frames]
+ *
+ * @author Emanuele Paiano
+ * https://emanuelepaiano.github.io
+ * */
+public class SerialMonitorBenchmark {
+
+	/**
+	 * IRLib2 sketch received-IR frame
+	 * */
+	private static final byte[] FRAME="E0E040BF,7,32\r\n".getBytes();
+
+	private static final int ROUNDS=5;
+
+	private static final com.sun.management.ThreadMXBean threads=
+			(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+	/**
+	 * prevents dead code elimination
+	 * */
+	private static long sink=0;
+
+
+	public static void main(String[] args) {
+		int frames=args.length>0 ? Integer.parseInt(args[0]) : 200000;
+
+		System.out.println("frames: "+frames+", frame: "+(FRAME.length)+" bytes");
+		System.out.println("");
+
+		for(int round=1;round<=ROUNDS;round++) {
+			boolean last=round==ROUNDS;
+			run("legacy read(1) + concat", new LegacyPath(), frames, last);
+			run("receiveUntil('\\n')", new UntilPath(), frames, last);
+			run("receiveLine()", new LinePath(), frames, last);
+			run("receiveLine(consumer)", new ConsumerPath(), frames, last);
+		}
+
+		if (sink==42)
+			System.out.println("");
+	}
+
+
+	/**
+	 * run a receiving path, printing results if print is true
+	 * */
+	private static void run(String name, Path path, int frames, boolean print) {
+		BufferedLink link=new BufferedLink();
+		ArduinoSerialMonitor arduino=new ArduinoSerialMonitor(link);
+
+		long bytes=threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		long start=System.nanoTime();
+
+		for(int i=0;i<frames;i++) {
+			link.input.feed(FRAME, 0, FRAME.length);
+			sink+=path.receive(arduino, link);
+		}
+
+		long elapsed=System.nanoTime()-start;
+		bytes=threads.getThreadAllocatedBytes(Thread.currentThread().getId())-bytes;
+
+		if (print)
+			System.out.println(String.format("%-26s %8.1f ns/frame %10.0f frames/s %8.1f B/frame",
+					name, (double)elapsed/frames, frames*1e9/elapsed, (double)bytes/frames));
+	}
+
+
+	/**
+	 * a receiving path, returns received length
+	 * */
+	private interface Path {
+		public int receive(ArduinoSerialMonitor arduino, LinkDevice port);
+	}
+
+
+	/**
+	 * receiving as done before framing: one read(1) for each char
+	 * */
+	private static class LegacyPath implements Path {
+		@Override
+		public int receive(ArduinoSerialMonitor arduino, LinkDevice port) {
+			String tmp="";
+			while(port.bufferAvailable()){
+				String current=port.read(1);
+				tmp+=current;
+				if(current.toCharArray()[0]=='\n')
+					break;
+			}
+			return tmp.length();
+		}
+	}
+
+	private static class UntilPath implements Path {
+		@Override
+		public int receive(ArduinoSerialMonitor arduino, LinkDevice port) {
+			return arduino.receiveUntil('\n').length();
+		}
+	}
+
+	private static class LinePath implements Path {
+		@Override
+		public int receive(ArduinoSerialMonitor arduino, LinkDevice port) {
+			return arduino.receiveLine().length();
+		}
+	}
+
+	private static class ConsumerPath implements Path, LineConsumer {
+
+		private int length;
+
+		@Override
+		public int receive(ArduinoSerialMonitor arduino, LinkDevice port) {
+			arduino.receiveLine(this);
+			return length;
+		}
+
+		@Override
+		public void onLine(CharSequence line) {
+			length=line.length();
+		}
+	}
+
+
+	/**
+	 * in-memory link, buffered like ComLinkDevice
+	 * */
+	private static class BufferedLink implements LinkDevice {
+
+		private final LineFramer input=new LineFramer();
+
+		@Override
+		public int write(String data) {
+			return data.length();
+		}
+
+		@Override
+		public int write(ByteBuffer data) {
+			int length=data.remaining();
+			data.position(data.limit());
+			return length;
+		}
+
+		@Override
+		public long write(ByteBuffer[] data) {
+			long length=0;
+			for(ByteBuffer buffer: data)
+				length+=write(buffer);
+			return length;
+		}
+
+		@Override
+		public String read(int bytes) {
+			return input.read(bytes);
+		}
+
+		@Override
+		public int read(ByteBuffer data) {
+			return input.read(data);
+		}
+
+		@Override
+		public long read(ByteBuffer[] data) {
+			return input.read(data);
+		}
+
+		@Override
+		public String read() {
+			return input.read();
+		}
+
+		@Override
+		public boolean awaitLine(long timeout) {
+			return input.awaitLine(timeout);
+		}
+
+		@Override
+		public String readLine() {
+			return input.readLine();
+		}
+
+		@Override
+		public boolean readLine(LineConsumer consumer) {
+			return input.readLine(consumer);
+		}
+
+		@Override
+		public boolean open() {
+			return true;
+		}
+
+		@Override
+		public boolean close() {
+			input.close();
+			return true;
+		}
+
+		@Override
+		public boolean isReady() {
+			return true;
+		}
+
+		@Override
+		public boolean bufferAvailable() {
+			return input.available()>0;
+		}
+
+		@Override
+		public Object getDevice() {
+			return input;
+		}
+	}
+
+}
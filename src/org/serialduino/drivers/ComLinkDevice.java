@@ -16,15 +16,29 @@
 
 package org.serialduino.drivers;
 
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
 import org.serialduino.settings.DefaultComLinkDevice;
 import org.serialduino.settings.DefaultLinkDevice;
 
 import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
 import jssc.SerialPortException;
 import jssc.SerialPortList;
 
 /**
- * SerialDuino COM/TTY Port driver
+ * SerialDuino COM/TTY Port driver. Incoming bytes are read by jssc event 
+ * thread (RXCHAR events) into a LineFramer, so readers waiting for a line
+ * are woken up as soon as it is received.
+ * 
+ * Written data is queued and sent by a writer thread: data queued while 
+ * a write is in progress is coalesced into next single jssc write. Writer 
+ * waits for the time needed by the line to send written bytes, computed 
+ * from baud rate, before next write. Use flush() to wait for sending.
  * @author Emanuele Paiano 
  * https://emanuelepaiano.github.io
  * */
@@ -125,6 +139,52 @@ public class ComLinkDevice implements LinkDevice{
 	 * */
 	private int baudRate=SerialPort.BAUDRATE_9600;	
 	
+	/**
+	 * received bytes, filled by RXCHAR events 
+	 * */
+	private LineFramer input=new LineFramer();
+	
+	/**
+	 * bits sent on the line for each byte (8N1: start bit, 8 data bits, stop bit)
+	 * */
+	private static final int BITS_PER_BYTE=10;
+	
+	/**
+	 * reusable output array, jssc writes whole arrays only
+	 * */
+	private byte[] output=new byte[0];
+	
+	/**
+	 * data waiting for writer thread, from 0 to position. Guarded by outLock
+	 * */
+	private ByteBuffer queued=ByteBuffer.allocate(256);
+	
+	/**
+	 * bytes taken by writer thread and not yet sent on the line, guarded by outLock
+	 * */
+	private int writing=0;
+	
+	private final ReentrantLock outLock=new ReentrantLock();
+	
+	/**
+	 * signaled when data is queued
+	 * */
+	private final Condition outReady=outLock.newCondition();
+	
+	/**
+	 * signaled when queued data is taken or sent
+	 * */
+	private final Condition outSpace=outLock.newCondition();
+	
+	private volatile boolean writerRunning=false;
+	
+	/**
+	 * true if a write failed, next writes fail until port is opened again
+	 * */
+	private volatile boolean writeFailed=false;
+	
+	private Thread writer;
+	
 	
 	/**
 	 * Constructor.
@@ -138,29 +198,198 @@ public class ComLinkDevice implements LinkDevice{
 	}
 	
 	/**
-	 * Write data to Serial Port
-	 * @return written bytes number if success, -1 otherwise
-	 * @throws SerialPortException
-	 * @throws InterruptedException
+	 * Queue data for writer thread
+	 * @return queued bytes number if success, -1 otherwise
 	 * */
 	@Override
 	public int write(String data) {
-		if (isReady()) 
-		{
+		int length=data.length();
+		
+		if (!reserve(length))
+			return -1;
+		
+		try {
+			for(int i=0;i<length;i++)
+				queued.put((byte)data.charAt(i));
+			outReady.signal();
+		} finally {
+			outLock.unlock();
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Queue buffer remaining bytes for writer thread
+	 * @return queued bytes number if success, -1 otherwise
+	 * */
+	@Override
+	public int write(ByteBuffer data) {
+		int length=data.remaining();
+		
+		if (!reserve(length))
+			return -1;
+		
+		try {
+			queued.put(data);
+			outReady.signal();
+		} finally {
+			outLock.unlock();
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Queue buffers remaining bytes for writer thread
+	 * @return queued bytes number if success, -1 otherwise
+	 * */
+	@Override
+	public long write(ByteBuffer[] data) {
+		int length=0;
+		for(ByteBuffer buffer: data)
+			length+=buffer.remaining();
+		
+		if (!reserve(length))
+			return -1;
+		
+		try {
+			for(ByteBuffer buffer: data)
+				queued.put(buffer);
+			outReady.signal();
+		} finally {
+			outLock.unlock();
+		}
+		
+		return length;
+	}
+	
+	/**
+	 * Wait until queued data has been sent on the line
+	 * @return true if success, false if port is closed or a write failed
+	 * */
+	public boolean flush() {
+		outLock.lock();
+		try {
+			while((queued.position()>0 || writing>0) && writerRunning && !writeFailed)
+				outSpace.await();
+			
+			return !writeFailed;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			outLock.unlock();
+		}
+	}
+	
+	/**
+	 * Take output lock and make room for data, waiting for writer thread 
+	 * if queue is full. Output lock is held only if true is returned.
+	 * */
+	private boolean reserve(int length) {
+		if (!isReady() || writeFailed)
+			return false;
+		
+		outLock.lock();
+		try {
+			while(queued.position()>0 && queued.position()+length>DefaultComLinkDevice.MAX_QUEUED_BYTES 
+					&& writerRunning && !writeFailed)
+				outSpace.await();
+			
+			if (!writerRunning || writeFailed) {
+				outLock.unlock();
+				return false;
+			}
+			
+			if (queued.remaining()<length) {
+				ByteBuffer bigger=ByteBuffer.allocate(Math.max(queued.position()+length, queued.capacity()*2));
+				queued.flip();
+				bigger.put(queued);
+				queued=bigger;
+			}
+			
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			outLock.unlock();
+			return false;
+		}
+	}
+	
+	/**
+	 * writer thread loop: all queued data is sent with a single jssc write
+	 * */
+	private void writeLoop() {
+		ByteBuffer spare=ByteBuffer.allocate(queued.capacity());
+		
+		while(true) {
+			ByteBuffer taken;
+			
+			outLock.lock();
 			try {
-				port.writeString(data);
-				while(port.getOutputBufferBytesCount()>0)
-					try {
-						Thread.sleep(DefaultComLinkDevice.DELAY_SEND);
-					} catch (InterruptedException e) {
-						if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
-					}
-				return data.length();
+				while(queued.position()==0 && writerRunning)
+					outReady.await();
+				
+				if (!writerRunning)
+					return;
+				
+				// writers go on with spare buffer meanwhile
+				taken=queued;
+				queued=spare;
+				writing=taken.position();
+				outSpace.signalAll();
+			} catch (InterruptedException e) {
+				return;
+			} finally {
+				outLock.unlock();
+			}
+			
+			byte[] bytes=outputArray(taken.position());
+			taken.flip();
+			taken.get(bytes);
+			taken.clear();
+			spare=taken;
+			
+			try {
+				port.writeBytes(bytes);
+				drain(bytes.length);
 			} catch (SerialPortException e) {
+				writeFailed=true;
 				if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
 			}
+			
+			outLock.lock();
+			try {
+				writing=0;
+				outSpace.signalAll();
+			} finally {
+				outLock.unlock();
+			}
 		}
-		return -1;
+	}
+	
+	/**
+	 * wait for written bytes to be sent on the line: waiting time is 
+	 * computed from baud rate, then checked on output buffer
+	 * */
+	private void drain(int length) throws SerialPortException {
+		long byteTime=BITS_PER_BYTE*1000000000L/baudRate;
+		
+		LockSupport.parkNanos(length*byteTime);
+		
+		int left;
+		while((left=port.getOutputBufferBytesCount())>0 && writerRunning)
+			LockSupport.parkNanos(left*byteTime);
+	}
+	
+	/**
+	 * reusable output array of given length, used by writer thread only
+	 * */
+	private byte[] outputArray(int length) {
+		if (output.length!=length)
+			output=new byte[length];
+		return output;
 	}
 
 	/**
@@ -171,16 +400,9 @@ public class ComLinkDevice implements LinkDevice{
 	 * */
 	@Override
 	public String read(int bytes) {
-		String temp;
 		if (isReady() && bufferAvailable()) 
-		{
-			try {
-				temp=port.readString(bytes);
-				return temp;
-			} catch (SerialPortException e) {
-				if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
-			}
-		}
+			return input.read(bytes);
+		
 		return null;
 	}
 
@@ -191,19 +413,46 @@ public class ComLinkDevice implements LinkDevice{
 	 * */
 	@Override
 	public String read() {
-		String temp;
 		if (this.isReady()  && bufferAvailable()) 
-		{
-			try {
-				temp=port.readString();
-				return temp;
-			} catch (SerialPortException e) {
-				if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
-			}
-		}
+			return input.read();
+		
 		return null;
 	}
 	
+	@Override
+	public int read(ByteBuffer data) {
+		if (isReady())
+			return input.read(data);
+		
+		return -1;
+	}
+	
+	@Override
+	public long read(ByteBuffer[] data) {
+		if (isReady())
+			return input.read(data);
+		
+		return -1;
+	}
+	
+	@Override
+	public boolean awaitLine(long timeout) {
+		if (isReady())
+			return input.awaitLine(timeout);
+		
+		return false;
+	}
+	
+	@Override
+	public String readLine() {
+		return input.readLine();
+	}
+	
+	@Override
+	public boolean readLine(LineConsumer consumer) {
+		return input.readLine(consumer);
+	}
+	
 	/**
 	 * Open a connection to serial port
 	 * @return true if success, false otherwise
@@ -215,6 +464,9 @@ public class ComLinkDevice implements LinkDevice{
 			boolean res=port.openPort();
 			if (res){
 				this.port.setParams(this.baudRate, DATABITS_8, STOPBITS_1, PARITY_NONE);
+				input.clear();
+				this.port.addEventListener(new RxListener(), SerialPort.MASK_RXCHAR);
+				startWriter();
 				return res;
 			}
 		} catch (SerialPortException e) {
@@ -231,7 +483,15 @@ public class ComLinkDevice implements LinkDevice{
 	 * */
 	@Override
 	public boolean close() {
+		// queued commands are sent before closing
+		if (writerRunning)
+			flush();
+		stopWriter();
+		
+		input.close();
 		try {
+			if (port.isOpened())
+				port.removeEventListener();
 			return port.closePort();
 		} catch (SerialPortException e) {
 			if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
@@ -239,6 +499,47 @@ public class ComLinkDevice implements LinkDevice{
 		return false;
 	}
 
+	/**
+	 * start writer thread, discarding data queued before
+	 * */
+	private void startWriter() {
+		outLock.lock();
+		try {
+			queued.clear();
+			writing=0;
+			writeFailed=false;
+			writerRunning=true;
+		} finally {
+			outLock.unlock();
+		}
+		
+		writer=new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "ComLinkDevice-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/**
+	 * stop writer thread, waking up waiting writers
+	 * */
+	private void stopWriter() {
+		outLock.lock();
+		try {
+			writerRunning=false;
+			outReady.signalAll();
+			outSpace.signalAll();
+		} finally {
+			outLock.unlock();
+		}
+		
+		if (writer!=null && writer!=Thread.currentThread())
+			writer.interrupt();
+	}
+
 	/**
 	 * @return port device list
 	 * */
@@ -263,12 +564,7 @@ public class ComLinkDevice implements LinkDevice{
 
 	@Override
 	public boolean bufferAvailable() {
-		try {
-			return port.getInputBufferBytesCount()>0;
-		} catch (SerialPortException e) {
-			if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
-			return false;
-		}
+		return input.available()>0;
 	}
 
 	@Override
@@ -302,5 +598,25 @@ public class ComLinkDevice implements LinkDevice{
 		}
 		return null;
 	}
+	
+	
+	/**
+	 * Move received bytes into input framer
+	 * */
+	private class RxListener implements SerialPortEventListener {
+		
+		@Override
+		public void serialEvent(SerialPortEvent event) {
+			if (event.isRXCHAR() && event.getEventValue()>0) {
+				try {
+					byte[] data=port.readBytes(event.getEventValue());
+					if (data!=null)
+						input.feed(data, 0, data.length);
+				} catch (SerialPortException e) {
+					if (DefaultLinkDevice.VERBOSE_MODE) logger.severe(e.getMessage());
+				}
+			}
+		}
+	}
 
 }
@@ -0,0 +1,34 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+/**
+ * SerialDuino received lines consumer. 
+ * @author Emanuele Paiano 
+ * https://emanuelepaiano.github.io
+ * @see LineFramer
+ * */
+public interface LineConsumer {
+	
+	/**
+	 * called for a complete received line. Line is a view over receiving
+	 * buffer: it is valid only inside this call, use toString() to keep it.
+	 * @param line received line without "\r\n"
+	 * */
+	public void onLine(CharSequence line);
+
+}
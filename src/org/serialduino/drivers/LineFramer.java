@@ -0,0 +1,653 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.serialduino.settings.DefaultLinkDevice;
+
+/**
+ * SerialDuino input line framer. Received bytes are stored into a ring buffer,
+ * complete lines (ending with terminator char) are handed to readers.
+ * Threads waiting for a line are woken as soon as terminator is received.
+ * Lines can be read as String or handed to a LineConsumer as a reusable
+ * view over ring, without allocations.
+ * Ring grows up to DefaultLinkDevice.MAX_LINE_BUFFER_SIZE: past it, the
+ * partial line is dropped (with its bytes still to come) or, if there
+ * isn't one, oldest unread lines are dropped.
+ * @author Emanuele Paiano
+ * https://emanuelepaiano.github.io
+ * */
+public class LineFramer {
+
+	/**
+	 * initial ring size (power of two)
+	 * */
+	private static final int INITIAL_CAPACITY=256;
+
+	/**
+	 * max ring size (power of two)
+	 * */
+	private final int maxCapacity;
+
+	/**
+	 * line termination byte
+	 * */
+	private final byte terminator;
+
+	/**
+	 * received bytes ring
+	 * */
+	private byte[] ring;
+
+	/**
+	 * first unread byte position
+	 * */
+	private int head=0;
+
+	/**
+	 * unread bytes number
+	 * */
+	private int count=0;
+
+	/**
+	 * complete lines number into ring
+	 * */
+	private int lines=0;
+
+	/**
+	 * true if link has been closed
+	 * */
+	private boolean closed=false;
+
+	/**
+	 * true if incoming bytes up to next terminator belong to a dropped line
+	 * */
+	private boolean discarding=false;
+
+	/**
+	 * lines dropped as ring was full
+	 * */
+	private long droppedLines=0;
+
+	private final ReentrantLock lock=new ReentrantLock();
+
+	private final Condition lineReady=lock.newCondition();
+
+	/**
+	 * reusable view over current line, handed to consumers
+	 * */
+	private final LineView view=new LineView();
+
+
+	/**
+	 * Constructor. Lines end with '\n', a '\r' before it will be removed.
+	 * */
+	public LineFramer()
+	{
+		this('\n');
+	}
+
+	/**
+	 * Constructor.
+	 * @param terminator line termination char (i.e. '\n')
+	 * */
+	public LineFramer(char terminator)
+	{
+		this.terminator=(byte)terminator;
+		this.ring=new byte[INITIAL_CAPACITY];
+
+		int capacity=INITIAL_CAPACITY;
+		while(capacity<DefaultLinkDevice.MAX_LINE_BUFFER_SIZE && capacity<(1<<30))
+			capacity*=2;
+
+		this.maxCapacity=capacity;
+	}
+
+
+	/**
+	 * Append received bytes and wake up line readers
+	 * @param data received bytes
+	 * @param offset first byte position
+	 * @param length bytes number
+	 * */
+	public void feed(byte[] data, int offset, int length)
+	{
+		lock.lock();
+		try {
+			while(length>0) {
+				if (discarding) {
+					int skipped=0;
+					while(skipped<length && data[offset+skipped]!=terminator)
+						skipped++;
+
+					// terminator of dropped line too
+					discarding=skipped==length;
+					skipped=Math.min(skipped+1, length);
+					offset+=skipped;
+					length-=skipped;
+					continue;
+				}
+
+				int chunk=reserve(length);
+				if (discarding)
+					continue;
+
+				int tail=(head+count) & (ring.length-1);
+				int first=Math.min(chunk, ring.length-tail);
+				System.arraycopy(data, offset, ring, tail, first);
+				System.arraycopy(data, offset+first, ring, 0, chunk-first);
+
+				appended(tail, chunk);
+				offset+=chunk;
+				length-=chunk;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Append all remaining bytes of buffer (i.e. a direct socket buffer) 
+	 * and wake up line readers
+	 * @param data received bytes, position is moved to limit
+	 * */
+	public void feed(ByteBuffer data)
+	{
+		lock.lock();
+		try {
+			while(data.hasRemaining()) {
+				if (discarding) {
+					// up to terminator of dropped line
+					while(data.hasRemaining())
+						if (data.get()==terminator) {
+							discarding=false;
+							break;
+						}
+					continue;
+				}
+
+				int chunk=reserve(data.remaining());
+				if (discarding)
+					continue;
+
+				int tail=(head+count) & (ring.length-1);
+				int first=Math.min(chunk, ring.length-tail);
+				data.get(ring, tail, first);
+				data.get(ring, 0, chunk-first);
+
+				appended(tail, chunk);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * count appended lines and wake up line readers, lock must be held
+	 * */
+	private void appended(int tail, int length)
+	{
+		int newLines=0;
+		int mask=ring.length-1;
+
+		for(int i=0;i<length;i++)
+			if (ring[(tail+i) & mask]==terminator)
+				newLines++;
+
+		count+=length;
+
+		if (newLines>0) {
+			lines+=newLines;
+			lineReady.signalAll();
+		}
+	}
+
+
+	/**
+	 * @return unread bytes number
+	 * */
+	public int available()
+	{
+		lock.lock();
+		try {
+			return count;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return lines (complete or partial) dropped as unread bytes reached 
+	 * DefaultLinkDevice.MAX_LINE_BUFFER_SIZE
+	 * */
+	public long getDroppedLines()
+	{
+		lock.lock();
+		try {
+			return droppedLines;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * @return true if a complete line can be read, false otherwise
+	 * */
+	public boolean hasLine()
+	{
+		lock.lock();
+		try {
+			return lines>0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Wait for a complete line, without reading it.
+	 * @param timeout max waiting time in millis, 0 to wait forever
+	 * @return true if a line can be read, false if timeout, interrupt or link closed
+	 * */
+	public boolean awaitLine(long timeout)
+	{
+		lock.lock();
+		try {
+			long nanos=TimeUnit.MILLISECONDS.toNanos(timeout);
+
+			while(lines==0 && !closed) {
+				if (timeout<=0)
+					lineReady.await();
+				else if (nanos<=0)
+					return false;
+				else
+					nanos=lineReady.awaitNanos(nanos);
+			}
+
+			return lines>0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Read a complete line
+	 * @return line without terminator (and '\r' before '\n'), null if there isn't a complete line
+	 * */
+	public String readLine()
+	{
+		lock.lock();
+		try {
+			if (lines==0)
+				return null;
+
+			int length=lineLength();
+			String line=decode(textLength(length));
+			skip(length+1);
+			lines--;
+
+			return line;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Hand a complete line to consumer, without allocations. Consumer is called
+	 * holding framer lock, so it shouldn't block.
+	 * @param consumer line consumer
+	 * @return true if a line has been consumed, false if there isn't a complete line
+	 * */
+	public boolean readLine(LineConsumer consumer)
+	{
+		lock.lock();
+		try {
+			if (lines==0)
+				return false;
+
+			int length=lineLength();
+			view.set(head, textLength(length));
+
+			try {
+				consumer.onLine(view);
+			} finally {
+				skip(length+1);
+				lines--;
+			}
+
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Read unread bytes as string, without waiting
+	 * @param max max bytes number to read
+	 * @return read string, null if there aren't bytes
+	 * */
+	public String read(int max)
+	{
+		lock.lock();
+		try {
+			if (count==0)
+				return null;
+
+			int length=Math.min(max, count);
+			int mask=ring.length-1;
+
+			for(int i=0;i<length;i++)
+				if (ring[(head+i) & mask]==terminator)
+					lines--;
+
+			String data=decode(length);
+			skip(length);
+
+			return data;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Move unread bytes into buffer, without waiting
+	 * @param data destination buffer, filled up to its limit
+	 * @return bytes number moved
+	 * */
+	public int read(ByteBuffer data)
+	{
+		lock.lock();
+		try {
+			int length=Math.min(data.remaining(), count);
+			int mask=ring.length-1;
+
+			for(int i=0;i<length;i++)
+				if (ring[(head+i) & mask]==terminator)
+					lines--;
+
+			int first=Math.min(length, ring.length-head);
+			data.put(ring, head, first);
+			data.put(ring, 0, length-first);
+			skip(length);
+
+			return length;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Move unread bytes into buffers, without waiting
+	 * @param data destination buffers, each one filled up to its limit before next one
+	 * @return bytes number moved
+	 * */
+	public long read(ByteBuffer[] data)
+	{
+		lock.lock();
+		try {
+			long total=0;
+
+			for(ByteBuffer buffer: data) {
+				total+=read(buffer);
+				if (count==0)
+					break;
+			}
+
+			return total;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Read all unread bytes as string, without waiting
+	 * @return read string, null if there aren't bytes
+	 * */
+	public String read()
+	{
+		return read(Integer.MAX_VALUE);
+	}
+
+
+	/**
+	 * Discard unread bytes and allow waiting for new lines
+	 * */
+	public void clear()
+	{
+		lock.lock();
+		try {
+			head=0;
+			count=0;
+			lines=0;
+			closed=false;
+			discarding=false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * Wake up all line readers, link has been closed
+	 * */
+	public void close()
+	{
+		lock.lock();
+		try {
+			closed=true;
+			lineReady.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+
+	/**
+	 * bytes before first terminator, lock must be held and a line must be present
+	 * */
+	private int lineLength()
+	{
+		int mask=ring.length-1;
+		int length=0;
+
+		while(ring[(head+length) & mask]!=terminator)
+			length++;
+
+		return length;
+	}
+
+
+	/**
+	 * line length without '\r' before '\n', lock must be held
+	 * */
+	private int textLength(int length)
+	{
+		if (length>0 && terminator=='\n' && ring[(head+length-1) & (ring.length-1)]=='\r')
+			return length-1;
+
+		return length;
+	}
+
+
+	/**
+	 * decode first unread bytes, lock must be held
+	 * */
+	private String decode(int length)
+	{
+		int first=Math.min(length, ring.length-head);
+
+		if (first==length)
+			return new String(ring, head, length, StandardCharsets.ISO_8859_1);
+
+		byte[] tmp=new byte[length];
+		System.arraycopy(ring, head, tmp, 0, first);
+		System.arraycopy(ring, 0, tmp, first, length-first);
+		return new String(tmp, StandardCharsets.ISO_8859_1);
+	}
+
+
+	/**
+	 * discard first unread bytes, lock must be held
+	 * */
+	private void skip(int length)
+	{
+		head=(head+length) & (ring.length-1);
+		count-=length;
+
+		if (count==0)
+			head=0;
+	}
+
+
+	/**
+	 * make room for incoming bytes, growing ring up to max size, then dropping
+	 * partial line or oldest lines. Lock must be held
+	 * @param length incoming bytes number
+	 * @return bytes number that can be appended, 0 if partial line has been 
+	 * dropped (incoming bytes up to next terminator must be discarded)
+	 * */
+	private int reserve(int length)
+	{
+		int chunk=Math.min(length, maxCapacity);
+
+		while(count+chunk>ring.length) {
+			if (ring.length<maxCapacity) {
+				ensureCapacity(count+chunk);
+				continue;
+			}
+
+			int partial=partialLength();
+			droppedLines++;
+
+			if (partial>0) {
+				count-=partial;
+				if (count==0)
+					head=0;
+
+				discarding=true;
+				return 0;
+			}
+
+			// complete lines nobody reads
+			skip(lineLength()+1);
+			lines--;
+		}
+
+		return chunk;
+	}
+
+
+	/**
+	 * bytes after last terminator, lock must be held
+	 * */
+	private int partialLength()
+	{
+		if (lines==0)
+			return count;
+
+		int mask=ring.length-1;
+		int length=0;
+
+		while(ring[(head+count-1-length) & mask]!=terminator)
+			length++;
+
+		return length;
+	}
+
+
+	/**
+	 * grow ring if needed, up to max size, lock must be held
+	 * */
+	private void ensureCapacity(int needed)
+	{
+		if (needed<=ring.length)
+			return;
+
+		int capacity=ring.length;
+		while(capacity<needed && capacity<maxCapacity)
+			capacity*=2;
+
+		byte[] bigger=new byte[capacity];
+		int first=Math.min(count, ring.length-head);
+		System.arraycopy(ring, head, bigger, 0, first);
+		System.arraycopy(ring, 0, bigger, first, count-first);
+
+		ring=bigger;
+		head=0;
+	}
+
+
+	/**
+	 * ASCII view over a ring section
+	 * */
+	private class LineView implements CharSequence {
+
+		private int start;
+
+		private int length;
+
+		void set(int start, int length)
+		{
+			this.start=start;
+			this.length=length;
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		public char charAt(int index) {
+			if (index<0 || index>=length)
+				throw new IndexOutOfBoundsException(String.valueOf(index));
+			return (char)(ring[(start+index) & (ring.length-1)] & 0xFF);
+		}
+
+		@Override
+		public CharSequence subSequence(int from, int to) {
+			return toString().substring(from, to);
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder sb=new StringBuilder(length);
+			for(int i=0;i<length;i++)
+				sb.append(charAt(i));
+			return sb.toString();
+		}
+	}
+
+}
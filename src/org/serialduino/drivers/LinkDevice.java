@@ -16,10 +16,15 @@
 
 package org.serialduino.drivers;
 
+import java.nio.ByteBuffer;
 import java.util.logging.Logger;
 
+import org.serialduino.settings.DefaultLinkDevice;
+
 /**
- * SerialDuino generic serial link interface
+ * SerialDuino generic serial link interface. Buffer and line methods have
+ * default implementations built on string methods, drivers override them
+ * to avoid copies (i.e. LineFramer based drivers).
  * @author Emanuele Paiano 
  * https://emanuelepaiano.github.io
  * */
@@ -45,6 +50,166 @@ public interface LinkDevice {
 	 * */
 	public String read();
 	
+	/**
+	 * write buffer remaining bytes to link port
+	 * @param data output bytes to arduino, position is moved after sent bytes
+	 * @return bytes sent number, -1 if error
+	 * */
+	public default int write(ByteBuffer data)
+	{
+		int length=data.remaining();
+		StringBuilder text=new StringBuilder(length);
+		
+		while(data.hasRemaining())
+			text.append((char)(data.get() & 0xFF));
+		
+		return write(text.toString())<0 ? -1 : length;
+	}
+	
+	/**
+	 * write remaining bytes of more buffers to link port, as a single write
+	 * @param data output buffers to arduino, positions are moved after sent bytes
+	 * @return bytes sent number, -1 if error
+	 * */
+	public default long write(ByteBuffer[] data)
+	{
+		StringBuilder text=new StringBuilder();
+		
+		for(ByteBuffer buffer: data)
+			while(buffer.hasRemaining())
+				text.append((char)(buffer.get() & 0xFF));
+		
+		return write(text.toString())<0 ? -1 : text.length();
+	}
+	
+	/**
+	 * read available bytes from link port, without waiting
+	 * @param data input buffer, filled up to its limit
+	 * @return bytes read number, -1 if port is not ready
+	 * */
+	public default int read(ByteBuffer data)
+	{
+		if (!isReady())
+			return -1;
+		
+		int read=0;
+		
+		while(data.hasRemaining() && bufferAvailable()) {
+			String ch=read(1);
+			
+			if (ch==null || ch.isEmpty())
+				break;
+			
+			data.put((byte)ch.charAt(0));
+			read++;
+		}
+		
+		return read;
+	}
+	
+	/**
+	 * read available bytes from link port into more buffers, without waiting.
+	 * Each buffer is filled up to its limit before next one.
+	 * @param data input buffers
+	 * @return bytes read number, -1 if port is not ready
+	 * */
+	public default long read(ByteBuffer[] data)
+	{
+		long read=0;
+		
+		for(ByteBuffer buffer: data) {
+			int count=read(buffer);
+			
+			if (count<0)
+				return read>0 ? read : -1;
+			
+			read+=count;
+			
+			if (buffer.hasRemaining())
+				break;
+		}
+		
+		return read;
+	}
+	
+	/**
+	 * wait for a complete line (ending with '\n') from link port, without reading it.
+	 * Default implementation can't look ahead: it polls for incoming bytes 
+	 * (every DefaultLinkDevice.LINE_POLL_TIME millis), being the beginning of a line.
+	 * @param timeout max waiting time in millis, 0 to wait forever
+	 * @return true if a line can be read, false otherwise
+	 * */
+	public default boolean awaitLine(long timeout)
+	{
+		long deadline=System.currentTimeMillis()+timeout;
+		
+		while(isReady()) {
+			if (bufferAvailable())
+				return true;
+			
+			if (timeout>0 && System.currentTimeMillis()>=deadline)
+				return false;
+			
+			try {
+				Thread.sleep(DefaultLinkDevice.LINE_POLL_TIME);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+		
+		return false;
+	}
+	
+	/**
+	 * read a complete line from link port. Default implementation reads 
+	 * single chars: once a line is begun, it waits for its end.
+	 * @return line without "\r\n", null if there isn't a complete line
+	 * */
+	public default String readLine()
+	{
+		if (!isReady() || !bufferAvailable())
+			return null;
+		
+		StringBuilder line=new StringBuilder();
+		
+		while(awaitLine(0)) {
+			String ch=read(1);
+			
+			if (ch==null || ch.isEmpty())
+				continue;
+			
+			if (ch.charAt(0)=='\n') {
+				int length=line.length();
+				
+				if (length>0 && line.charAt(length-1)=='\r')
+					line.setLength(length-1);
+				
+				return line.toString();
+			}
+			
+			line.append(ch.charAt(0));
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * hand a complete line from link port to consumer
+	 * @param consumer line consumer
+	 * @return true if a line has been consumed, false if there isn't a complete line
+	 * */
+	public default boolean readLine(LineConsumer consumer)
+	{
+		String line=readLine();
+		
+		if (line==null)
+			return false;
+		
+		consumer.onLine(line);
+		return true;
+	}
+	
 	
 	/**
 	 * open connection on link port
@@ -0,0 +1,243 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SerialDuino metered link. It wraps another link device counting bytes
+ * written and read, lines read and failed writes, with lock-free counters.
+ * Counters can be read by JMX (MeteredLinkDeviceMBean).
+ *
+ * To keep reconnections working, wrap the link inside ResilientLinkDevice:
+ * new ResilientLinkDevice(new MeteredLinkDevice(link)).
+ * Read line terminators are counted as one byte.
+ * @author Emanuele Paiano
+ * https://emanuelepaiano.github.io
+ * */
+public class MeteredLinkDevice implements LinkDevice, MeteredLinkDeviceMBean {
+
+	/**
+	 * wrapped link
+	 * */
+	private final LinkDevice link;
+
+	private final LongAdder bytesOut=new LongAdder();
+
+	private final LongAdder bytesIn=new LongAdder();
+
+	private final LongAdder linesIn=new LongAdder();
+
+	private final LongAdder failedWrites=new LongAdder();
+
+	/**
+	 * reusable line counting consumer, guarded by itself
+	 * */
+	private final CountingConsumer counting=new CountingConsumer();
+
+
+	/**
+	 * Constructor.
+	 * @param link link to wrap
+	 * */
+	public MeteredLinkDevice(LinkDevice link)
+	{
+		this.link=link;
+	}
+
+
+	/**
+	 * count a write result
+	 * */
+	private void written(long written)
+	{
+		if (written<0)
+			failedWrites.increment();
+		else
+			bytesOut.add(written);
+	}
+
+	/**
+	 * count a read line
+	 * */
+	private void lineRead(int length)
+	{
+		linesIn.increment();
+		bytesIn.add(length+1);
+	}
+
+	@Override
+	public int write(String data) {
+		int written=link.write(data);
+		written(written);
+		return written;
+	}
+
+	@Override
+	public int write(ByteBuffer data) {
+		int written=link.write(data);
+		written(written);
+		return written;
+	}
+
+	@Override
+	public long write(ByteBuffer[] data) {
+		long written=link.write(data);
+		written(written);
+		return written;
+	}
+
+	@Override
+	public String read(int bytes) {
+		String data=link.read(bytes);
+		if (data!=null)
+			bytesIn.add(data.length());
+		return data;
+	}
+
+	@Override
+	public String read() {
+		String data=link.read();
+		if (data!=null)
+			bytesIn.add(data.length());
+		return data;
+	}
+
+	@Override
+	public int read(ByteBuffer data) {
+		int read=link.read(data);
+		if (read>0)
+			bytesIn.add(read);
+		return read;
+	}
+
+	@Override
+	public long read(ByteBuffer[] data) {
+		long read=link.read(data);
+		if (read>0)
+			bytesIn.add(read);
+		return read;
+	}
+
+	@Override
+	public boolean awaitLine(long timeout) {
+		return link.awaitLine(timeout);
+	}
+
+	@Override
+	public String readLine() {
+		String line=link.readLine();
+		if (line!=null)
+			lineRead(line.length());
+		return line;
+	}
+
+	@Override
+	public boolean readLine(LineConsumer consumer) {
+		synchronized (counting) {
+			counting.target=consumer;
+			counting.length=-1;
+
+			boolean read=link.readLine(counting);
+
+			counting.target=null;
+			if (counting.length>=0)
+				lineRead(counting.length);
+
+			return read;
+		}
+	}
+
+	@Override
+	public boolean open() {
+		return link.open();
+	}
+
+	@Override
+	public boolean close() {
+		return link.close();
+	}
+
+	@Override
+	public boolean isReady() {
+		return link.isReady();
+	}
+
+	@Override
+	public boolean bufferAvailable() {
+		return link.bufferAvailable();
+	}
+
+	@Override
+	public Object getDevice() {
+		return link.getDevice();
+	}
+
+	/**
+	 * @return wrapped link
+	 * */
+	public LinkDevice getLink() {
+		return link;
+	}
+
+	@Override
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	@Override
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	@Override
+	public long getLinesIn() {
+		return linesIn.sum();
+	}
+
+	@Override
+	public long getFailedWrites() {
+		return failedWrites.sum();
+	}
+
+	@Override
+	public void resetCounters() {
+		bytesOut.reset();
+		bytesIn.reset();
+		linesIn.reset();
+		failedWrites.reset();
+	}
+
+
+	/**
+	 * passes lines to target consumer, keeping their length
+	 * */
+	private static class CountingConsumer implements LineConsumer {
+
+		LineConsumer target;
+
+		int length;
+
+		@Override
+		public void onLine(CharSequence line) {
+			length=line.length();
+			target.onLine(line);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+/**
+ * JMX view of MeteredLinkDevice counters
+ * @author Emanuele Paiano
+ * https://emanuelepaiano.github.io
+ * */
+public interface MeteredLinkDeviceMBean {
+
+	/**
+	 * @return bytes written to link
+	 * */
+	public long getBytesOut();
+
+	/**
+	 * @return bytes read from link
+	 * */
+	public long getBytesIn();
+
+	/**
+	 * @return lines read from link
+	 * */
+	public long getLinesIn();
+
+	/**
+	 * @return failed writes
+	 * */
+	public long getFailedWrites();
+
+	/**
+	 * @return true if link is ready
+	 * */
+	public boolean isReady();
+
+	/**
+	 * Set counters to 0
+	 * */
+	public void resetCounters();
+
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+/**
+ * SerialDuino link reconnection listener
+ * @author Emanuele Paiano 
+ * https://emanuelepaiano.github.io
+ * @see ResilientLinkDevice
+ * */
+public interface ReconnectListener {
+	
+	/**
+	 * called after link has been connected again, i.e. to restore device state.
+	 * It runs on link monitor thread, before writes queued while link was 
+	 * down are sent. It can wait for device responses, but link failures 
+	 * aren't detected meanwhile.
+	 * @param link reconnected link
+	 * */
+	public void onReconnect(LinkDevice link);
+
+}
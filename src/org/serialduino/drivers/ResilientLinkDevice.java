@@ -0,0 +1,500 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.serialduino.settings.DefaultLinkDevice;
+import org.serialduino.settings.DefaultResilientLinkDevice;
+
+/**
+ * SerialDuino resilient link. It wraps another link device (i.e. ComLinkDevice
+ * or TcpLinkDevice), reconnecting it with exponential backoff when a failure
+ * is detected (failed write or link not ready anymore).
+ *
+ * While link is down, it's still ready for users: writes are rejected, or
+ * queued if MAX_QUEUED_WRITES is set (next ones are rejected) and sent on
+ * reconnection if not older than QUEUED_WRITE_MAX_AGE; line readers wait
+ * for reconnection. ReconnectListener objects are notified after each
+ * reconnection, on monitor thread, i.e. to restore device state: queued
+ * writes are sent after them.
+ * @author Emanuele Paiano
+ * https://emanuelepaiano.github.io
+ * @see DefaultResilientLinkDevice
+ * */
+public class ResilientLinkDevice implements LinkDevice {
+
+	/**
+	 * wrapped link
+	 * */
+	private final LinkDevice link;
+
+	/**
+	 * true between open() and close()
+	 * */
+	private volatile boolean opened=false;
+
+	/**
+	 * true if wrapped link is working
+	 * */
+	private volatile boolean connected=false;
+
+	/**
+	 * guards connection state and queued writes, notified on state changes
+	 * */
+	private final Object state=new Object();
+
+	/**
+	 * writes waiting for reconnection, guarded by state
+	 * */
+	private final ArrayDeque<QueuedWrite> queued=new ArrayDeque<QueuedWrite>();
+
+	private final List<ReconnectListener> listeners=new CopyOnWriteArrayList<ReconnectListener>();
+
+	private Thread monitor;
+
+	private volatile int reconnections=0;
+
+
+	/**
+	 * Constructor.
+	 * @param link link to wrap, not opened
+	 * */
+	public ResilientLinkDevice(LinkDevice link)
+	{
+		this.link=link;
+	}
+
+
+	/**
+	 * Add a listener notified after each reconnection
+	 * @param listener ReconnectListener object
+	 * */
+	public void addReconnectListener(ReconnectListener listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Remove a reconnection listener
+	 * @param listener ReconnectListener object
+	 * */
+	public void removeReconnectListener(ReconnectListener listener)
+	{
+		listeners.remove(listener);
+	}
+
+
+	/**
+	 * Write data, or queue it if link is down.
+	 * @return written (or queued) bytes number, -1 if rejected
+	 * */
+	@Override
+	public int write(String data) {
+		if (!opened)
+			return -1;
+
+		synchronized (state) {
+			if (connected) {
+				int written=link.write(data);
+				if (written>0 || data.isEmpty())
+					return written;
+
+				linkDown();
+			}
+
+			return queue(data.getBytes(StandardCharsets.ISO_8859_1));
+		}
+	}
+
+	/**
+	 * Write buffer, or queue a copy of it if link is down.
+	 * @return written (or queued) bytes number, -1 if rejected
+	 * */
+	@Override
+	public int write(ByteBuffer data) {
+		if (!opened)
+			return -1;
+
+		synchronized (state) {
+			if (connected) {
+				int length=data.remaining();
+				int written=link.write(data.duplicate());
+				if (written>0 || length==0) {
+					data.position(data.position()+written);
+					return written;
+				}
+
+				linkDown();
+			}
+
+			byte[] copy=new byte[data.remaining()];
+			data.get(copy);
+			return queue(copy);
+		}
+	}
+
+	/**
+	 * Write buffers, or queue a copy of them if link is down.
+	 * @return written (or queued) bytes number, -1 if rejected
+	 * */
+	@Override
+	public long write(ByteBuffer[] data) {
+		if (!opened)
+			return -1;
+
+		long length=0;
+		for(ByteBuffer buffer: data)
+			length+=buffer.remaining();
+
+		synchronized (state) {
+			if (connected) {
+				ByteBuffer[] copies=new ByteBuffer[data.length];
+				for(int i=0;i<data.length;i++)
+					copies[i]=data[i].duplicate();
+
+				long written=link.write(copies);
+				if (written>0 || length==0) {
+					for(int i=0;i<data.length;i++)
+						data[i].position(copies[i].position());
+					return written;
+				}
+
+				linkDown();
+			}
+
+			byte[] copy=new byte[(int)length];
+			ByteBuffer joined=ByteBuffer.wrap(copy);
+			for(ByteBuffer buffer: data)
+				joined.put(buffer);
+			return queue(copy);
+		}
+	}
+
+	/**
+	 * queue data while link is down, state lock must be held
+	 * @return queued bytes number, -1 if queue is full
+	 * */
+	private int queue(byte[] data)
+	{
+		if (queued.size()>=DefaultResilientLinkDevice.MAX_QUEUED_WRITES) {
+			if (DefaultLinkDevice.VERBOSE_MODE)
+				logger.warning("Link down, write rejected");
+			return -1;
+		}
+
+		queued.add(new QueuedWrite(data));
+		return data.length;
+	}
+
+	@Override
+	public String read(int bytes) {
+		return connected ? link.read(bytes) : null;
+	}
+
+	@Override
+	public String read() {
+		return connected ? link.read() : null;
+	}
+
+	@Override
+	public int read(ByteBuffer data) {
+		return connected ? link.read(data) : 0;
+	}
+
+	@Override
+	public long read(ByteBuffer[] data) {
+		return connected ? link.read(data) : 0;
+	}
+
+	/**
+	 * Wait for a complete line. While link is down, it waits for reconnection.
+	 * @param timeout max waiting time in millis, 0 to wait forever
+	 * @return true if a line can be read, false if timeout, interrupt or link closed
+	 * */
+	@Override
+	public boolean awaitLine(long timeout) {
+		long deadline=System.currentTimeMillis()+timeout;
+
+		while(opened) {
+			long remaining=deadline-System.currentTimeMillis();
+
+			if (timeout>0 && remaining<=0)
+				return false;
+
+			if (connected) {
+				if (link.awaitLine(timeout>0 ? remaining : 0))
+					return true;
+
+				if (Thread.currentThread().isInterrupted())
+					return false;
+
+				// wrapped link closed itself (i.e. remote side disconnected)
+				if (!link.isReady())
+					synchronized (state) {
+						linkDown();
+					}
+
+				// timeout, otherwise link went down while waiting
+				if (connected)
+					return false;
+
+				continue;
+			}
+
+			synchronized (state) {
+				try {
+					if (opened && !connected)
+						state.wait(timeout>0 ? remaining : 0);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public String readLine() {
+		return connected ? link.readLine() : null;
+	}
+
+	@Override
+	public boolean readLine(LineConsumer consumer) {
+		return connected && link.readLine(consumer);
+	}
+
+	/**
+	 * Open wrapped link and start monitor thread
+	 * @return true if success, false if link can't be opened
+	 * */
+	@Override
+	public synchronized boolean open() {
+		if (opened)
+			return true;
+
+		if (!link.open())
+			return false;
+
+		opened=true;
+		connected=true;
+		reconnections=0;
+
+		monitor=new Thread(new Runnable() {
+			@Override
+			public void run() {
+				monitorLoop();
+			}
+		}, "ResilientLinkDevice-monitor");
+		monitor.setDaemon(true);
+		monitor.start();
+
+		return true;
+	}
+
+	/**
+	 * Stop monitor thread and close wrapped link. Queued writes are discarded.
+	 * */
+	@Override
+	public synchronized boolean close() {
+		if (!opened)
+			return false;
+
+		synchronized (state) {
+			opened=false;
+			connected=false;
+			queued.clear();
+			state.notifyAll();
+		}
+
+		monitor.interrupt();
+		return link.close();
+	}
+
+	/**
+	 * @return true if link is opened (even if it's reconnecting), false otherwise
+	 * */
+	@Override
+	public boolean isReady() {
+		return opened;
+	}
+
+	/**
+	 * @return true if wrapped link is working, false if it's down or closed
+	 * */
+	public boolean isConnected() {
+		return connected;
+	}
+
+	@Override
+	public boolean bufferAvailable() {
+		return connected && link.bufferAvailable();
+	}
+
+	@Override
+	public Object getDevice() {
+		return link.getDevice();
+	}
+
+	/**
+	 * @return wrapped link
+	 * */
+	public LinkDevice getLink() {
+		return link;
+	}
+
+	/**
+	 * @return reconnections number since open()
+	 * */
+	public int getReconnections() {
+		return reconnections;
+	}
+
+	/**
+	 * @return writes waiting for reconnection
+	 * */
+	public int getQueuedWrites() {
+		synchronized (state) {
+			return queued.size();
+		}
+	}
+
+
+	/**
+	 * mark link as down, waking up monitor and line readers. State lock must be held
+	 * */
+	private void linkDown()
+	{
+		if (!connected)
+			return;
+
+		connected=false;
+
+		if (DefaultLinkDevice.VERBOSE_MODE)
+			logger.warning("Link down, reconnecting");
+
+		// wakes up threads waiting on wrapped link
+		link.close();
+		state.notifyAll();
+	}
+
+
+	/**
+	 * monitor thread loop: checks link and reconnects it
+	 * */
+	private void monitorLoop()
+	{
+		try {
+			while(opened) {
+				synchronized (state) {
+					if (connected && !link.isReady())
+						linkDown();
+
+					if (connected)
+						state.wait(DefaultResilientLinkDevice.CHECK_PERIOD);
+				}
+
+				if (opened && !connected)
+					reconnect();
+			}
+		} catch (InterruptedException e) {
+			// closed
+		}
+	}
+
+
+	/**
+	 * reopen wrapped link, with exponential backoff between attempts
+	 * */
+	private void reconnect() throws InterruptedException
+	{
+		long backoff=DefaultResilientLinkDevice.INITIAL_BACKOFF;
+
+		while(opened) {
+			link.close();
+
+			if (link.open()) {
+				Thread.sleep(DefaultResilientLinkDevice.SETTLE_TIME);
+
+				synchronized (state) {
+					if (!opened)
+						return;
+
+					connected=true;
+					state.notifyAll();
+				}
+
+				reconnections++;
+
+				// device state is restored before queued commands run
+				for(ReconnectListener listener: listeners)
+					listener.onReconnect(this);
+
+				synchronized (state) {
+					flushQueued();
+				}
+				return;
+			}
+
+			Thread.sleep(backoff);
+			backoff=Math.min(backoff*2, DefaultResilientLinkDevice.MAX_BACKOFF);
+		}
+	}
+
+
+	/**
+	 * send writes queued while link was down, discarding old ones. State lock must be held
+	 * */
+	private void flushQueued()
+	{
+		long oldest=System.currentTimeMillis()-DefaultResilientLinkDevice.QUEUED_WRITE_MAX_AGE;
+
+		while(connected && !queued.isEmpty()) {
+			QueuedWrite write=queued.peek();
+
+			if (write.time>=oldest && link.write(ByteBuffer.wrap(write.data))<=0 && write.data.length>0) {
+				linkDown();
+				return;
+			}
+
+			queued.poll();
+		}
+	}
+
+
+	/**
+	 * write queued while link was down
+	 * */
+	private static class QueuedWrite {
+
+		final byte[] data;
+
+		final long time=System.currentTimeMillis();
+
+		QueuedWrite(byte[] data)
+		{
+			this.data=data;
+		}
+	}
+
+}
@@ -16,27 +16,64 @@
 
 package org.serialduino.drivers;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.PrintWriter;
+import java.net.InetSocketAddress;
 import java.net.Socket;
-import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 
 import org.serialduino.settings.DefaultLinkDevice;
+import org.serialduino.settings.DefaultTcpLinkDevice;
 
 /**
- * SerialDuino TCP/IP Port driver
+ * SerialDuino TCP/IP Port driver. Connection is a non-blocking SocketChannel
+ * driven by shared TcpSelector thread, so many bridges don't need a thread 
+ * each. Received bytes go from a direct buffer into a LineFramer; written 
+ * data is coalesced into a direct buffer and sent on flush() (automatically 
+ * after each write, unless autoFlush is disabled).
  * @author Emanuele Paiano 
  * https://emanuelepaiano.github.io
+ * @see TcpSelector
  * */
 public class TcpLinkDevice implements LinkDevice{
 	private String host;
 	private int port;
-	private Socket socket;
-	private BufferedReader reader;
-	private PrintWriter writer;
-	private boolean isConnected=false;
+	private SocketChannel channel;
+	private volatile boolean isConnected=false;
+	
+	/**
+	 * selector driving this connection
+	 * */
+	private TcpSelector selector;
+	
+	/**
+	 * received bytes, filled by selector thread
+	 * */
+	private final LineFramer input=new LineFramer();
+	
+	/**
+	 * receiving buffer, used by selector thread only
+	 * */
+	private final ByteBuffer readBuffer=ByteBuffer.allocateDirect(DefaultTcpLinkDevice.READ_BUFFER_SIZE);
+	
+	/**
+	 * data written and not yet sent, guarded by writeLock
+	 * */
+	private ByteBuffer writeBuffer=ByteBuffer.allocateDirect(DefaultTcpLinkDevice.WRITE_BUFFER_SIZE);
+	
+	private final Object writeLock=new Object();
+	
+	/**
+	 * true if selector is sending remaining output, guarded by writeLock
+	 * */
+	private boolean writePending=false;
+	
+	/**
+	 * if true, data is sent by each write() call
+	 * */
+	private volatile boolean autoFlush=true;
+	
+	private final Connection connection=new Connection();
 
 	/**
 	 * Constructor.
@@ -50,77 +87,239 @@ public class TcpLinkDevice implements LinkDevice{
 	}
 	
 	
+	/**
+	 * Append data to sending buffer, and send it if autoFlush is enabled.
+	 * Data written meanwhile selector is sending is coalesced into same buffer.
+	 * @return bytes number written, -1 if not connected or sending buffer is full
+	 * */
 	@Override
 	public int write(String data) {
-		writer.write(data);
-		return 0;
+		if (!isReady())
+			return -1;
+		
+		synchronized (writeLock) {
+			if (!ensureWriteCapacity(data.length()))
+				return -1;
+			
+			for(int i=0;i<data.length();i++)
+				writeBuffer.put((byte)data.charAt(i));
+		}
+		
+		if (autoFlush)
+			flush();
+		
+		return data.length();
 	}
-
+	
+	
 	/**
-	 * @throws IOException
+	 * Append buffer to sending buffer, and send it if autoFlush is enabled.
+	 * @return bytes number written, -1 if not connected or sending buffer is full
 	 * */
 	@Override
-	public String read(int bytes) {
-		String str=null;
-		char[] chList=new char[bytes];
-		for(int i=0;i<bytes;i++)
-		{
-			try {
-				chList[i]=(char)reader.read();
-			} catch (IOException e) {
-				if(DefaultLinkDevice.VERBOSE_MODE)
-					logger.severe(e.getMessage());
-				break;
+	public int write(ByteBuffer data) {
+		if (!isReady())
+			return -1;
+		
+		int length=data.remaining();
+		
+		synchronized (writeLock) {
+			if (!ensureWriteCapacity(length))
+				return -1;
+			
+			writeBuffer.put(data);
+		}
+		
+		if (autoFlush)
+			flush();
+		
+		return length;
+	}
+	
+	
+	/**
+	 * Append buffers to sending buffer, and send them if autoFlush is enabled.
+	 * @return bytes number written, -1 if not connected or sending buffer is full
+	 * */
+	@Override
+	public long write(ByteBuffer[] data) {
+		if (!isReady())
+			return -1;
+		
+		int length=0;
+		
+		synchronized (writeLock) {
+			for(ByteBuffer buffer: data)
+				length+=buffer.remaining();
+			
+			if (!ensureWriteCapacity(length))
+				return -1;
+			
+			for(ByteBuffer buffer: data)
+				writeBuffer.put(buffer);
+		}
+		
+		if (autoFlush)
+			flush();
+		
+		return length;
+	}
+	
+	
+	/**
+	 * Send buffered data. Data that can't be sent without blocking is sent 
+	 * by selector thread as soon as socket can be written.
+	 * @return true if success, false otherwise
+	 * */
+	public boolean flush() {
+		if (!isReady())
+			return false;
+		
+		synchronized (writeLock) {
+			// selector is already sending: new data goes with it
+			if (writePending)
+				return true;
+			
+			if (!send())
+				return false;
+			
+			if (writeBuffer.position()>0) {
+				writePending=true;
+				selector.setWriteInterest(channel, true);
 			}
 		}
-		str=String.valueOf(chList);
-		return str;
+		
+		return true;
+	}
+	
+	
+	/**
+	 * @return true if data is sent by each write() call, false if flush() is needed
+	 * */
+	public boolean isAutoFlush() {
+		return autoFlush;
+	}
+	
+	/**
+	 * Enable/Disable sending on each write() call. If disabled, more 
+	 * writes can be sent as single packet calling flush().
+	 * @param autoFlush true to enable (default), false to disable
+	 * */
+	public void setAutoFlush(boolean autoFlush) {
+		this.autoFlush = autoFlush;
+	}
+	
+
+	@Override
+	public String read(int bytes) {
+		if (bufferAvailable())
+			return input.read(bytes);
+		
+		return null;
 	}
 
 	@Override
 	public String read() {
-		try {
-			return reader.readLine();
-		} catch (IOException e) {
-			if(DefaultLinkDevice.VERBOSE_MODE)
-				logger.severe(e.getMessage());
-		}
+		if (bufferAvailable())
+			return input.read();
+		
 		return null;
 	}
 
+	@Override
+	public int read(ByteBuffer data) {
+		if (isReady() || bufferAvailable())
+			return input.read(data);
+		
+		return -1;
+	}
+
+	@Override
+	public long read(ByteBuffer[] data) {
+		if (isReady() || bufferAvailable())
+			return input.read(data);
+		
+		return -1;
+	}
+
+	@Override
+	public boolean awaitLine(long timeout) {
+		if (isReady() || input.hasLine())
+			return input.awaitLine(timeout);
+		
+		return false;
+	}
+
+	@Override
+	public String readLine() {
+		return input.readLine();
+	}
+
+	@Override
+	public boolean readLine(LineConsumer consumer) {
+		return input.readLine(consumer);
+	}
+
 	/**
-	 * @throws IOException
-	 * @throws UnknownHostException
+	 * Connect (blocking, up to DefaultTcpLinkDevice.CONNECT_TIMEOUT millis)
+	 * and register connection on shared selector
 	 * */
 	@Override
 	public boolean open() {
+		selector=TcpSelector.getShared();
+		
+		if (selector==null)
+			return false;
+		
 		try {
-			this.socket = new Socket(host, port);
-			this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-			this.writer = new PrintWriter(socket.getOutputStream());
+			input.clear();
+			synchronized (writeLock) {
+				writeBuffer.clear();
+				writePending=false;
+			}
+			
+			channel=SocketChannel.open();
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().connect(new InetSocketAddress(host, port), DefaultTcpLinkDevice.CONNECT_TIMEOUT);
+			channel.configureBlocking(false);
+			
 			this.isConnected=true;
+			selector.register(channel, connection);
 			return true;
-		} catch (UnknownHostException e) {
-			if(DefaultLinkDevice.VERBOSE_MODE)
-				logger.severe(e.getMessage());
 		} catch (IOException e) {
 			if(DefaultLinkDevice.VERBOSE_MODE)
 				logger.severe(e.getMessage());
+			closeChannel();
 		}
 		this.isConnected=false;
 		return false;
 	}
 
-	/**
-	 * @throws IOException
-	 * */
 	@Override
 	public boolean close() {
+		if (channel==null)
+			return false;
+		
+		boolean success=closeChannel();
+		input.close();
+		return success;
+	}
+	
+	
+	/**
+	 * unregister and close channel
+	 * */
+	private boolean closeChannel() {
+		this.isConnected=false;
+		
+		if (channel==null)
+			return false;
+		
+		if (selector!=null)
+			selector.unregister(channel);
+		
 		try {
-			this.reader.close();
-			this.writer.close();
-			this.socket.close();
-			this.isConnected=false;
+			channel.close();
 			return true;
 		} catch (IOException e) {
 			if(DefaultLinkDevice.VERBOSE_MODE)
@@ -135,27 +334,105 @@ public class TcpLinkDevice implements LinkDevice{
 		return this.isConnected;
 	}
 
-	/**
-	 * @throws IOException
-	 * */
 	@Override
 	public boolean bufferAvailable() {
-		
+		return input.available()>0;
+	}
+	
+	
+	/**
+	 * write buffered data without blocking, writeLock must be held
+	 * @return false if connection is broken
+	 * */
+	private boolean send() {
 		try {
-			return reader.ready();
+			writeBuffer.flip();
+			channel.write(writeBuffer);
+			writeBuffer.compact();
+			return true;
 		} catch (IOException e) {
+			writeBuffer.clear();
 			if(DefaultLinkDevice.VERBOSE_MODE)
 				logger.severe(e.getMessage());
 		}
+		
+		close();
 		return false;
 	}
+	
+	
+	/**
+	 * grow sending buffer if needed, writeLock must be held
+	 * @return false if data doesn't fit into DefaultTcpLinkDevice.MAX_WRITE_BUFFER_SIZE
+	 * */
+	private boolean ensureWriteCapacity(int length) {
+		if (writeBuffer.remaining()>=length)
+			return true;
+		
+		if ((long)writeBuffer.position()+length>DefaultTcpLinkDevice.MAX_WRITE_BUFFER_SIZE) {
+			if(DefaultLinkDevice.VERBOSE_MODE)
+				LinkDevice.logger.warning("TCP sending buffer full, "+length+" bytes discarded");
+			return false;
+		}
+		
+		int capacity=writeBuffer.capacity();
+		while(capacity-writeBuffer.position()<length)
+			capacity=Math.min(capacity*2, DefaultTcpLinkDevice.MAX_WRITE_BUFFER_SIZE);
+		
+		ByteBuffer bigger=ByteBuffer.allocateDirect(capacity);
+		writeBuffer.flip();
+		bigger.put(writeBuffer);
+		writeBuffer=bigger;
+		return true;
+	}
+	
+	
+	/**
+	 * selector events for this connection
+	 * */
+	private class Connection implements TcpSelector.Handler {
+
+		@Override
+		public void onReadable() {
+			try {
+				readBuffer.clear();
+				int read=channel.read(readBuffer);
+				
+				if (read<0) {
+					// remote side closed connection
+					close();
+					return;
+				}
+				
+				readBuffer.flip();
+				input.feed(readBuffer);
+			} catch (IOException e) {
+				if(DefaultLinkDevice.VERBOSE_MODE)
+					logger.severe(e.getMessage());
+				close();
+			}
+		}
+
+		@Override
+		public void onWritable() {
+			synchronized (writeLock) {
+				if (writeBuffer.position()>0 && !send())
+					return;
+				
+				if (writeBuffer.position()==0) {
+					writePending=false;
+					selector.setWriteInterest(channel, false);
+				}
+			}
+		}
+	}
 
 	/**
 	 * Get TCP Socket
 	 * */
 	@Override
 	public Socket getDevice() {
-		return socket;
+		return channel==null ? null : channel.socket();
 	}
 
 	/**
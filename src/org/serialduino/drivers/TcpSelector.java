@@ -0,0 +1,208 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.drivers;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.serialduino.settings.DefaultLinkDevice;
+import org.serialduino.settings.DefaultTcpLinkDevice;
+
+/**
+ * SerialDuino TCP selector. A single thread drives all non-blocking
+ * TcpLinkDevice connections: received bytes are handed to each connection
+ * as soon as they arrive, pending output is sent when socket can be written.
+ * @author Emanuele Paiano
+ * https://emanuelepaiano.github.io
+ * */
+public class TcpSelector implements Runnable {
+
+	/**
+	 * shared selector, started on first use
+	 * */
+	private static TcpSelector shared;
+
+	private final Selector selector;
+
+	/**
+	 * registrations to run on selector thread
+	 * */
+	private final ConcurrentLinkedQueue<Runnable> tasks=new ConcurrentLinkedQueue<Runnable>();
+
+	private final Thread thread;
+
+
+	/**
+	 * Connection events, called on selector thread
+	 * */
+	interface Handler {
+
+		/**
+		 * socket has incoming bytes
+		 * */
+		void onReadable();
+
+		/**
+		 * socket can be written
+		 * */
+		void onWritable();
+	}
+
+
+	/**
+	 * Constructor. Selector thread is started.
+	 * @throws IOException if selector can't be opened
+	 * */
+	public TcpSelector() throws IOException
+	{
+		selector=Selector.open();
+		thread=new Thread(this, "TcpSelector");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+
+	/**
+	 * @return selector shared by TcpLinkDevice objects, null if it can't be opened
+	 * */
+	public static synchronized TcpSelector getShared()
+	{
+		if (shared==null) {
+			try {
+				shared=new TcpSelector();
+			} catch (IOException e) {
+				if(DefaultLinkDevice.VERBOSE_MODE)
+					LinkDevice.logger.severe(e.getMessage());
+			}
+		}
+
+		return shared;
+	}
+
+
+	/**
+	 * Register a connected non-blocking channel for reading
+	 * @param channel socket channel
+	 * @param handler connection events handler
+	 * */
+	void register(final SocketChannel channel, final Handler handler)
+	{
+		tasks.add(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					channel.register(selector, SelectionKey.OP_READ, handler);
+					// output written before registration
+					handler.onWritable();
+				} catch (ClosedChannelException e) {
+					if(DefaultLinkDevice.VERBOSE_MODE)
+						LinkDevice.logger.severe("TCP channel closed before registration");
+				}
+			}
+		});
+		selector.wakeup();
+	}
+
+
+	/**
+	 * Enable or disable write events for a channel
+	 * @param channel registered socket channel
+	 * @param write true to be notified when socket can be written
+	 * */
+	void setWriteInterest(SocketChannel channel, boolean write)
+	{
+		SelectionKey key=channel.keyFor(selector);
+
+		if (key==null || !key.isValid())
+			return;
+
+		try {
+			key.interestOps(write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+		} catch (CancelledKeyException e) {
+			return;
+		}
+
+		if (write && Thread.currentThread()!=thread)
+			selector.wakeup();
+	}
+
+
+	/**
+	 * Stop receiving events for a channel
+	 * @param channel registered socket channel
+	 * */
+	void unregister(SocketChannel channel)
+	{
+		SelectionKey key=channel.keyFor(selector);
+
+		if (key!=null)
+			key.cancel();
+
+		selector.wakeup();
+	}
+
+
+	@Override
+	public void run() {
+		while(selector.isOpen()) {
+			try {
+				selector.select();
+			} catch (IOException e) {
+				if(DefaultLinkDevice.VERBOSE_MODE)
+					LinkDevice.logger.severe(e.getMessage());
+				
+				// don't spin on a failing selector
+				try {
+					Thread.sleep(DefaultTcpLinkDevice.SELECT_RETRY_TIME);
+				} catch (InterruptedException e1) {
+					break;
+				}
+				continue;
+			}
+
+			Runnable task;
+			while((task=tasks.poll())!=null)
+				task.run();
+
+			Iterator<SelectionKey> keys=selector.selectedKeys().iterator();
+
+			while(keys.hasNext()) {
+				SelectionKey key=keys.next();
+				keys.remove();
+
+				Handler handler=(Handler)key.attachment();
+
+				try {
+					if (key.isValid() && key.isReadable())
+						handler.onReadable();
+
+					if (key.isValid() && key.isWritable())
+						handler.onWritable();
+				} catch (CancelledKeyException e) {
+					// connection closed meanwhile
+				}
+			}
+		}
+	}
+
+}
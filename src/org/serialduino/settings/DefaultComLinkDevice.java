@@ -20,7 +20,14 @@ public class DefaultComLinkDevice {
 	
 	/**
 	 * Empty OutputBuffer delay
+	 * @deprecated output draining time is computed from baud rate
 	 * */
+	@Deprecated
 	public static long DELAY_SEND=20;
+	
+	/**
+	 * Max bytes queued for writer thread: writers wait when queue is full
+	 * */
+	public static int MAX_QUEUED_BYTES=4096;
 
 }
@@ -21,4 +21,17 @@ public class DefaultLinkDevice {
 	 * set true for output LOGS
 	 * */
 	public static boolean VERBOSE_MODE=true;
+	
+	/**
+	 * pause (in millis) between checks for incoming bytes, used by 
+	 * LinkDevice default line methods
+	 * */
+	public static long LINE_POLL_TIME=10;
+	
+	/**
+	 * Max unread bytes (in bytes) kept by a link input framer, rounded up to 
+	 * a power of two. Past it, partial line (i.e. wrong baud rate, no line 
+	 * terminator) or oldest unread lines are dropped
+	 * */
+	public static int MAX_LINE_BUFFER_SIZE=65536;
 }
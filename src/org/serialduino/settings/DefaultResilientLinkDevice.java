@@ -0,0 +1,56 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.settings;
+
+public class DefaultResilientLinkDevice {
+	
+	/**
+	 * Pause (in millis) between link checks
+	 * */
+	public static long CHECK_PERIOD=500;
+	
+	/**
+	 * First pause (in millis) between reconnection attempts, doubled after each failure
+	 * */
+	public static long INITIAL_BACKOFF=250;
+	
+	/**
+	 * Max pause (in millis) between reconnection attempts
+	 * */
+	public static long MAX_BACKOFF=30000;
+	
+	/**
+	 * Pause (in millis) after reconnection, waiting for Arduino booting
+	 * */
+	public static long SETTLE_TIME=DefaultArduinoSerialMonitor.ARDUINO_BOOT;
+	
+	/**
+	 * Max writes kept while link is down, next writes are rejected. 0 to
+	 * reject all writes while link is down: a command sent late (i.e. a power 
+	 * toggle) may be worse than a failed one
+	 * */
+	public static int MAX_QUEUED_WRITES=0;
+	
+	/**
+	 * Max age (in millis) of a write kept while link is down: older writes
+	 * are discarded on reconnection. Keep it below callers response timeout
+	 * (i.e. IRDeviceDefaultSettings.COMMAND_TIMEOUT), callers have given up 
+	 * on older writes
+	 * */
+	public static long QUEUED_WRITE_MAX_AGE=500;
+
+}
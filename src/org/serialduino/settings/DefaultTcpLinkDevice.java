@@ -0,0 +1,46 @@
+/**
+ * Copyright 2017 Emanuele Paiano
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * */
+
+package org.serialduino.settings;
+
+public class DefaultTcpLinkDevice {
+	
+	/**
+	 * Max waiting time (in millis) for connection
+	 * */
+	public static int CONNECT_TIMEOUT=5000;
+	
+	/**
+	 * Receiving buffer size (in bytes), one for each connection
+	 * */
+	public static int READ_BUFFER_SIZE=2048;
+	
+	/**
+	 * Initial sending buffer size (in bytes), one for each connection
+	 * */
+	public static int WRITE_BUFFER_SIZE=512;
+	
+	/**
+	 * Max sending buffer size (in bytes), writes not fitting are rejected
+	 * */
+	public static int MAX_WRITE_BUFFER_SIZE=1048576;
+	
+	/**
+	 * Waiting time (in millis) before selecting again after a selector error
+	 * */
+	public static int SELECT_RETRY_TIME=100;
+
+}